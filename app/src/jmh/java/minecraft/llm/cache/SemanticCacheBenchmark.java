@@ -0,0 +1,91 @@
+package minecraft.llm.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times lookups in the semantic cache when it is full of Minecraft-like
+ * questions, which share many words and so crowd the same buckets more than
+ * random text would. Hits are rewordings of cached questions and misses are
+ * questions about things that were never asked.
+ *
+ * Run with: ./gradlew jmh -Pjmh.includes=SemanticCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class SemanticCacheBenchmark {
+    private static final String[] VERBS = {
+        "find", "craft", "build", "mine", "breed", "tame", "enchant", "repair", "smelt", "farm",
+        "trade", "brew", "fight", "defeat", "grow", "store", "dye", "ride", "summon", "cure"
+    };
+    private static final String[] THINGS = {
+        "diamonds", "iron", "gold", "netherite", "emeralds", "villagers", "wolves", "cats", "horses", "bees",
+        "pickaxes", "swords", "bows", "tridents", "elytra", "beacons", "portals", "potions", "wheat", "pumpkins",
+        "zombies", "skeletons", "creepers", "endermen", "blazes", "withers", "dragons", "shulkers", "axolotls", "llamas"
+    };
+    private static final String[] PLACES = {
+        "caves", "deserts", "jungles", "oceans", "mountains", "swamps", "badlands", "villages", "strongholds",
+        "fortresses", "bastions", "mansions", "temples", "mineshafts", "islands", "forests", "plains", "tundra"
+    };
+    private static final String[] WORDS = { "fast", "early", "safely", "cheaply", "automatically", "survival", "hardcore", "peaceful" };
+    private static final long TTL = TimeUnit.HOURS.toNanos(1);
+    private static final float THRESHOLD = 0.9f;
+
+    @Param({ "1000", "100000" })
+    public int entries;
+
+    private SemanticCache cache;
+    private ResponseCache.Key[] hits;
+    private ResponseCache.Key[] misses;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        cache = new SemanticCache(entries, TTL);
+        hits = new ResponseCache.Key[1024];
+        for (int i = 0; i < entries; i++) {
+            String verb = VERBS[random.nextInt(VERBS.length)];
+            String thing = THINGS[random.nextInt(THINGS.length)];
+            String place = PLACES[random.nextInt(PLACES.length)];
+            String word = WORDS[random.nextInt(WORDS.length)];
+            String[] extra = { VERBS[random.nextInt(VERBS.length)], THINGS[random.nextInt(THINGS.length)] };
+            cache.put(key("how do i " + verb + " " + thing + " in " + place + " " + word + " " + extra[0] + " " + extra[1]), "answer " + i, 0);
+            if (i < hits.length) {
+                // The same question asked differently: other filler, singular, punctuation
+                String singular = thing.substring(0, thing.length() - 1);
+                hits[i] = key("Where can I " + verb + " " + singular + " in the " + place + ", " + word + " " + extra[0] + " " + extra[1] + "?");
+            }
+        }
+        misses = new ResponseCache.Key[1024];
+        for (int i = 0; i < misses.length; i++) {
+            misses[i] = key("what is the recipe for item number " + i + " in modded pack " + random.nextInt(1000));
+        }
+    }
+
+    @Benchmark
+    public String lookupHit() {
+        return cache.get(hits[next++ % Math.min(entries, hits.length)], THRESHOLD, 1);
+    }
+
+    @Benchmark
+    public String lookupMiss() {
+        return cache.get(misses[next++ & (misses.length - 1)], THRESHOLD, 1);
+    }
+
+    private static ResponseCache.Key key(String query) {
+        return ResponseCache.key("anthropic", "claude-3-haiku-20240307", "You are a helpful Minecraft assistant.", query);
+    }
+}
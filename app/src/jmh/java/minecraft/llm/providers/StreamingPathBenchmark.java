@@ -0,0 +1,173 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.config.ConfigSnapshot;
+import minecraft.llm.conversation.Conversation;
+import minecraft.llm.metrics.Histogram;
+import minecraft.llm.request.RequestExecutor;
+import minecraft.llm.util.JsonBodyWriter;
+import minecraft.llm.util.MessageChunker;
+import minecraft.llm.util.SseDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The streaming hot path of each provider on a recorded answer: SSE decoding
+ * alone, decoding plus the provider's own Gson handling of every event, the
+ * whole path into the message chunker, and building the request body.
+ *
+ * The payloads in src/jmh/resources/streams hold the same 1,258-character
+ * answer as each API streams it: 116 Anthropic deltas, 188 OpenAI chunks and
+ * 11 Gemini events. They are fed in 512-byte buffers, so lines and UTF-8
+ * characters are split across buffers like they are on the wire. Only classes
+ * that don't need the game are loaded, so this runs headless.
+ *
+ * Run with: ./gradlew jmh -Pjmh.includes=StreamingPathBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class StreamingPathBenchmark {
+    private static final int BUFFER_SIZE = 512;
+    private static final int MAX_MESSAGE_LENGTH = 250;
+
+    @Param({ "anthropic", "openai", "gemini" })
+    public String provider;
+
+    private byte[] payload;
+    private ByteBuffer body;
+    private Function<ResponseSink, SseDecoder> handler;
+    private BodyWriter bodyWriter;
+    private ConfigSnapshot settings;
+    private Conversation history;
+
+    /**
+     * A provider's writeBody method
+     */
+    private interface BodyWriter {
+        JsonBodyWriter write(ConfigSnapshot settings, Conversation history, String query, boolean stream);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream in = StreamingPathBenchmark.class.getResourceAsStream("/streams/" + provider + ".sse")) {
+            if (in == null) {
+                throw new IOException("No recorded stream for " + provider);
+            }
+            payload = in.readAllBytes();
+        }
+        body = ByteBuffer.wrap(payload);
+
+        Config config = new Config();
+        config.setSystemPrompt("You are a helpful Minecraft assistant. Answer questions about Minecraft and provide helpful advice to players. Keep responses concise to fit in the Minecraft chat.");
+        settings = config.snapshot();
+        RequestExecutor executor = new RequestExecutor(config, new Histogram());
+        HttpTransport transport = new HttpTransport();
+        RetryPolicy retryPolicy = new RetryPolicy();
+        switch (provider) {
+            case "anthropic": {
+                AnthropicProvider anthropic = new AnthropicProvider(config, executor, transport, retryPolicy);
+                handler = anthropic::handleAnthropicStream;
+                bodyWriter = anthropic::writeBody;
+                break;
+            }
+            case "openai": {
+                OpenAIProvider openai = new OpenAIProvider(config, executor, transport, retryPolicy);
+                handler = openai::handleOpenAIStream;
+                bodyWriter = openai::writeBody;
+                break;
+            }
+            case "gemini": {
+                GeminiProvider gemini = new GeminiProvider(config, executor, transport, retryPolicy);
+                handler = gemini::handleGeminiStream;
+                bodyWriter = gemini::writeBody;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown provider " + provider);
+        }
+
+        history = Conversation.EMPTY;
+        for (int i = 0; i < 6; i++) {
+            history = history.with(new Conversation.Turn(
+                "What is the best Y level for diamonds, question " + i + "?",
+                "Diamonds are most common around Y=-58.\nMine in straight tunnels and bring an iron pickaxe."), 10, 100_000);
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        feed(new SseDecoder((event, data) -> blackhole.consume(data)));
+    }
+
+    @Benchmark
+    public void decodeAndParse(Blackhole blackhole) {
+        feed(handler.apply(new ResponseSink() {
+            @Override
+            public void onText(String text) {
+                blackhole.consume(text);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            @Override
+            public void onError(String message) {
+                blackhole.consume(message);
+            }
+        }));
+    }
+
+    @Benchmark
+    public void decodeParseAndChunk(Blackhole blackhole) {
+        MessageChunker chunker = new MessageChunker(MAX_MESSAGE_LENGTH, blackhole::consume);
+        feed(handler.apply(new ResponseSink() {
+            @Override
+            public void onText(String text) {
+                chunker.append(text);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            @Override
+            public void onError(String message) {
+                blackhole.consume(message);
+            }
+        }));
+        chunker.flush();
+    }
+
+    @Benchmark
+    public int writeRequestBody() {
+        return bodyWriter.write(settings, history, "How do I find \"ancient debris\" in the Nether?", true).size();
+    }
+
+    /**
+     * Feeds the recorded stream the way HttpClient publishes it, a buffer at a time
+     */
+    private void feed(SseDecoder decoder) {
+        for (int offset = 0; offset < payload.length; offset += BUFFER_SIZE) {
+            body.limit(Math.min(offset + BUFFER_SIZE, payload.length)).position(offset);
+            decoder.feed(body);
+        }
+        decoder.finish();
+    }
+}
@@ -0,0 +1,99 @@
+package minecraft.llm.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.http.HttpRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building an Anthropic request body with the JSON writer against the
+ * String.format and Gson messages array the providers used before.
+ *
+ * Run with: ./gradlew jmh -Pjmh.includes=JsonBodyWriterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class JsonBodyWriterBenchmark {
+    private static final String MODEL = "claude-3-haiku-20240307";
+
+    @Param({ "0", "6" })
+    public int turns;
+
+    private String systemPrompt;
+    private String query;
+    private String[] questions;
+    private String[] answers;
+    private final JsonBodyWriter.EncodedString encodedPrompt = new JsonBodyWriter.EncodedString();
+
+    @Setup
+    public void setup() {
+        systemPrompt = "You are a helpful Minecraft assistant. Answer questions about Minecraft and provide helpful advice to players. Keep responses concise to fit in the Minecraft chat.";
+        query = "How do I find \"ancient debris\" in the Nether?";
+        questions = new String[turns];
+        answers = new String[turns];
+        for (int i = 0; i < turns; i++) {
+            questions[i] = "What is the best Y level for diamonds, question " + i + "?";
+            answers[i] = "Diamonds are most common around Y=-58.\nMine in straight tunnels and bring an iron pickaxe.";
+        }
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher legacyStringFormat() {
+        // Mirrors the old streamResponse: a Gson messages array, then String.format around it
+        JsonArray messages = new JsonArray();
+        for (int i = 0; i < turns; i++) {
+            messages.add(message("user", questions[i]));
+            messages.add(message("assistant", answers[i]));
+        }
+        messages.add(message("user", query));
+        String body = String.format(
+            "{\"model\":\"%s\",\"messages\":%s,\"system\":\"%s\",\"stream\":true,\"max_tokens\":2000}",
+            MODEL,
+            messages.toString(),
+            systemPrompt.replace("\"", "\\\"")
+        );
+        return HttpRequest.BodyPublishers.ofString(body);
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher jsonBodyWriter() {
+        JsonBodyWriter body = JsonBodyWriter.forCurrentThread()
+            .beginObject()
+            .name("model").value(MODEL)
+            .name("system").encodedValue(encodedPrompt.get(systemPrompt))
+            .name("messages").beginArray();
+        for (int i = 0; i < turns; i++) {
+            writeMessage(body, "user", questions[i]);
+            writeMessage(body, "assistant", answers[i]);
+        }
+        writeMessage(body, "user", query);
+        body.endArray()
+            .name("stream").value(true)
+            .name("max_tokens").value(2000)
+            .endObject();
+        return body.publisher();
+    }
+
+    private static JsonObject message(String role, String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", role);
+        message.addProperty("content", content);
+        return message;
+    }
+
+    private static void writeMessage(JsonBodyWriter body, String role, String content) {
+        body.beginObject().name("role").value(role).name("content").value(content).endObject();
+    }
+}
@@ -0,0 +1,96 @@
+package minecraft.llm.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the message chunker with the StringBuilder splitting ChatStream
+ * used before, on an answer streamed in small deltas like the providers send.
+ *
+ * Run with: ./gradlew jmh -Pjmh.includes=MessageChunkerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class MessageChunkerBenchmark {
+    private static final int MAX_LENGTH = 250;
+
+    @Param({ "2000", "20000" })
+    public int answerLength;
+
+    private String[] deltas;
+
+    @Setup
+    public void setup() {
+        String[] words = { "Diamonds ", "are ", "most ", "common ", "at ", "Y=-58, ", "so ", "branch ", "mine ", "there. ", "§6Gold§r ", "is ", "found ", "in ", "badlands! " };
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; answer.length() < answerLength; i++) {
+            answer.append(words[i % words.length]);
+        }
+        // Providers send a few words per delta
+        int count = (answer.length() + 11) / 12;
+        deltas = new String[count];
+        for (int i = 0; i < count; i++) {
+            deltas[i] = answer.substring(i * 12, Math.min(answer.length(), (i + 1) * 12));
+        }
+    }
+
+    @Benchmark
+    public void legacyStringBuilder(Blackhole blackhole) {
+        // Mirrors the old ChatStream: toString and a search on every flush, then substring and delete
+        StringBuilder currentMessage = new StringBuilder();
+        String lastMessage = "";
+        for (String delta : deltas) {
+            currentMessage.append(delta);
+            while (currentMessage.length() >= MAX_LENGTH) {
+                int breakPoint = legacyBreakPoint(currentMessage.toString(), MAX_LENGTH);
+                String toSend = currentMessage.substring(0, breakPoint);
+                if (!toSend.equals(lastMessage)) {
+                    blackhole.consume(toSend);
+                    lastMessage = toSend;
+                }
+                currentMessage.delete(0, breakPoint);
+            }
+        }
+        blackhole.consume(currentMessage.toString());
+    }
+
+    @Benchmark
+    public void messageChunker(Blackhole blackhole) {
+        MessageChunker chunker = new MessageChunker(MAX_LENGTH, blackhole::consume);
+        for (String delta : deltas) {
+            chunker.append(delta);
+        }
+        chunker.flush();
+    }
+
+    private static int legacyBreakPoint(String text, int maxLength) {
+        if (text.length() <= maxLength) {
+            return text.length();
+        }
+        int lastPeriod = text.lastIndexOf('.', maxLength);
+        if (lastPeriod > maxLength - 30) {
+            return lastPeriod + 1;
+        }
+        int lastComma = text.lastIndexOf(',', maxLength);
+        if (lastComma > maxLength - 20) {
+            return lastComma + 1;
+        }
+        int lastSpace = text.lastIndexOf(' ', maxLength);
+        if (lastSpace > 0) {
+            return lastSpace + 1;
+        }
+        return maxLength;
+    }
+}
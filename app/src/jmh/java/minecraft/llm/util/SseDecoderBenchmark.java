@@ -0,0 +1,91 @@
+package minecraft.llm.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the SSE decoder with the byte-at-a-time OutputStream the providers
+ * used before, on a synthetic Anthropic stream.
+ *
+ * Run with: ./gradlew jmh -Pjmh.includes=SseDecoderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class SseDecoderBenchmark {
+    @Param({ "100", "1000" })
+    public int events;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        StringBuilder stream = new StringBuilder();
+        stream.append("event: message_start\ndata: {\"type\":\"message_start\"}\n\n");
+        for (int i = 0; i < events; i++) {
+            stream.append("event: content_block_delta\n")
+                .append("data: {\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"")
+                .append(i % 3 == 0 ? "Mine diamonds at Y=-58 " : i % 3 == 1 ? "with an iron pickaxe é " : "ダイヤモンド ")
+                .append("\"}}\n\n");
+        }
+        stream.append("event: message_stop\ndata: {\"type\":\"message_stop\"}\n\n");
+        payload = stream.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void legacyOutputStream(Blackhole blackhole) throws IOException {
+        // Mirrors the old handleAnthropicStream: one virtual call and char cast per byte, toString per line
+        OutputStream out = new OutputStream() {
+            private final StringBuilder lineBuffer = new StringBuilder();
+
+            @Override
+            public void write(int b) {
+                char c = (char) b;
+                lineBuffer.append(c);
+                if (c == '\n') {
+                    String line = lineBuffer.toString();
+                    if (line.startsWith("data: ")) {
+                        blackhole.consume(line.substring(6).trim());
+                    }
+                    lineBuffer.setLength(0);
+                }
+            }
+        };
+        new ByteArrayInputStream(payload).transferTo(out);
+    }
+
+    @Benchmark
+    public void sseDecoderInputStream(Blackhole blackhole) throws IOException {
+        SseDecoder decoder = new SseDecoder((event, data) -> blackhole.consume(data));
+        decoder.readFrom(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public void sseDecoderByteBuffers(Blackhole blackhole) {
+        // HttpClient publishes the body as a sequence of ByteBuffers of up to 16 KB
+        SseDecoder decoder = new SseDecoder((event, data) -> blackhole.consume(data));
+        ByteBuffer body = ByteBuffer.wrap(payload);
+        int chunkSize = 16 * 1024;
+        for (int offset = 0; offset < payload.length; offset += chunkSize) {
+            body.limit(Math.min(offset + chunkSize, payload.length)).position(offset);
+            decoder.feed(body);
+        }
+        decoder.finish();
+    }
+}
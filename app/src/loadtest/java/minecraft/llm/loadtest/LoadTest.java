@@ -0,0 +1,355 @@
+package minecraft.llm.loadtest;
+
+import minecraft.llm.cache.AnswerStore;
+import minecraft.llm.cache.ResponseCache;
+import minecraft.llm.config.Config;
+import minecraft.llm.conversation.ConversationStore;
+import minecraft.llm.metrics.Histogram;
+import minecraft.llm.metrics.Metrics;
+import minecraft.llm.providers.LLMProvider;
+import minecraft.llm.providers.ProviderFactory;
+import minecraft.llm.providers.ResponseSink;
+import minecraft.llm.request.PlayerRequests;
+import minecraft.llm.request.QuestionDispatcher;
+import minecraft.llm.request.RateLimiter;
+import minecraft.llm.request.RequestExecutor;
+import minecraft.llm.request.RequestScheduler;
+import minecraft.llm.util.MessageChunker;
+import minecraft.llm.util.MessageUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives simulated players through the mod's request path and reports what it
+ * costs: answers per second, time to the first text and to the whole answer as
+ * players see them, and the threads and heap the server process would need.
+ *
+ * Each question goes the way /llm sends it, without the game: the rate
+ * limiter, the player's request handle, and then the same dispatch as /llm:
+ * conversation memory, the response cache, answer store and similar questions,
+ * request coalescing, the scheduler, the request executor and the configured
+ * provider with its metrics, routing and hedging layers, into a message
+ * chunker standing in for the chat. Players ask one question at a time and
+ * think for a while between answers. Rate limits are lifted so they measure
+ * the pipeline rather than the limiter.
+ *
+ * Without --url a {@link MockLLMServer} is started in the same process and
+ * takes the mock's options; its own threads are left out of the thread count,
+ * but it shares the heap, so run the mock on its own for clean heap numbers.
+ *
+ * Run with: ./gradlew loadTest -Pargs="--players=200 --questions=5 --provider=openai"
+ */
+public class LoadTest {
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+    // The mock's handlers, and the JDK HTTP server threads it runs on
+    private static final String MOCK_THREAD_PREFIX = "MockLLM-";
+    private static final Set<String> MOCK_SERVER_THREADS = Set.of("HTTP-Dispatcher", "idle-timeout-task");
+    private static final String[] COMMON_QUESTIONS = {
+        "How do I find diamonds?",
+        "What is the best enchantment for a sword?",
+        "How do I build a nether portal?",
+        "How do I breed villagers?",
+        "Where do I find ancient debris?"
+    };
+
+    private final Config config;
+    private final Metrics metrics = new Metrics();
+    private final RequestExecutor requestExecutor;
+    private final RequestScheduler requestScheduler;
+    private final RateLimiter rateLimiter;
+    private final ProviderFactory providerFactory;
+    private final AnswerStore answerStore;
+    private final QuestionDispatcher questionDispatcher;
+    private final PlayerRequests playerRequests = new PlayerRequests();
+
+    private final ScheduledExecutorService players = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LoadTest-Players");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Histogram firstText = new Histogram();
+    private final Histogram wholeAnswer = new Histogram();
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong turnedAway = new AtomicLong();
+    private final AtomicLong characters = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+
+    // Only touched by the sampler
+    private int peakThreads;
+    private Map<String, Integer> peakThreadNames = Map.of();
+    private long peakHeap;
+
+    LoadTest(Config config) {
+        this.config = config;
+        this.requestExecutor = new RequestExecutor(config, metrics.getQueueWait());
+        this.requestScheduler = new RequestScheduler(config, metrics.getTurnWait());
+        this.rateLimiter = new RateLimiter(config);
+        this.providerFactory = new ProviderFactory(config, requestExecutor, metrics);
+        this.answerStore = new AnswerStore(config, providerFactory::getCurrentModel);
+        this.questionDispatcher = new QuestionDispatcher(config, metrics, requestScheduler, new ResponseCache(config, answerStore),
+            answerStore, new ConversationStore(config));
+        metrics.addGauge("llm_requests_running", "running", "Requests being answered right now", requestExecutor::getActiveCount);
+        metrics.addGauge("llm_requests_queued", "queued", "Requests waiting for a free slot", requestExecutor::getQueuedCount);
+        metrics.addGauge("llm_questions_waiting", "waiting their turn", "Questions waiting their turn behind other players' questions", requestScheduler::getQueuedCount);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Args options = new Args(args);
+        int playerCount = options.getInt("players", 50);
+        int questions = Math.max(1, options.getInt("questions", 5));
+        int thinkMillis = options.getInt("think-ms", 2000);
+        int rampUpMillis = options.getInt("ramp-up-ms", 2000);
+        double repeatRate = options.getDouble("repeat-rate", 0);
+        String provider = options.getString("provider", "anthropic");
+
+        MockLLMServer mock = null;
+        String url = options.getString("url", null);
+        if (url == null) {
+            mock = new MockLLMServer(MockLLMServer.Options.parse(options));
+            try {
+                mock.start();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not start the mock server", e);
+            }
+            url = "http://localhost:" + mock.getPort();
+        }
+
+        Config config = new Config();
+        config.setCurrentProvider(provider);
+        config.setAnthropicApiKey("mock");
+        config.setOpenaiApiKey("mock");
+        config.setGeminiApiKey("mock");
+        config.setAnthropicBaseUrl(url);
+        config.setOpenaiBaseUrl(url);
+        config.setGeminiBaseUrl(url);
+        config.setRateLimitPlayerPerMinute(Integer.MAX_VALUE / 2);
+        config.setRateLimitPlayerBurst(Integer.MAX_VALUE / 2);
+        config.setRateLimitGlobalPerMinute(Integer.MAX_VALUE / 2);
+        config.setRateLimitGlobalBurst(Integer.MAX_VALUE / 2);
+        if (options.has("max-concurrent")) {
+            config.setMaxConcurrentRequests(options.getInt("max-concurrent", 0));
+        }
+        if (options.has("max-queued")) {
+            config.setMaxQueuedRequests(options.getInt("max-queued", 0));
+        }
+        if (options.has("request-timeout-seconds")) {
+            config.setTimeoutSeconds(Config.REQUEST_TIMEOUT, null, options.getInt("request-timeout-seconds", 0));
+        }
+        config.setHedgingEnabled(options.has("hedging"));
+        config.setProviderRouting(options.has("routing"));
+
+        System.out.printf(Locale.ROOT, "Load test: %d players x %d questions against %s at %s%n", playerCount, questions, provider, url);
+        if (mock != null) {
+            System.out.println("Mock: " + MockLLMServer.Options.parse(options));
+        }
+        LoadTest test = new LoadTest(config);
+        test.run(playerCount, questions, thinkMillis, rampUpMillis, repeatRate, options.getInt("max-seconds", 600));
+        if (mock != null) {
+            System.out.println(mock.stats());
+            mock.stop();
+        }
+    }
+
+    void run(int playerCount, int questions, int thinkMillis, int rampUpMillis, double repeatRate, int maxSeconds) throws InterruptedException {
+        requestExecutor.start();
+        answerStore.start();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LoadTest-Sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        CountDownLatch done = new CountDownLatch(playerCount);
+        long started = System.nanoTime();
+        for (int i = 0; i < playerCount; i++) {
+            Player player = new Player(i, questions, thinkMillis, repeatRate, done);
+            long delay = playerCount > 1 ? (long) rampUpMillis * i / (playerCount - 1) : 0;
+            players.schedule(player::ask, delay, TimeUnit.MILLISECONDS);
+        }
+        boolean finished = done.await(maxSeconds, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        sampler.shutdownNow();
+        sampler.awaitTermination(1, TimeUnit.SECONDS);
+        if (!finished) {
+            System.out.println("Stopped after " + maxSeconds + " seconds with " + done.getCount() + " players still waiting");
+        }
+        playerRequests.cancelAll();
+        requestScheduler.clear();
+        requestExecutor.shutdown();
+        answerStore.shutdown();
+        report(seconds);
+    }
+
+    private void report(double seconds) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long retainedHeap = memory.getHeapMemoryUsage().getUsed();
+
+        System.out.printf(Locale.ROOT, "Answered %d, failed %d, turned away %d in %.1f s%n", answered.get(), failed.get(), turnedAway.get(), seconds);
+        System.out.printf(Locale.ROOT, "Throughput: %.1f answers/s, %.0f characters/s in %d chat messages%n",
+            answered.get() / seconds, characters.get() / seconds, messages.get());
+        System.out.println("First text: " + latencies(firstText));
+        System.out.println("Whole answer: " + latencies(wholeAnswer));
+        System.out.printf(Locale.ROOT, "Threads: %d at peak, not counting the mock's: %s%n", peakThreads, peakThreadNames);
+        System.out.printf(Locale.ROOT, "Heap: %d MB at peak, %d MB after a GC at the end%n", peakHeap >> 20, retainedHeap >> 20);
+        for (String line : metrics.summary()) {
+            System.out.println("  " + line);
+        }
+    }
+
+    /**
+     * Records the most threads and heap seen so far, and which kinds of thread there were at the peak
+     */
+    private void sample() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<String, Integer> names = new TreeMap<>();
+        int live = 0;
+        for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (thread != null && !thread.getThreadName().startsWith(MOCK_THREAD_PREFIX) && !MOCK_SERVER_THREADS.contains(thread.getThreadName())) {
+                live++;
+                // Numbered threads of one pool count together
+                names.merge(thread.getThreadName().replaceAll("\\d+$", "N"), 1, Integer::sum);
+            }
+        }
+        if (live > peakThreads) {
+            peakThreads = live;
+            peakThreadNames = names;
+        }
+        peakHeap = Math.max(peakHeap, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    private static String latencies(Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "no data";
+        }
+        return String.format(Locale.ROOT, "p50 %dms, p90 %dms, p99 %dms, max %dms",
+            histogram.getPercentile(50) / 1000, histogram.getPercentile(90) / 1000,
+            histogram.getPercentile(99) / 1000, histogram.getMax() / 1000);
+    }
+
+    /**
+     * A simulated player, asking their questions one after another
+     */
+    private class Player {
+        private final UUID id;
+        private final int number;
+        private final int thinkMillis;
+        private final double repeatRate;
+        private final CountDownLatch done;
+        private int questionsLeft;
+
+        Player(int number, int questions, int thinkMillis, double repeatRate, CountDownLatch done) {
+            this.id = new UUID(0, number);
+            this.number = number;
+            this.questionsLeft = questions;
+            this.thinkMillis = thinkMillis;
+            this.repeatRate = repeatRate;
+            this.done = done;
+        }
+
+        /**
+         * Asks the next question the way /llm does
+         */
+        void ask() {
+            questionsLeft--;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String query = random.nextDouble() < repeatRate
+                ? COMMON_QUESTIONS[random.nextInt(COMMON_QUESTIONS.length)]
+                : "Question " + questionsLeft + " from player " + number + ": how do I find diamonds?";
+
+            metrics.recordQuestion();
+            if (rateLimiter.tryAcquire(id) != null) {
+                metrics.recordRateLimited();
+                turnedAway.incrementAndGet();
+                next();
+                return;
+            }
+
+            LLMProvider provider = providerFactory.getProvider();
+            CompletableFuture<Void> request = null;
+            try {
+                playerRequests.cancel(id);
+                request = playerRequests.start(id);
+                // Players don't look at their place in the queue
+                questionDispatcher.dispatch(id, RequestScheduler.Priority.NORMAL, provider, query, request, new Chat(this), position -> { });
+            } catch (RejectedExecutionException e) {
+                metrics.recordRejected();
+                if (request != null) {
+                    request.complete(null);
+                }
+                turnedAway.incrementAndGet();
+                next();
+            }
+        }
+
+        /**
+         * Thinks for a while, then asks again if there is anything left to ask
+         */
+        void next() {
+            if (questionsLeft == 0) {
+                done.countDown();
+                return;
+            }
+            long think = thinkMillis / 2 + ThreadLocalRandom.current().nextLong(thinkMillis + 1);
+            players.schedule(this::ask, think, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stands in for a player's chat, splitting the answer into messages like ChatStream does
+     */
+    private class Chat implements ResponseSink {
+        private final Player player;
+        private final long asked = System.nanoTime();
+        private final MessageChunker chunker = new MessageChunker(MessageUtils.getMaxMessageLength(), message -> messages.incrementAndGet());
+        private boolean sentText;
+
+        Chat(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void onText(String text) {
+            if (!sentText) {
+                sentText = true;
+                firstText.recordNanos(System.nanoTime() - asked);
+            }
+            characters.addAndGet(text.length());
+            chunker.append(text);
+        }
+
+        @Override
+        public void onComplete() {
+            chunker.flush();
+            wholeAnswer.recordNanos(System.nanoTime() - asked);
+            answered.incrementAndGet();
+            player.next();
+        }
+
+        @Override
+        public void onError(String message) {
+            chunker.flush();
+            failed.incrementAndGet();
+            player.next();
+        }
+    }
+}
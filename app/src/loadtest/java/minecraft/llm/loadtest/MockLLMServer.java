@@ -0,0 +1,544 @@
+package minecraft.llm.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local stand-in for the Anthropic, OpenAI and Gemini APIs, so the mod can
+ * be load tested without paying for real answers.
+ *
+ * It serves /v1/messages, /v1/chat/completions and
+ * /v1beta/models/{model}:streamGenerateContent (and :generateContent) in the
+ * same streaming formats as the real APIs, and ignores API keys. Every answer
+ * waits a time to first token, then streams a fixed Minecraft answer at a set
+ * number of tokens per second. A share of requests can be failed with a 500,
+ * turned away with a 429 and Retry-After, or answered slow-loris style: one
+ * event, then a byte every few seconds and never an end, which only the
+ * client's own deadline stops.
+ *
+ * Point the mod at it by setting anthropicBaseUrl, openaiBaseUrl or
+ * geminiBaseUrl in llmcommand.json to http://localhost:PORT.
+ *
+ * Run with: ./gradlew mockServer -Pargs="--port=8089 --ttft-ms=400 --tokens-per-second=60"
+ */
+public class MockLLMServer {
+    private static final String ANSWER = "To find diamonds, branch mine at Y=-58 or Y=-59, just above the bedrock layer. "
+        + "Diamond ore is most common there, and lava pools are easy to spot because they sit a few blocks higher. "
+        + "Bring an iron pickaxe or better, since stone won't drop anything. "
+        + "Strip mining with two-block tunnels spaced three blocks apart uncovers the most ore for the least digging. "
+        + "A Fortune III pickaxe can triple the diamonds from each block, so save the ore until you have one. "
+        + "Carry water to put out lava and torches to keep mobs from spawning behind you. ";
+    // Gemini streams a few large events rather than one per token
+    private static final int GEMINI_TOKENS_PER_EVENT = 12;
+
+    /**
+     * How the server answers
+     */
+    public record Options(int port, long ttftMillis, double tokensPerSecond, int answerTokens,
+                          double errorRate, double rateLimitRate, int retryAfterSeconds,
+                          double slowLorisRate, long slowLorisIntervalMillis) {
+        static Options parse(Args args) {
+            return new Options(
+                args.getInt("port", 8089),
+                args.getInt("ttft-ms", 400),
+                args.getDouble("tokens-per-second", 60),
+                args.getInt("answer-tokens", 120),
+                args.getDouble("error-rate", 0),
+                args.getDouble("rate-limit-rate", 0),
+                args.getInt("retry-after-seconds", 1),
+                args.getDouble("slow-loris-rate", 0),
+                args.getInt("slow-loris-interval-ms", 5000)
+            );
+        }
+
+        @Override
+        public String toString() {
+            return String.format("TTFT %d ms, %.0f tokens/s, %d tokens per answer, %.0f%% errors, %.0f%% rate limited, %.0f%% slow loris",
+                ttftMillis, tokensPerSecond, answerTokens, errorRate * 100, rateLimitRate * 100, slowLorisRate * 100);
+        }
+    }
+
+    private final Options options;
+    private final List<String> tokens;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final ExecutorService handlers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "MockLLM-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private HttpServer server;
+    private volatile boolean stopping;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong slowLoris = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+
+    public MockLLMServer(Options options) {
+        this.options = options;
+        this.tokens = tokens(options.answerTokens());
+    }
+
+    public static void main(String[] args) throws IOException {
+        MockLLMServer server = new MockLLMServer(Options.parse(new Args(args)));
+        server.start();
+        System.out.println("Mock LLM server listening on http://localhost:" + server.getPort() + " (" + server.options + ")");
+        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(
+            () -> System.out.println(server.stats()), 10, 10, TimeUnit.SECONDS);
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(options.port()), 1024);
+        server.createContext("/", exchange -> {
+            try {
+                handle(exchange);
+            } catch (IOException e) {
+                // The client went away, usually its deadline or a cancelled question
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    public void stop() {
+        stopping = true;
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * One line of request counts so far
+     */
+    public String stats() {
+        return String.format("Mock: %d requests, %d answered, %d failed, %d rate limited, %d slow loris, %d streaming now",
+            requests.get(), completed.get(), failed.get(), rateLimited.get(), slowLoris.get(), active.get());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        JsonObject request = JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+        Format format;
+        boolean stream;
+        String model;
+        if (path.equals("/v1/messages")) {
+            format = new AnthropicFormat();
+            stream = isTrue(request.get("stream"));
+            model = request.get("model").getAsString();
+        } else if (path.equals("/v1/chat/completions")) {
+            format = new OpenAIFormat(request.has("stream_options"));
+            stream = isTrue(request.get("stream"));
+            model = request.get("model").getAsString();
+        } else if (path.startsWith("/v1beta/models/") && path.contains(":")) {
+            format = new GeminiFormat();
+            stream = path.endsWith(":streamGenerateContent");
+            model = path.substring("/v1beta/models/".length(), path.indexOf(':'));
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        requests.incrementAndGet();
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < options.rateLimitRate()) {
+            rateLimited.incrementAndGet();
+            exchange.getResponseHeaders().set("retry-after", Integer.toString(options.retryAfterSeconds()));
+            sendJson(exchange, 429, format.error(429, "Rate limit exceeded"));
+            return;
+        }
+        if (roll < options.rateLimitRate() + options.errorRate()) {
+            failed.incrementAndGet();
+            sendJson(exchange, 500, format.error(500, "Internal server error"));
+            return;
+        }
+
+        pause(TimeUnit.MILLISECONDS.toNanos(options.ttftMillis()));
+        if (!stream) {
+            sendJson(exchange, 200, format.answer(model, String.join("", tokens)));
+            completed.incrementAndGet();
+            return;
+        }
+
+        exchange.getResponseHeaders().set("content-type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        active.incrementAndGet();
+        try (OutputStream body = exchange.getResponseBody()) {
+            int tokensPerEvent = format instanceof GeminiFormat ? GEMINI_TOKENS_PER_EVENT : 1;
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) * tokensPerEvent / options.tokensPerSecond());
+            List<String> pieces = group(tokensPerEvent);
+            List<String> events = format.events(model, pieces);
+            if (roll < options.rateLimitRate() + options.errorRate() + options.slowLorisRate()) {
+                slowLoris.incrementAndGet();
+                trickle(body, events.get(0) + format.lineEnd());
+                return;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < events.size(); i++) {
+                body.write((events.get(i) + format.lineEnd()).getBytes(StandardCharsets.UTF_8));
+                body.flush();
+                // Pace the answer's events against the start so sleeping late doesn't add up
+                int sent = i + 1 - format.leadingEvents();
+                if (sent > 0 && sent < pieces.size()) {
+                    pause(start + sent * interval - System.nanoTime());
+                }
+            }
+            completed.incrementAndGet();
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends one event, then a byte of an SSE comment every interval until the client gives up
+     */
+    private void trickle(OutputStream body, String firstEvent) throws IOException {
+        body.write(firstEvent.getBytes(StandardCharsets.UTF_8));
+        body.flush();
+        body.write(':');
+        while (!stopping) {
+            pause(TimeUnit.MILLISECONDS.toNanos(options.slowLorisIntervalMillis()));
+            body.write('.');
+            body.flush();
+        }
+    }
+
+    private List<String> group(int tokensPerEvent) {
+        List<String> pieces = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i += tokensPerEvent) {
+            pieces.add(String.join("", tokens.subList(i, Math.min(i + tokensPerEvent, tokens.size()))));
+        }
+        return pieces;
+    }
+
+    /**
+     * Splits the answer into word tokens, repeating it until there are enough
+     */
+    private static List<String> tokens(int count) {
+        String[] words = ANSWER.split("(?<= )");
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add(words[i % words.length]);
+        }
+        return tokens;
+    }
+
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        for (long left = nanos; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+            if (Thread.interrupted()) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isTrue(JsonElement value) {
+        return value != null && value.getAsBoolean();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonObject json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("content-type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * One API's wire format
+     */
+    private interface Format {
+        /**
+         * The whole stream for an answer made of the given pieces, one event each
+         */
+        List<String> events(String model, List<String> pieces);
+
+        /**
+         * A non-streamed answer
+         */
+        JsonObject answer(String model, String text);
+
+        JsonObject error(int status, String message);
+
+        /**
+         * How many events come before the first piece of the answer
+         */
+        int leadingEvents();
+
+        default String lineEnd() {
+            return "\n\n";
+        }
+    }
+
+    private static class AnthropicFormat implements Format {
+        @Override
+        public List<String> events(String model, List<String> pieces) {
+            List<String> events = new ArrayList<>();
+            JsonObject message = new JsonObject();
+            message.addProperty("id", "msg_mock");
+            message.addProperty("type", "message");
+            message.addProperty("role", "assistant");
+            message.add("content", new JsonArray());
+            message.addProperty("model", model);
+            message.add("usage", usage("input_tokens", 400, "output_tokens", 1));
+            JsonObject start = event("message_start");
+            start.add("message", message);
+            events.add(sse("message_start", start));
+
+            JsonObject block = new JsonObject();
+            block.addProperty("type", "text");
+            block.addProperty("text", "");
+            JsonObject blockStart = event("content_block_start");
+            blockStart.addProperty("index", 0);
+            blockStart.add("content_block", block);
+            events.add(sse("content_block_start", blockStart));
+
+            for (String piece : pieces) {
+                JsonObject delta = new JsonObject();
+                delta.addProperty("type", "text_delta");
+                delta.addProperty("text", piece);
+                JsonObject event = event("content_block_delta");
+                event.addProperty("index", 0);
+                event.add("delta", delta);
+                events.add(sse("content_block_delta", event));
+            }
+
+            JsonObject blockStop = event("content_block_stop");
+            blockStop.addProperty("index", 0);
+            events.add(sse("content_block_stop", blockStop));
+            JsonObject stop = new JsonObject();
+            stop.addProperty("stop_reason", "end_turn");
+            JsonObject messageDelta = event("message_delta");
+            messageDelta.add("delta", stop);
+            messageDelta.add("usage", usage("output_tokens", pieces.size(), null, 0));
+            events.add(sse("message_delta", messageDelta));
+            events.add(sse("message_stop", event("message_stop")));
+            return events;
+        }
+
+        @Override
+        public JsonObject answer(String model, String text) {
+            JsonObject content = new JsonObject();
+            content.addProperty("type", "text");
+            content.addProperty("text", text);
+            JsonArray contents = new JsonArray();
+            contents.add(content);
+            JsonObject message = new JsonObject();
+            message.addProperty("id", "msg_mock");
+            message.addProperty("type", "message");
+            message.addProperty("role", "assistant");
+            message.add("content", contents);
+            message.addProperty("model", model);
+            message.addProperty("stop_reason", "end_turn");
+            return message;
+        }
+
+        @Override
+        public JsonObject error(int status, String message) {
+            JsonObject error = new JsonObject();
+            error.addProperty("type", status == 429 ? "rate_limit_error" : "api_error");
+            error.addProperty("message", message);
+            JsonObject json = event("error");
+            json.add("error", error);
+            return json;
+        }
+
+        @Override
+        public int leadingEvents() {
+            return 2;
+        }
+
+        private static JsonObject event(String type) {
+            JsonObject event = new JsonObject();
+            event.addProperty("type", type);
+            return event;
+        }
+
+        private static String sse(String name, JsonObject data) {
+            return "event: " + name + "\ndata: " + data;
+        }
+    }
+
+    private static class OpenAIFormat implements Format {
+        private final boolean includeUsage;
+
+        OpenAIFormat(boolean includeUsage) {
+            this.includeUsage = includeUsage;
+        }
+
+        @Override
+        public List<String> events(String model, List<String> pieces) {
+            List<String> events = new ArrayList<>();
+            JsonObject first = new JsonObject();
+            first.addProperty("role", "assistant");
+            first.addProperty("content", "");
+            events.add("data: " + chunk(model, first, null));
+            for (String piece : pieces) {
+                JsonObject delta = new JsonObject();
+                delta.addProperty("content", piece);
+                events.add("data: " + chunk(model, delta, null));
+            }
+            events.add("data: " + chunk(model, new JsonObject(), "stop"));
+            if (includeUsage) {
+                JsonObject chunk = base(model);
+                chunk.add("choices", new JsonArray());
+                chunk.add("usage", usage("prompt_tokens", 400, "completion_tokens", pieces.size()));
+                events.add("data: " + chunk);
+            }
+            events.add("data: [DONE]");
+            return events;
+        }
+
+        @Override
+        public JsonObject answer(String model, String text) {
+            JsonObject message = new JsonObject();
+            message.addProperty("role", "assistant");
+            message.addProperty("content", text);
+            JsonObject choice = new JsonObject();
+            choice.addProperty("index", 0);
+            choice.add("message", message);
+            choice.addProperty("finish_reason", "stop");
+            JsonArray choices = new JsonArray();
+            choices.add(choice);
+            JsonObject completion = base(model);
+            completion.addProperty("object", "chat.completion");
+            completion.add("choices", choices);
+            return completion;
+        }
+
+        @Override
+        public JsonObject error(int status, String message) {
+            JsonObject error = new JsonObject();
+            error.addProperty("message", message);
+            error.addProperty("type", status == 429 ? "rate_limit_exceeded" : "server_error");
+            JsonObject json = new JsonObject();
+            json.add("error", error);
+            return json;
+        }
+
+        @Override
+        public int leadingEvents() {
+            return 1;
+        }
+
+        private static JsonObject chunk(String model, JsonObject delta, String finishReason) {
+            JsonObject choice = new JsonObject();
+            choice.addProperty("index", 0);
+            choice.add("delta", delta);
+            choice.addProperty("finish_reason", finishReason);
+            JsonArray choices = new JsonArray();
+            choices.add(choice);
+            JsonObject chunk = base(model);
+            chunk.add("choices", choices);
+            return chunk;
+        }
+
+        private static JsonObject base(String model) {
+            JsonObject chunk = new JsonObject();
+            chunk.addProperty("id", "chatcmpl-mock");
+            chunk.addProperty("object", "chat.completion.chunk");
+            chunk.addProperty("created", System.currentTimeMillis() / 1000);
+            chunk.addProperty("model", model);
+            return chunk;
+        }
+    }
+
+    private static class GeminiFormat implements Format {
+        @Override
+        public List<String> events(String model, List<String> pieces) {
+            List<String> events = new ArrayList<>();
+            int tokens = 0;
+            for (int i = 0; i < pieces.size(); i++) {
+                JsonObject response = response(model, pieces.get(i), i == pieces.size() - 1);
+                tokens += GEMINI_TOKENS_PER_EVENT;
+                response.add("usageMetadata", usage("promptTokenCount", 400, "candidatesTokenCount", tokens));
+                events.add("data: " + response);
+            }
+            return events;
+        }
+
+        @Override
+        public JsonObject answer(String model, String text) {
+            return response(model, text, true);
+        }
+
+        @Override
+        public JsonObject error(int status, String message) {
+            JsonObject error = new JsonObject();
+            error.addProperty("code", status);
+            error.addProperty("message", message);
+            error.addProperty("status", status == 429 ? "RESOURCE_EXHAUSTED" : "INTERNAL");
+            JsonObject json = new JsonObject();
+            json.add("error", error);
+            return json;
+        }
+
+        @Override
+        public int leadingEvents() {
+            return 0;
+        }
+
+        // Gemini ends its events with CRLF
+        @Override
+        public String lineEnd() {
+            return "\r\n\r\n";
+        }
+
+        private static JsonObject response(String model, String text, boolean last) {
+            JsonObject part = new JsonObject();
+            part.addProperty("text", text);
+            JsonArray parts = new JsonArray();
+            parts.add(part);
+            JsonObject content = new JsonObject();
+            content.add("parts", parts);
+            content.addProperty("role", "model");
+            JsonObject candidate = new JsonObject();
+            candidate.add("content", content);
+            candidate.addProperty("index", 0);
+            if (last) {
+                candidate.addProperty("finishReason", "STOP");
+            }
+            JsonArray candidates = new JsonArray();
+            candidates.add(candidate);
+            JsonObject response = new JsonObject();
+            response.add("candidates", candidates);
+            response.addProperty("modelVersion", model);
+            return response;
+        }
+    }
+
+    private static JsonObject usage(String name, int value, String otherName, int otherValue) {
+        JsonObject usage = new JsonObject();
+        usage.addProperty(name, value);
+        if (otherName != null) {
+            usage.addProperty(otherName, otherValue);
+        }
+        return usage;
+    }
+}
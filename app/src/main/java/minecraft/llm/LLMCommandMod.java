@@ -2,6 +2,9 @@ package minecraft.llm;
 
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.text.Text;
 import com.mojang.brigadier.Command;
@@ -10,11 +13,30 @@ import com.mojang.brigadier.context.CommandContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
+import com.google.common.cache.CacheStats;
+import minecraft.llm.cache.AnswerStore;
+import minecraft.llm.cache.ResponseCache;
 import minecraft.llm.config.Config;
+import minecraft.llm.config.ConfigSnapshot;
+import minecraft.llm.config.ConfigWatcher;
+import minecraft.llm.conversation.ConversationStore;
+import minecraft.llm.metrics.Metrics;
+import minecraft.llm.metrics.MetricsExporter;
 import minecraft.llm.providers.LLMProvider;
 import minecraft.llm.providers.ProviderFactory;
+import minecraft.llm.request.PlayerRequests;
+import minecraft.llm.request.QuestionDispatcher;
+import minecraft.llm.request.RateLimiter;
+import minecraft.llm.request.RequestExecutor;
+import minecraft.llm.request.RequestScheduler;
+import minecraft.llm.util.ChatDispatcher;
+import minecraft.llm.util.ChatStream;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
@@ -22,13 +44,45 @@ import static net.minecraft.server.command.CommandManager.literal;
 public class LLMCommandMod implements ModInitializer {
     private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
     private Config config;
+    private ConfigWatcher configWatcher;
+    private RequestExecutor requestExecutor;
+    private RequestScheduler requestScheduler;
+    private final PlayerRequests playerRequests = new PlayerRequests();
+    private final Metrics metrics = new Metrics();
+    private MetricsExporter metricsExporter;
+    private RateLimiter rateLimiter;
+    private ProviderFactory providerFactory;
+    private AnswerStore answerStore;
+    private ResponseCache responseCache;
+    private ConversationStore conversationStore;
+    private QuestionDispatcher questionDispatcher;
+    private ChatDispatcher chatDispatcher;
     
     @Override
     public void onInitialize() {
         // Load or create config
         this.config = Config.loadConfig();
+        this.requestExecutor = new RequestExecutor(config, metrics.getQueueWait());
+        this.requestScheduler = new RequestScheduler(config, metrics.getTurnWait());
+        this.rateLimiter = new RateLimiter(config);
+        this.providerFactory = new ProviderFactory(config, requestExecutor, metrics);
+        metrics.addGauge("llm_requests_running", "running", "Requests being answered right now", requestExecutor::getActiveCount);
+        metrics.addGauge("llm_requests_queued", "queued", "Requests waiting for a free slot", requestExecutor::getQueuedCount);
+        metrics.addGauge("llm_questions_waiting", "waiting their turn", "Questions waiting their turn behind other players' questions", requestScheduler::getQueuedCount);
+        this.metricsExporter = new MetricsExporter(config, metrics);
+        // The answer store is only read once the server starts, off the main thread
+        this.answerStore = new AnswerStore(config, providerFactory::getCurrentModel);
+        this.responseCache = new ResponseCache(config, answerStore);
+        this.conversationStore = new ConversationStore(config);
+        this.questionDispatcher = new QuestionDispatcher(config, metrics, requestScheduler, responseCache, answerStore, conversationStore);
+        this.chatDispatcher = new ChatDispatcher(config);
+        this.configWatcher = new ConfigWatcher(config);
+        config.addReloadListener(this::applyReloadedConfig);
+        registerLifecycleEvents();
         registerLLMCommand();
         registerConfigCommand();
+        registerCacheCommand();
+        registerStatsCommand();
         log("LLM Command Mod initialized!");
         log("Using model: " + getCurrentProvider().getCurrentModel());
         log("Current provider: " + config.getCurrentProvider());
@@ -56,13 +110,71 @@ public class LLMCommandMod implements ModInitializer {
      * Get the current provider based on configuration
      */
     private LLMProvider getCurrentProvider() {
-        return ProviderFactory.getProvider(config);
+        return providerFactory.getProvider();
+    }
+    
+    private void registerLifecycleEvents() {
+        // Run requests on our own workers while the server is up, and stop them with it
+        ServerLifecycleEvents.SERVER_STARTING.register(server -> {
+            requestExecutor.start();
+            answerStore.start();
+            configWatcher.start();
+            metricsExporter.start();
+        });
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            playerRequests.cancelAll();
+            requestScheduler.clear();
+            requestExecutor.shutdown();
+            answerStore.shutdown();
+            chatDispatcher.clear();
+            configWatcher.stop();
+            metricsExporter.stop();
+            config.flush();
+        });
+        
+        // A player who leaves is no longer waiting for their answer, so stop paying for it
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> playerRequests.cancel(handler.getPlayer().getUuid()));
+        
+        // Answers reach the chat in a bounded batch once per tick, never in between
+        ServerTickEvents.END_SERVER_TICK.register(server -> chatDispatcher.drain());
+    }
+    
+    /**
+     * Applies settings that need more than a new snapshot after llmcommand.json was edited by hand
+     */
+    private void applyReloadedConfig(ConfigSnapshot previous, ConfigSnapshot current) {
+        providerFactory.refresh();
+        if (current.getMaxConcurrentRequests() != previous.getMaxConcurrentRequests()) {
+            requestExecutor.setMaxConcurrentRequests(current.getMaxConcurrentRequests());
+        }
+        if (current.getResponseCacheMaxEntries() != previous.getResponseCacheMaxEntries()
+            || current.getResponseCacheTtlMinutes() != previous.getResponseCacheTtlMinutes()
+            || current.getSemanticCacheMaxEntries() != previous.getSemanticCacheMaxEntries()) {
+            responseCache.reconfigure();
+        }
+        if (current.getConversationMaxTurns() != previous.getConversationMaxTurns()
+            || current.getConversationMaxTokens() != previous.getConversationMaxTokens()
+            || current.getConversationIdleMinutes() != previous.getConversationIdleMinutes()
+            || current.getConversationMaxPlayers() != previous.getConversationMaxPlayers()) {
+            conversationStore.reconfigure();
+        }
+        if (current.getMetricsExportSeconds() != previous.getMetricsExportSeconds()) {
+            metricsExporter.reconfigure();
+        }
+        if (current.getAnswerStoreEnabled() && !previous.getAnswerStoreEnabled()) {
+            answerStore.start();
+        }
+        // Drops stored answers for a changed model or system prompt
+        answerStore.refresh();
+        log("Applied reloaded configuration, current provider: " + current.getCurrentProvider());
     }
     
     private void registerLLMCommand() {
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
             dispatcher.register(
                 literal("llm")
+                    .then(literal("reset").executes(this::resetConversation))
+                    .then(literal("cancel").executes(this::cancelQuestion))
                     .then(argument("query", StringArgumentType.greedyString())
                     .executes(this::executeLLMCommand))
             );
@@ -73,48 +185,136 @@ public class LLMCommandMod implements ModInitializer {
         String query = StringArgumentType.getString(context, "query");
         ServerCommandSource source = context.getSource();
         
-        source.sendFeedback(() -> Text.literal("§7Thinking...§r"), false);
-        
-        // Execute asynchronously to not block the main game thread
-        CompletableFuture.runAsync(() -> {
-            try {
-                LLMProvider provider = getCurrentProvider();
-                
-                if (config.getDebugMode()) {
-                    // Print info directly to server console for visibility
-                    log("[LLMCommandMod] DEBUG: Starting request to " + config.getCurrentProvider() + " with query: " + query);
-                }
-                
-                // Check if the provider has a valid API key
-                if (!provider.hasValidApiKey()) {
-                    String errorMessage = "§cError: " + provider.getProviderName() + " API key not set. " +
-                                         "Please set your " + provider.getProviderName() + " API key in config/llmcommand.json or use /llmconfig§r";
-                    source.sendFeedback(() -> Text.literal(errorMessage), false);
-                    return;
-                }
-                
-                log("Using model: " + provider.getCurrentModel());
-                
-                // Use the provider to stream the response
-                provider.streamResponse(query, source);
-                
-            } catch (Exception e) {
-                // Log the error
-                logError("Error executing LLM command", e);
-                
-                // Send a more detailed error message to the player
-                String errorMsg = "§cError: " + e.getMessage() + "§r";
-                source.sendFeedback(() -> Text.literal(errorMsg), false);
-                
-                // Print stack trace for visibility
-                log("[LLMCommandMod] ERROR when executing command:");
-                e.printStackTrace();
+        metrics.recordQuestion();
+        CompletableFuture<Void> request = null;
+        try {
+            // Turn away players asking too often before doing any other work
+            UUID player = source.getPlayer() != null ? source.getPlayer().getUuid() : null;
+            RateLimiter.Rejection rejection = rateLimiter.tryAcquire(player);
+            if (rejection != null) {
+                metrics.recordRateLimited();
+                String message = rejection.global()
+                    ? "§cThe assistant is getting too many questions right now. Try again in " + rejection.retryAfterSeconds() + "s.§r"
+                    : "§cYou're asking too quickly. Try again in " + rejection.retryAfterSeconds() + "s.§r";
+                source.sendFeedback(() -> Text.literal(message), false);
+                return 0;
             }
-        });
+            
+            LLMProvider provider = getCurrentProvider();
+            
+            if (config.getDebugMode()) {
+                // Print info directly to server console for visibility
+                log("[LLMCommandMod] DEBUG: Starting request to " + config.getCurrentProvider() + " with query: " + query);
+            }
+            
+            // Check if the provider has a valid API key
+            if (!provider.hasValidApiKey()) {
+                String errorMessage = "§cError: " + provider.getProviderName() + " API key not set. " +
+                                     "Please set your " + provider.getProviderName() + " API key in config/llmcommand.json or use /llmconfig§r";
+                source.sendFeedback(() -> Text.literal(errorMessage), false);
+                return 0;
+            }
+            
+            log("Using model: " + provider.getCurrentModel());
+            RequestScheduler.Priority priority = priorityOf(source);
+            
+            // A new question replaces the one the player is still waiting on
+            if (playerRequests.cancel(player)) {
+                source.sendFeedback(() -> Text.literal("§7Stopped your previous question.§r"), false);
+            }
+            request = playerRequests.start(player);
+            
+            // Answers come from the caches where possible, and the provider streams the rest asynchronously,
+            // so the main game thread is never blocked
+            int position = questionDispatcher.dispatch(player, priority, provider, query, request, new ChatStream(source, chatDispatcher),
+                queued -> chatDispatcher.send(source, queuePositionMessage(queued)));
+            if (position != QuestionDispatcher.NOT_ASKED) {
+                sendQueuePosition(source, position);
+            }
+        } catch (RejectedExecutionException e) {
+            // Every slot is taken and the queue is full, so tell the player right away instead of waiting
+            metrics.recordRejected();
+            if (request != null) {
+                request.complete(null);
+            }
+            log("Rejected LLM request: " + requestScheduler.getActiveCount() + " running, " + requestScheduler.getQueuedCount() + " waiting their turn");
+            source.sendFeedback(() -> Text.literal("§cThe assistant is busy answering other players. Please try again in a moment.§r"), false);
+            return 0;
+        } catch (Exception e) {
+            if (request != null) {
+                request.complete(null);
+            }
+            // Log the error
+            logError("Error executing LLM command", e);
+            
+            // Send a more detailed error message to the player
+            String errorMsg = "§cError: " + e.getMessage() + "§r";
+            source.sendFeedback(() -> Text.literal(errorMsg), false);
+            return 0;
+        }
         
         return Command.SINGLE_SUCCESS;
     }
     
+    /**
+     * Operators, and players listed in schedulerPriorityPlayers by name or UUID, go ahead of other players
+     */
+    private RequestScheduler.Priority priorityOf(ServerCommandSource source) {
+        ConfigSnapshot settings = config.snapshot();
+        int level = settings.getSchedulerPriorityPermissionLevel();
+        if (level > 0 && source.hasPermissionLevel(level)) {
+            return RequestScheduler.Priority.HIGH;
+        }
+        if (source.getPlayer() != null) {
+            String name = source.getPlayer().getName().getString();
+            String uuid = source.getPlayer().getUuidAsString();
+            for (String listed : settings.getSchedulerPriorityPlayers()) {
+                if (listed.equalsIgnoreCase(name) || listed.equalsIgnoreCase(uuid)) {
+                    return RequestScheduler.Priority.HIGH;
+                }
+            }
+        }
+        return RequestScheduler.Priority.NORMAL;
+    }
+    
+    private void sendQueuePosition(ServerCommandSource source, int position) {
+        String message = position > 0 ? queuePositionMessage(position) : "§7Thinking...§r";
+        source.sendFeedback(() -> Text.literal(message), false);
+    }
+    
+    private static String queuePositionMessage(int position) {
+        return "§7You are #" + position + " in the queue. Your answer will start when it's your turn.§r";
+    }
+    
+    private int cancelQuestion(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        
+        if (source.getPlayer() == null) {
+            source.sendFeedback(() -> Text.literal("§cOnly players have a question to cancel.§r"), false);
+            return 0;
+        }
+        
+        if (!playerRequests.cancel(source.getPlayer().getUuid())) {
+            source.sendFeedback(() -> Text.literal("§7You have no question waiting for an answer.§r"), false);
+            return 0;
+        }
+        source.sendFeedback(() -> Text.literal("§aStopped your question.§r"), false);
+        return Command.SINGLE_SUCCESS;
+    }
+    
+    private int resetConversation(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        
+        if (source.getPlayer() == null) {
+            source.sendFeedback(() -> Text.literal("§cOnly players have a conversation to reset.§r"), false);
+            return 0;
+        }
+        
+        conversationStore.reset(source.getPlayer().getUuid());
+        source.sendFeedback(() -> Text.literal("§aConversation reset. The next question starts fresh.§r"), false);
+        return Command.SINGLE_SUCCESS;
+    }
+    
     private void registerConfigCommand() {
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
             dispatcher.register(
@@ -127,6 +327,102 @@ public class LLMCommandMod implements ModInitializer {
         });
     }
     
+    private void registerCacheCommand() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
+            dispatcher.register(
+                literal("llmcache")
+                    .then(literal("stats").executes(this::displayCacheStats))
+                    .then(literal("clear").executes(this::clearCache))
+                    .executes(this::displayCacheStats)
+            );
+        });
+    }
+    
+    private int displayCacheStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        
+        if (!source.hasPermissionLevel(2)) {
+            source.sendFeedback(() -> Text.literal("§cYou don't have permission to view the response cache.§r"), false);
+            return 0;
+        }
+        
+        CacheStats stats = responseCache.stats();
+        // Guava reports a 100% hit rate before the first lookup, so start from zero instead
+        String hitRate = String.format("%.1f", stats.requestCount() == 0 ? 0.0 : stats.hitRate() * 100);
+        source.sendFeedback(() -> Text.literal("§6LLM Response Cache:§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- Enabled: " + config.getResponseCacheEnabled() + "§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- Entries: " + responseCache.size() + " / " + config.getResponseCacheMaxEntries() + "§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- Hits: " + stats.hitCount() + ", misses: " + stats.missCount() + " (" + hitRate + "% hit rate)§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- Evictions: " + stats.evictionCount() + "§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- Similar questions: " + responseCache.semanticSize() + " / " + config.getSemanticCacheMaxEntries()
+            + " indexed, " + responseCache.semanticHits() + " hits, " + responseCache.semanticMisses() + " misses (enabled: " + config.getSemanticCacheEnabled() + ")§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- Stored on disk: " + answerStore.size() + " answers (" + answerStore.getFileBytes() / 1024 + " KB, enabled: " + answerStore.isEnabled() + ")§r"), false);
+        
+        return Command.SINGLE_SUCCESS;
+    }
+    
+    private int clearCache(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        
+        if (!source.hasPermissionLevel(2)) {
+            source.sendFeedback(() -> Text.literal("§cYou don't have permission to clear the response cache.§r"), false);
+            return 0;
+        }
+        
+        responseCache.clear();
+        source.sendFeedback(() -> Text.literal("§aResponse cache cleared.§r"), false);
+        return Command.SINGLE_SUCCESS;
+    }
+    
+    private void registerStatsCommand() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
+            dispatcher.register(
+                literal("llmstats")
+                    .then(literal("export").executes(this::exportStats))
+                    .executes(this::displayStats)
+            );
+        });
+    }
+    
+    private int displayStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        
+        if (!source.hasPermissionLevel(2)) {
+            source.sendFeedback(() -> Text.literal("§cYou don't have permission to view the LLM stats.§r"), false);
+            return 0;
+        }
+        
+        source.sendFeedback(() -> Text.literal("§6LLM Stats:§r"), false);
+        for (String line : metrics.summary()) {
+            source.sendFeedback(() -> Text.literal("§7" + line + "§r"), false);
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+    
+    private int exportStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        
+        if (!source.hasPermissionLevel(2)) {
+            source.sendFeedback(() -> Text.literal("§cYou don't have permission to export the LLM stats.§r"), false);
+            return 0;
+        }
+        
+        // The file is written on the exporter's thread; the reply goes through the chat dispatcher like answers do
+        metricsExporter.export().whenComplete((file, error) -> {
+            if (error != null) {
+                logError("Error exporting metrics", error);
+                Throwable cause = error;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                chatDispatcher.send(source, "§cCould not export the LLM stats: " + cause.getMessage() + "§r");
+            } else {
+                chatDispatcher.send(source, "§aLLM stats written to " + file + "§r");
+            }
+        });
+        return Command.SINGLE_SUCCESS;
+    }
+    
     private int displayConfigHelp(CommandContext<ServerCommandSource> context) {
         ServerCommandSource source = context.getSource();
         
@@ -142,6 +438,38 @@ public class LLMCommandMod implements ModInitializer {
         source.sendFeedback(() -> Text.literal("§7- geminiModel: Set the Gemini model§r"), false);
         source.sendFeedback(() -> Text.literal("§7- systemPrompt: Set the system prompt for the AI§r"), false);
         source.sendFeedback(() -> Text.literal("§7- debugMode: Set to 'true' or 'false'§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- maxConcurrentRequests: Number of requests answered at the same time§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- maxQueuedRequests: Number of requests allowed to wait for a free slot§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- connectTimeoutSeconds, firstByteTimeoutSeconds, requestTimeoutSeconds: '<seconds>' or '<provider> <seconds>'§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- responseCacheEnabled: Set to 'true' or 'false'§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- responseCacheMaxEntries: Number of answers kept in the cache§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- responseCacheTtlMinutes: How long cached answers are kept§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- semanticCacheEnabled: Answer differently worded questions from the cache, 'true' or 'false'§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- semanticCacheSimilarityPercent: How similar a question must be to get a cached answer, 1 to 100§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- semanticCacheMaxEntries: Number of answers indexed for similar questions§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- answerStoreEnabled: Keep answers on disk across restarts, 'true' or 'false'§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- answerStoreMaxMegabytes: Size limit of the answer store file§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- rateLimitPlayerPerMinute, rateLimitGlobalPerMinute: Questions allowed per minute, 0 for no limit§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- rateLimitPlayerBurst, rateLimitGlobalBurst: Questions allowed in quick succession§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- conversationMaxTurns: Earlier questions remembered per player, 0 to turn off§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- conversationMaxTokens: Token budget for the earlier questions sent along§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- conversationIdleMinutes: Forget a conversation after this long without questions§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- conversationMaxPlayers: Players whose conversations are kept at once§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- chatLinesPerTick: Answer lines sent to the chat per server tick§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- retryMaxAttempts: Times a busy or failing request is retried, 0 to turn off§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- retryBaseDelayMillis: Wait before the first retry, doubled for each retry after it§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- retryMaxDelaySeconds: Longest wait before a retry, including waits the API asks for§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- providerRouting: Send questions to the healthiest provider with an API key, 'true' or 'false'§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- circuitBreakerFailures: Failures in a row before routing pauses a provider§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- circuitBreakerCooldownSeconds: How long a paused provider is left alone§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- hedgingEnabled: Send a second request when the first is slow to start, 'true' or 'false'§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- hedgingPercentile: How slow the first request must be to hedge, as a percentile of recent waits§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- hedgingBudgetPercent: Hedged requests allowed, as a percentage of all requests (1-50)§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- metricsExportSeconds: Export the metrics file every this many seconds, 0 for only /llmstats export§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- schedulerPriorityPermissionLevel: Permission level whose questions go first, 0 for none§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- schedulerPriorityPlayers: Names or UUIDs whose questions go first, comma separated, 'none' to clear§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- schedulerPriorityWeight: Share of the answers priority players get compared to others§r"), false);
+        source.sendFeedback(() -> Text.literal("§7- schedulerMaxWaitSeconds: Longest a question waits before it goes next regardless§r"), false);
         
         return Command.SINGLE_SUCCESS;
     }
@@ -211,6 +539,326 @@ public class LLMCommandMod implements ModInitializer {
                     return 0;
                 }
                 break;
+            case "maxconcurrentrequests":
+                Integer maxConcurrent = parsePositiveInt(value);
+                if (maxConcurrent == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for maxConcurrentRequests. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setMaxConcurrentRequests(maxConcurrent);
+                requestExecutor.setMaxConcurrentRequests(maxConcurrent);
+                source.sendFeedback(() -> Text.literal("§aMaxConcurrentRequests set to: " + maxConcurrent + "§r"), false);
+                break;
+            case "maxqueuedrequests":
+                Integer maxQueued = parsePositiveInt(value);
+                if (maxQueued == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for maxQueuedRequests. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setMaxQueuedRequests(maxQueued);
+                source.sendFeedback(() -> Text.literal("§aMaxQueuedRequests set to: " + maxQueued + "§r"), false);
+                break;
+            case "connecttimeoutseconds":
+                if (!setTimeout(Config.CONNECT_TIMEOUT, value, source)) {
+                    return 0;
+                }
+                break;
+            case "firstbytetimeoutseconds":
+                if (!setTimeout(Config.FIRST_BYTE_TIMEOUT, value, source)) {
+                    return 0;
+                }
+                break;
+            case "requesttimeoutseconds":
+                if (!setTimeout(Config.REQUEST_TIMEOUT, value, source)) {
+                    return 0;
+                }
+                break;
+            case "responsecacheenabled":
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    config.setResponseCacheEnabled(Boolean.parseBoolean(value.toLowerCase()));
+                    source.sendFeedback(() -> Text.literal("§aResponseCacheEnabled set to: " + config.getResponseCacheEnabled() + "§r"), false);
+                } else {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for responseCacheEnabled. Use 'true' or 'false'.§r"), false);
+                    return 0;
+                }
+                break;
+            case "responsecachemaxentries":
+                Integer maxEntries = parsePositiveInt(value);
+                if (maxEntries == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for responseCacheMaxEntries. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setResponseCacheMaxEntries(maxEntries);
+                responseCache.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aResponseCacheMaxEntries set to: " + maxEntries + "§r"), false);
+                break;
+            case "responsecachettlminutes":
+                Integer ttlMinutes = parsePositiveInt(value);
+                if (ttlMinutes == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for responseCacheTtlMinutes. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setResponseCacheTtlMinutes(ttlMinutes);
+                responseCache.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aResponseCacheTtlMinutes set to: " + ttlMinutes + "§r"), false);
+                break;
+            case "semanticcacheenabled":
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    config.setSemanticCacheEnabled(Boolean.parseBoolean(value.toLowerCase()));
+                    source.sendFeedback(() -> Text.literal("§aSemanticCacheEnabled set to: " + config.getSemanticCacheEnabled() + "§r"), false);
+                } else {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for semanticCacheEnabled. Use 'true' or 'false'.§r"), false);
+                    return 0;
+                }
+                break;
+            case "semanticcachesimilaritypercent":
+                Integer similarityPercent = parsePositiveInt(value);
+                if (similarityPercent == null || similarityPercent > 100) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for semanticCacheSimilarityPercent. Use a number from 1 to 100.§r"), false);
+                    return 0;
+                }
+                config.setSemanticCacheSimilarityPercent(similarityPercent);
+                source.sendFeedback(() -> Text.literal("§aSemanticCacheSimilarityPercent set to: " + similarityPercent + "§r"), false);
+                break;
+            case "semanticcachemaxentries":
+                Integer semanticEntries = parsePositiveInt(value);
+                if (semanticEntries == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for semanticCacheMaxEntries. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setSemanticCacheMaxEntries(semanticEntries);
+                responseCache.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aSemanticCacheMaxEntries set to: " + semanticEntries + "§r"), false);
+                break;
+            case "answerstoreenabled":
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    config.setAnswerStoreEnabled(Boolean.parseBoolean(value.toLowerCase()));
+                    // Switched off, stored answers stay on disk but are ignored until the store is back on
+                    if (config.getAnswerStoreEnabled()) {
+                        answerStore.start();
+                    }
+                    source.sendFeedback(() -> Text.literal("§aAnswerStoreEnabled set to: " + config.getAnswerStoreEnabled() + "§r"), false);
+                } else {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for answerStoreEnabled. Use 'true' or 'false'.§r"), false);
+                    return 0;
+                }
+                break;
+            case "answerstoremaxmegabytes":
+                Integer maxMegabytes = parsePositiveInt(value);
+                if (maxMegabytes == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for answerStoreMaxMegabytes. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setAnswerStoreMaxMegabytes(maxMegabytes);
+                source.sendFeedback(() -> Text.literal("§aAnswerStoreMaxMegabytes set to: " + maxMegabytes + "§r"), false);
+                break;
+            case "ratelimitplayerperminute":
+            case "ratelimitglobalperminute":
+                Integer perMinute = parseNonNegativeInt(value);
+                if (perMinute == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for " + key + ". Use 0 or a positive number.§r"), false);
+                    return 0;
+                }
+                if (key.equalsIgnoreCase("ratelimitplayerperminute")) {
+                    config.setRateLimitPlayerPerMinute(perMinute);
+                } else {
+                    config.setRateLimitGlobalPerMinute(perMinute);
+                }
+                source.sendFeedback(() -> Text.literal("§a" + key + " set to: " + perMinute + "§r"), false);
+                break;
+            case "ratelimitplayerburst":
+            case "ratelimitglobalburst":
+                Integer burst = parsePositiveInt(value);
+                if (burst == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for " + key + ". Use a positive number.§r"), false);
+                    return 0;
+                }
+                if (key.equalsIgnoreCase("ratelimitplayerburst")) {
+                    config.setRateLimitPlayerBurst(burst);
+                } else {
+                    config.setRateLimitGlobalBurst(burst);
+                }
+                source.sendFeedback(() -> Text.literal("§a" + key + " set to: " + burst + "§r"), false);
+                break;
+            case "conversationmaxturns":
+                Integer maxTurns = parseNonNegativeInt(value);
+                if (maxTurns == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for conversationMaxTurns. Use 0 or a positive number.§r"), false);
+                    return 0;
+                }
+                config.setConversationMaxTurns(maxTurns);
+                conversationStore.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aConversationMaxTurns set to: " + maxTurns + "§r"), false);
+                break;
+            case "conversationmaxtokens":
+                Integer maxTokens = parsePositiveInt(value);
+                if (maxTokens == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for conversationMaxTokens. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setConversationMaxTokens(maxTokens);
+                conversationStore.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aConversationMaxTokens set to: " + maxTokens + "§r"), false);
+                break;
+            case "conversationidleminutes":
+                Integer idleMinutes = parsePositiveInt(value);
+                if (idleMinutes == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for conversationIdleMinutes. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setConversationIdleMinutes(idleMinutes);
+                conversationStore.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aConversationIdleMinutes set to: " + idleMinutes + "§r"), false);
+                break;
+            case "conversationmaxplayers":
+                Integer maxPlayers = parsePositiveInt(value);
+                if (maxPlayers == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for conversationMaxPlayers. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setConversationMaxPlayers(maxPlayers);
+                conversationStore.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aConversationMaxPlayers set to: " + maxPlayers + "§r"), false);
+                break;
+            case "chatlinespertick":
+                Integer linesPerTick = parsePositiveInt(value);
+                if (linesPerTick == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for chatLinesPerTick. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setChatLinesPerTick(linesPerTick);
+                source.sendFeedback(() -> Text.literal("§aChatLinesPerTick set to: " + linesPerTick + "§r"), false);
+                break;
+            case "retrymaxattempts":
+                Integer attempts = parseNonNegativeInt(value);
+                if (attempts == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for retryMaxAttempts. Use 0 or a positive number.§r"), false);
+                    return 0;
+                }
+                config.setRetryMaxAttempts(attempts);
+                source.sendFeedback(() -> Text.literal("§aRetryMaxAttempts set to: " + attempts + "§r"), false);
+                break;
+            case "retrybasedelaymillis":
+                Integer delayMillis = parsePositiveInt(value);
+                if (delayMillis == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for retryBaseDelayMillis. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setRetryBaseDelayMillis(delayMillis);
+                source.sendFeedback(() -> Text.literal("§aRetryBaseDelayMillis set to: " + delayMillis + "§r"), false);
+                break;
+            case "retrymaxdelayseconds":
+                Integer delaySeconds = parsePositiveInt(value);
+                if (delaySeconds == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for retryMaxDelaySeconds. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setRetryMaxDelaySeconds(delaySeconds);
+                source.sendFeedback(() -> Text.literal("§aRetryMaxDelaySeconds set to: " + delaySeconds + "§r"), false);
+                break;
+            case "providerrouting":
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    config.setProviderRouting(Boolean.parseBoolean(value.toLowerCase()));
+                    source.sendFeedback(() -> Text.literal("§aProviderRouting set to: " + config.getProviderRouting() + "§r"), false);
+                } else {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for providerRouting. Use 'true' or 'false'.§r"), false);
+                    return 0;
+                }
+                break;
+            case "circuitbreakerfailures":
+                Integer failures = parsePositiveInt(value);
+                if (failures == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for circuitBreakerFailures. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setCircuitBreakerFailures(failures);
+                source.sendFeedback(() -> Text.literal("§aCircuitBreakerFailures set to: " + failures + "§r"), false);
+                break;
+            case "circuitbreakercooldownseconds":
+                Integer cooldownSeconds = parsePositiveInt(value);
+                if (cooldownSeconds == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for circuitBreakerCooldownSeconds. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setCircuitBreakerCooldownSeconds(cooldownSeconds);
+                source.sendFeedback(() -> Text.literal("§aCircuitBreakerCooldownSeconds set to: " + cooldownSeconds + "§r"), false);
+                break;
+            case "hedgingenabled":
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    config.setHedgingEnabled(Boolean.parseBoolean(value.toLowerCase()));
+                    source.sendFeedback(() -> Text.literal("§aHedgingEnabled set to: " + config.getHedgingEnabled() + "§r"), false);
+                } else {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for hedgingEnabled. Use 'true' or 'false'.§r"), false);
+                    return 0;
+                }
+                break;
+            case "hedgingpercentile":
+                Integer percentile = parsePositiveInt(value);
+                if (percentile == null || percentile > 99) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for hedgingPercentile. Use a number from 1 to 99.§r"), false);
+                    return 0;
+                }
+                config.setHedgingPercentile(percentile);
+                source.sendFeedback(() -> Text.literal("§aHedgingPercentile set to: " + percentile + "§r"), false);
+                break;
+            case "hedgingbudgetpercent":
+                Integer budgetPercent = parsePositiveInt(value);
+                if (budgetPercent == null || budgetPercent > 50) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for hedgingBudgetPercent. Use a number from 1 to 50.§r"), false);
+                    return 0;
+                }
+                config.setHedgingBudgetPercent(budgetPercent);
+                source.sendFeedback(() -> Text.literal("§aHedgingBudgetPercent set to: " + budgetPercent + "§r"), false);
+                break;
+            case "metricsexportseconds":
+                Integer seconds = parseNonNegativeInt(value);
+                if (seconds == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for metricsExportSeconds. Use 0 or a positive number.§r"), false);
+                    return 0;
+                }
+                config.setMetricsExportSeconds(seconds);
+                metricsExporter.reconfigure();
+                source.sendFeedback(() -> Text.literal("§aMetricsExportSeconds set to: " + seconds + "§r"), false);
+                break;
+            case "schedulerprioritypermissionlevel":
+                Integer level = parseNonNegativeInt(value);
+                if (level == null || level > 4) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for schedulerPriorityPermissionLevel. Use a number from 0 to 4.§r"), false);
+                    return 0;
+                }
+                config.setSchedulerPriorityPermissionLevel(level);
+                source.sendFeedback(() -> Text.literal("§aSchedulerPriorityPermissionLevel set to: " + level + "§r"), false);
+                break;
+            case "schedulerpriorityplayers":
+                List<String> priorityPlayers = new ArrayList<>();
+                if (!value.trim().equalsIgnoreCase("none")) {
+                    for (String name : value.split(",")) {
+                        if (!name.isBlank()) {
+                            priorityPlayers.add(name.trim());
+                        }
+                    }
+                }
+                config.setSchedulerPriorityPlayers(priorityPlayers);
+                source.sendFeedback(() -> Text.literal("§aSchedulerPriorityPlayers set to: " + (priorityPlayers.isEmpty() ? "none" : String.join(", ", priorityPlayers)) + "§r"), false);
+                break;
+            case "schedulerpriorityweight":
+                Integer weight = parsePositiveInt(value);
+                if (weight == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for schedulerPriorityWeight. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setSchedulerPriorityWeight(weight);
+                source.sendFeedback(() -> Text.literal("§aSchedulerPriorityWeight set to: " + weight + "§r"), false);
+                break;
+            case "schedulermaxwaitseconds":
+                Integer maxWait = parsePositiveInt(value);
+                if (maxWait == null) {
+                    source.sendFeedback(() -> Text.literal("§cInvalid value for schedulerMaxWaitSeconds. Use a positive number.§r"), false);
+                    return 0;
+                }
+                config.setSchedulerMaxWaitSeconds(maxWait);
+                source.sendFeedback(() -> Text.literal("§aSchedulerMaxWaitSeconds set to: " + maxWait + "§r"), false);
+                break;
             default:
                 validKey = false;
                 source.sendFeedback(() -> Text.literal("§cInvalid configuration key. Type /llmconfig for help.§r"), false);
@@ -218,10 +866,52 @@ public class LLMCommandMod implements ModInitializer {
         }
         
         if (validKey) {
-            // Save the updated config
+            // Save the updated config and apply it to the providers
             config.saveConfig();
+            providerFactory.refresh();
+            // Drops stored answers for a changed model, system prompt or routing, and applies the size cap
+            answerStore.refresh();
         }
         
         return Command.SINGLE_SUCCESS;
     }
+    
+    /**
+     * Sets a timeout from '<seconds>' (all providers) or '<provider> <seconds>' (one provider)
+     */
+    private boolean setTimeout(String setting, String value, ServerCommandSource source) {
+        String[] parts = value.trim().split("\\s+");
+        String provider = parts.length == 2 ? parts[0].toLowerCase() : null;
+        Integer seconds = parts.length <= 2 ? parsePositiveInt(parts[parts.length - 1]) : null;
+        
+        if (seconds == null || (provider != null && providerFactory.getProvider(provider) == null)) {
+            source.sendFeedback(() -> Text.literal("§cInvalid value for " + setting + ". Use '<seconds>' or '<provider> <seconds>'.§r"), false);
+            return false;
+        }
+        
+        config.setTimeoutSeconds(setting, provider, seconds);
+        String target = provider != null ? " for " + provider : "";
+        source.sendFeedback(() -> Text.literal("§a" + setting + target + " set to: " + seconds + "§r"), false);
+        return true;
+    }
+    
+    /**
+     * Parses a positive integer setting, returning null if the value is invalid
+     */
+    private static Integer parsePositiveInt(String value) {
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Parses a setting that may also be zero, returning null if the value is invalid
+     */
+    private static Integer parseNonNegativeInt(String value) {
+        Integer parsed = parsePositiveInt(value);
+        return parsed != null || !value.trim().equals("0") ? parsed : 0;
+    }
 } 
\ No newline at end of file
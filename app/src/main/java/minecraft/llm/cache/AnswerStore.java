@@ -0,0 +1,478 @@
+package minecraft.llm.cache;
+
+import com.google.common.hash.Hashing;
+import minecraft.llm.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Answers persisted to disk so the response cache survives server restarts.
+ *
+ * Answers are appended to a log next to llmcommand.json and located through an
+ * in-memory index. Every file access happens on one background thread, so the
+ * game thread only ever checks the index. Each answer records a fingerprint of
+ * the model and system prompt it was generated with, and answers whose
+ * fingerprint no longer matches what their provider answers with now are
+ * dropped. The log is
+ * rewritten without dropped and overwritten answers once they outweigh the live
+ * ones, or once it grows past the configured size, in which case the oldest
+ * answers go first.
+ */
+public class AnswerStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+
+    private static final int MAGIC = 0x4C4C4D41; // "LLMA"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    // Payload length and CRC32 ahead of every record
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final long MEGABYTE = 1024 * 1024;
+    // Don't bother rewriting the log to reclaim less than this
+    private static final long MIN_RECLAIM_BYTES = MEGABYTE;
+
+    private final Config config;
+    // The model each provider answers with now, by provider name
+    private final Function<String, String> currentModel;
+    private final Path file;
+    private final ExecutorService io;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    // Only touched on the I/O thread
+    private FileChannel channel;
+    private long liveBytes;
+    private long fileBytes;
+
+    private volatile boolean loaded;
+
+    private record Entry(long offset, int length, long fingerprint, long createdAt) {
+    }
+
+    /**
+     * @param currentModel the model a provider answers with now, given the provider name used in cache keys
+     */
+    public AnswerStore(Config config, Function<String, String> currentModel) {
+        this(config, currentModel, Paths.get("config").resolve("llmcommand-answers.log"));
+    }
+
+    AnswerStore(Config config, Function<String, String> currentModel, Path file) {
+        this.config = config;
+        this.currentModel = currentModel;
+        this.file = file;
+        this.io = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LLMCommandMod-AnswerStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return config.getAnswerStoreEnabled();
+    }
+
+    /**
+     * Loads the index in the background; answers become available once it has been read
+     */
+    public void start() {
+        if (isEnabled()) {
+            io.execute(this::open);
+        }
+    }
+
+    /**
+     * Checks whether an answer is stored for the key, without touching the disk
+     */
+    public boolean contains(ResponseCache.Key key) {
+        if (!loaded || !isEnabled()) {
+            return false;
+        }
+        Entry entry = index.get(indexKey(key));
+        return entry != null && entry.fingerprint() == fingerprint(key.model(), key.systemPrompt());
+    }
+
+    /**
+     * Reads a stored answer off the game thread, completing with null if there is none
+     */
+    public CompletableFuture<String> read(ResponseCache.Key key) {
+        return CompletableFuture.supplyAsync(() -> {
+            String indexKey = indexKey(key);
+            Entry entry = index.get(indexKey);
+            if (channel == null || entry == null || entry.fingerprint() != fingerprint(key.model(), key.systemPrompt())) {
+                return null;
+            }
+
+            try {
+                ByteBuffer payload = readRecord(entry.offset(), entry.length());
+                if (payload == null) {
+                    remove(indexKey, entry);
+                    return null;
+                }
+                payload.position(16);
+                String storedKey = readString(payload);
+                return storedKey.equals(indexKey) ? readString(payload) : null;
+            } catch (IOException e) {
+                LOGGER.error("Error reading stored answer", e);
+                return null;
+            }
+        }, io);
+    }
+
+    /**
+     * Appends a completed answer to the log in the background
+     */
+    public void put(ResponseCache.Key key, String answer) {
+        if (!isEnabled()) {
+            return;
+        }
+        long fingerprint = fingerprint(key.model(), key.systemPrompt());
+        long createdAt = System.currentTimeMillis();
+        io.execute(() -> {
+            if (open()) {
+                try {
+                    append(indexKey(key), answer, fingerprint, createdAt);
+                    compactIfNeeded();
+                } catch (IOException e) {
+                    LOGGER.error("Error storing answer", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops answers made stale by a model or system prompt change and applies the size cap.
+     * Call it after the providers have picked up the change.
+     */
+    public void refresh() {
+        io.execute(() -> {
+            if (channel == null) {
+                return;
+            }
+            dropStale();
+            try {
+                compactIfNeeded();
+            } catch (IOException e) {
+                LOGGER.error("Error compacting answer store", e);
+            }
+        });
+    }
+
+    /**
+     * Removes every stored answer
+     */
+    public void clear() {
+        io.execute(() -> {
+            if (channel == null && !Files.exists(file)) {
+                return;
+            }
+            if (!open()) {
+                return;
+            }
+            index.clear();
+            liveBytes = 0;
+            try {
+                channel.truncate(FILE_HEADER_BYTES);
+                fileBytes = FILE_HEADER_BYTES;
+            } catch (IOException e) {
+                LOGGER.error("Error clearing answer store", e);
+            }
+        });
+    }
+
+    /**
+     * Flushes and closes the log, waiting briefly for pending writes
+     */
+    public void shutdown() {
+        try {
+            io.submit(this::close).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            LOGGER.error("Error closing answer store", e);
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long getFileBytes() {
+        return Files.exists(file) ? file.toFile().length() : 0;
+    }
+
+    private boolean open() {
+        if (channel != null) {
+            return true;
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!hasValidHeader()) {
+                if (channel.size() > 0) {
+                    LOGGER.warn("Answer store " + file + " is not in a recognized format, starting over");
+                }
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(channel, header, 0);
+            }
+
+            index.clear();
+            liveBytes = 0;
+            fileBytes = scan();
+            dropStale();
+            loaded = true;
+            compactIfNeeded();
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Error opening answer store " + file, e);
+            close();
+            return false;
+        }
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        if (channel.size() < FILE_HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        readFully(channel, header, 0);
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+
+    /**
+     * Rebuilds the index from the log, cutting off a record torn by a crash
+     */
+    private long scan() throws IOException {
+        long position = FILE_HEADER_BYTES;
+        long end = channel.size();
+        while (position + RECORD_HEADER_BYTES <= end) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            readFully(channel, header, position);
+            int length = RECORD_HEADER_BYTES + header.getInt(0);
+            if (length <= RECORD_HEADER_BYTES || position + length > end) {
+                break;
+            }
+
+            ByteBuffer payload = readRecord(position, length);
+            if (payload == null) {
+                break;
+            }
+            long createdAt = payload.getLong();
+            long fingerprint = payload.getLong();
+            String key = readString(payload);
+            track(key, new Entry(position, length, fingerprint, createdAt));
+            position += length;
+        }
+
+        if (position < end) {
+            LOGGER.warn("Discarding " + (end - position) + " damaged bytes at the end of " + file);
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    private void append(String key, String answer, long fingerprint, long createdAt) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] answerBytes = answer.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 8 + 8 + 4 + keyBytes.length + 4 + answerBytes.length;
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadLength);
+        record.putInt(payloadLength).putInt(0)
+            .putLong(createdAt).putLong(fingerprint)
+            .putInt(keyBytes.length).put(keyBytes)
+            .putInt(answerBytes.length).put(answerBytes);
+        record.putInt(4, crc(record.array(), RECORD_HEADER_BYTES, payloadLength));
+        record.flip();
+
+        long position = fileBytes;
+        writeFully(channel, record, position);
+        fileBytes = position + record.capacity();
+        track(key, new Entry(position, record.capacity(), fingerprint, createdAt));
+    }
+
+    /**
+     * Reads a record and returns its payload, or null if it fails the checksum
+     */
+    private ByteBuffer readRecord(long offset, int length) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(channel, record, offset);
+        int payloadLength = record.getInt(0);
+        if (payloadLength != length - RECORD_HEADER_BYTES
+            || record.getInt(4) != crc(record.array(), RECORD_HEADER_BYTES, payloadLength)) {
+            return null;
+        }
+        return record.position(RECORD_HEADER_BYTES).slice();
+    }
+
+    private void track(String key, Entry entry) {
+        Entry previous = index.put(key, entry);
+        liveBytes += entry.length();
+        if (previous != null) {
+            liveBytes -= previous.length();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (index.remove(key, entry)) {
+            liveBytes -= entry.length();
+        }
+    }
+
+    private void dropStale() {
+        String systemPrompt = config.getSystemPrompt() == null ? "" : config.getSystemPrompt();
+        Map<String, Long> current = new HashMap<>();
+        int dropped = 0;
+        for (Map.Entry<String, Entry> stored : index.entrySet()) {
+            String provider = stored.getKey().substring(0, stored.getKey().indexOf('\n'));
+            long fingerprint = current.computeIfAbsent(provider, name -> fingerprint(currentModel.apply(name), systemPrompt));
+            if (stored.getValue().fingerprint() != fingerprint) {
+                remove(stored.getKey(), stored.getValue());
+                dropped++;
+            }
+        }
+        if (dropped > 0 && config.getDebugMode()) {
+            LOGGER.info("Dropped " + dropped + " stored answers for an old model or system prompt");
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        long cap = Math.max(1, config.getAnswerStoreMaxMegabytes()) * MEGABYTE;
+        long deadBytes = fileBytes - FILE_HEADER_BYTES - liveBytes;
+        if (fileBytes > cap || (deadBytes > liveBytes && deadBytes >= MIN_RECLAIM_BYTES)) {
+            compact(cap);
+        }
+    }
+
+    /**
+     * Rewrites the log with only live answers, keeping the newest ones within three quarters of the cap
+     */
+    private void compact(long cap) throws IOException {
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().createdAt()).reversed());
+
+        long budget = cap / 4 * 3;
+        long kept = 0;
+        List<Map.Entry<String, Entry>> survivors = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : entries) {
+            if (kept + entry.getValue().length() > budget) {
+                remove(entry.getKey(), entry.getValue());
+                continue;
+            }
+            kept += entry.getValue().length();
+            survivors.add(entry);
+        }
+        // Copy in log order so the file is read sequentially
+        survivors.sort(Comparator.comparingLong(e -> e.getValue().offset()));
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Map<String, Entry> moved = new HashMap<>();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.transferTo(0, FILE_HEADER_BYTES, out);
+            long position = FILE_HEADER_BYTES;
+            for (Map.Entry<String, Entry> survivor : survivors) {
+                Entry entry = survivor.getValue();
+                long copied = 0;
+                while (copied < entry.length()) {
+                    copied += channel.transferTo(entry.offset() + copied, entry.length() - copied, out);
+                }
+                moved.put(survivor.getKey(), new Entry(position, entry.length(), entry.fingerprint(), entry.createdAt()));
+                position += entry.length();
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        channel = null;
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long before = fileBytes;
+        index.putAll(moved);
+        liveBytes = kept;
+        fileBytes = channel.size();
+        if (config.getDebugMode()) {
+            LOGGER.info("Compacted answer store from " + before + " to " + fileBytes + " bytes, " + moved.size() + " answers kept");
+        }
+    }
+
+    private void close() {
+        loaded = false;
+        index.clear();
+        liveBytes = 0;
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing answer store", e);
+        }
+        channel = null;
+    }
+
+    private static String indexKey(ResponseCache.Key key) {
+        return key.provider() + '\n' + key.query();
+    }
+
+    private static long fingerprint(String model, String systemPrompt) {
+        return Hashing.murmur3_128().newHasher()
+            .putString(model == null ? "" : model, StandardCharsets.UTF_8)
+            .putChar('\0')
+            .putString(systemPrompt == null ? "" : systemPrompt, StandardCharsets.UTF_8)
+            .hash()
+            .asLong();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
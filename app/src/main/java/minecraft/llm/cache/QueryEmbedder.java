@@ -0,0 +1,116 @@
+package minecraft.llm.cache;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Turns a question into a vector whose direction says which words it uses,
+ * so differently worded questions can be compared without a network call.
+ *
+ * Words that say nothing about the topic ("how", "do", "i", "the") are
+ * dropped, a plural "s" is stripped, and every remaining word contributes the
+ * character trigrams of the word padded with spaces, with negations counting
+ * several times over. Trigrams are hashed into
+ * a fixed number of dimensions with a hashed sign, so collisions cancel out on
+ * average instead of adding up. "how to find diamonds" and "where do i find
+ * diamond" end up with the same vector, while "best sword enchantment" and
+ * "best bow enchantment" stay apart.
+ */
+final class QueryEmbedder {
+    static final int DIMENSIONS = 256;
+
+    // Question words and filler
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "the", "is", "are", "was", "were", "be", "do", "does", "did",
+        "i", "me", "my", "you", "your", "we", "it", "its", "to", "of", "in", "on",
+        "at", "for", "and", "or", "with", "how", "what", "where", "when", "which",
+        "who", "why", "can", "could", "should", "would", "will", "there", "please",
+        "some", "any", "get"
+    );
+    // Words that turn the answer around, weighted so "how not to die" is far from "how to die"; "t" is from "don't"
+    private static final Set<String> NEGATIONS = Set.of("not", "no", "never", "without", "t");
+    private static final int NEGATION_WEIGHT = 4;
+
+    private QueryEmbedder() {
+    }
+
+    /**
+     * Embeds a question
+     *
+     * @return a vector of unit length, or null if no words are left to compare once filler is dropped
+     */
+    static float[] embed(String query) {
+        float[] vector = new float[DIMENSIONS];
+        int features = 0;
+        int i = 0;
+        while (i < query.length()) {
+            while (i < query.length() && !Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < query.length() && Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                features += addWord(vector, query.substring(start, i).toLowerCase(Locale.ROOT));
+            }
+        }
+        if (features == 0) {
+            return null;
+        }
+
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            // Every trigram was cancelled out by a colliding one
+            return null;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * Adds the trigrams of one word, returning how many were added
+     */
+    private static int addWord(float[] vector, String word) {
+        if (STOP_WORDS.contains(word)) {
+            return 0;
+        }
+        int weight = NEGATIONS.contains(word) ? NEGATION_WEIGHT : 1;
+        int end = word.length();
+        // "diamonds" and "diamond" are the same thing, "glass" is not "glas"
+        if (end > 3 && word.charAt(end - 1) == 's' && word.charAt(end - 2) != 's') {
+            end--;
+        }
+
+        // Positions -1 and end stand for the padding spaces
+        int count = 0;
+        for (int j = -1; j + 2 <= end; j++) {
+            int hash = mix(((charAt(word, j, end) * 31) + charAt(word, j + 1, end)) * 31 + charAt(word, j + 2, end));
+            vector[hash & (DIMENSIONS - 1)] += hash < 0 ? -weight : weight;
+            count++;
+        }
+        return count;
+    }
+
+    private static char charAt(String word, int index, int end) {
+        return index < 0 || index >= end ? ' ' : word.charAt(index);
+    }
+
+    /**
+     * Murmur3's finalizer, so neighbouring trigrams land far apart
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
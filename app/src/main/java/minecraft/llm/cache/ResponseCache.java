@@ -0,0 +1,219 @@
+package minecraft.llm.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import minecraft.llm.config.Config;
+import minecraft.llm.providers.ResponseSink;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache of complete answers to repeated questions.
+ *
+ * Answers are keyed on provider, model, system prompt and the normalized
+ * question, kept for a limited time and evicted least-recently-used first
+ * once the cache is full. Completed answers are also written to the
+ * {@link AnswerStore} when it is enabled, and indexed by meaning in a
+ * {@link SemanticCache} when that is enabled, so a differently worded question
+ * can be answered with {@link #getSimilar(Key)}.
+ */
+public class ResponseCache {
+    private final Config config;
+    private final AnswerStore answerStore;
+    private volatile Cache<Key, String> cache;
+    private volatile SemanticCache similar;
+
+    /**
+     * Identifies an answer. The system prompt is held by reference, so entries don't copy it.
+     */
+    public record Key(String provider, String model, String systemPrompt, String query) {
+    }
+
+    public ResponseCache(Config config, AnswerStore answerStore) {
+        this.config = config;
+        this.answerStore = answerStore;
+        this.cache = build(config);
+        this.similar = buildSemantic(config);
+    }
+
+    /**
+     * Builds the key for a question, normalizing case, whitespace and trailing punctuation
+     */
+    public static Key key(String provider, String model, String systemPrompt, String query) {
+        return new Key(provider, model, systemPrompt == null ? "" : systemPrompt, normalize(query));
+    }
+
+    /**
+     * Gets a cached answer, or null if there is none
+     */
+    public String get(Key key) {
+        if (!config.getResponseCacheEnabled()) {
+            return null;
+        }
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Gets the cached answer to the most similar question asked with the same settings,
+     * or null if none is at least semanticCacheSimilarityPercent similar
+     */
+    public String getSimilar(Key key) {
+        if (!config.getResponseCacheEnabled() || !config.getSemanticCacheEnabled()) {
+            return null;
+        }
+        return similar.get(key, config.getSemanticCacheSimilarityPercent() / 100f, System.nanoTime());
+    }
+
+    /**
+     * Caches an answer found elsewhere, such as in the answer store
+     */
+    public void put(Key key, String answer) {
+        if (config.getResponseCacheEnabled()) {
+            cache.put(key, answer);
+            if (config.getSemanticCacheEnabled()) {
+                similar.put(key, answer, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Wraps a sink so the answer is cached once it completes successfully
+     */
+    public ResponseSink recording(Key key, ResponseSink delegate) {
+        boolean inMemory = config.getResponseCacheEnabled();
+        boolean bySimilarity = inMemory && config.getSemanticCacheEnabled();
+        boolean onDisk = answerStore.isEnabled();
+        if (!inMemory && !onDisk) {
+            return delegate;
+        }
+
+        return new ResponseSink() {
+            private final StringBuilder answer = new StringBuilder();
+
+            @Override
+            public void onText(String text) {
+                answer.append(text);
+                delegate.onText(text);
+            }
+
+            @Override
+            public void onComplete() {
+                if (answer.length() > 0) {
+                    String complete = answer.toString();
+                    if (inMemory) {
+                        cache.put(key, complete);
+                    }
+                    if (bySimilarity) {
+                        similar.put(key, complete, System.nanoTime());
+                    }
+                    if (onDisk) {
+                        answerStore.put(key, complete);
+                    }
+                }
+                delegate.onComplete();
+            }
+
+            @Override
+            public void onError(String message) {
+                delegate.onError(message);
+            }
+        };
+    }
+
+    /**
+     * Removes every cached answer, including those stored on disk
+     */
+    public void clear() {
+        cache.invalidateAll();
+        similar.clear();
+        answerStore.clear();
+    }
+
+    /**
+     * Rebuilds the cache with the current size and TTL settings, dropping its contents
+     */
+    public void reconfigure() {
+        Cache<Key, String> old = cache;
+        SemanticCache oldSimilar = similar;
+        cache = build(config);
+        similar = buildSemantic(config);
+        old.invalidateAll();
+        oldSimilar.clear();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Number of answers indexed by meaning
+     */
+    public int semanticSize() {
+        return similar.size();
+    }
+
+    /**
+     * Lookups by meaning that found an answer since the cache was last rebuilt
+     */
+    public long semanticHits() {
+        return similar.getHits();
+    }
+
+    /**
+     * Lookups by meaning that found nothing similar enough since the cache was last rebuilt
+     */
+    public long semanticMisses() {
+        return similar.getMisses();
+    }
+
+    /**
+     * Hit and miss counts since the cache was last rebuilt
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static Cache<Key, String> build(Config config) {
+        return CacheBuilder.newBuilder()
+            .maximumSize(Math.max(1, config.getResponseCacheMaxEntries()))
+            .expireAfterWrite(Math.max(1, config.getResponseCacheTtlMinutes()), TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+    }
+
+    private static SemanticCache buildSemantic(Config config) {
+        return new SemanticCache(config.getSemanticCacheMaxEntries(),
+            TimeUnit.MINUTES.toNanos(Math.max(1, config.getResponseCacheTtlMinutes())));
+    }
+
+    static String normalize(String query) {
+        StringBuilder normalized = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(c);
+        }
+
+        // "How do I find diamonds?" and "how do i find diamonds" are the same question
+        int end = normalized.length();
+        while (end > 0 && isTrailingPunctuation(normalized.charAt(end - 1))) {
+            end--;
+        }
+        normalized.setLength(end);
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '?' || c == '!' || c == '.' || c == ' ';
+    }
+}
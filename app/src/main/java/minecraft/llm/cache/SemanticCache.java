@@ -0,0 +1,355 @@
+package minecraft.llm.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Finds a cached answer to a differently worded question with the same meaning.
+ *
+ * Questions are embedded locally by {@link QueryEmbedder} and indexed with
+ * locality-sensitive hashing: each of several tables hashes a vector to the
+ * side of a few fixed random hyperplanes it falls on, so similar vectors tend
+ * to share a bucket in at least one table. A lookup only compares the question
+ * with the entries in its buckets, and answers with the most similar one for
+ * the same provider, model and system prompt if it is similar enough. Bigger
+ * caches use more hyperplanes per table so buckets stay small, and only the
+ * newest entries of a crowded bucket are compared, so a lookup costs about the
+ * same however full the cache is.
+ *
+ * Vectors are kept as bytes with a scale, and every per-entry structure lives
+ * in arrays indexed by slot that grow up to the maximum number of entries, so
+ * memory is bounded and a lookup only allocates a few small arrays. Entries
+ * are evicted least-recently-used first once the cache is full, and expire
+ * after the time to live.
+ */
+final class SemanticCache {
+    private static final int TABLES = 16;
+    // Hyperplanes per table, so buckets per table, chosen for about four entries per bucket
+    private static final int MIN_BITS = 8;
+    private static final int MAX_BITS = 14;
+    // Entries compared per bucket, newest first
+    private static final int MAX_BUCKET_CANDIDATES = 32;
+    // Close enough to identical, allowing for rounding, that no other entry can be a better answer
+    private static final float IDENTICAL = 0.995f;
+    private static final int DIMENSIONS = QueryEmbedder.DIMENSIONS;
+    private static final int INITIAL_SLOTS = 64;
+    private static final int NONE = -1;
+    // The same hyperplanes for every cache, so results don't depend on when it was built; one row per dimension
+    private static final float[][] HYPERPLANES = hyperplanes(0x5E3A471CL);
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final int bits;
+
+    // Guarded by this; per-slot arrays, with the bucket links of slot s in table t at s * TABLES + t
+    private final int[] bucketHeads;
+    private final Map<ResponseCache.Key, Integer> slots = new HashMap<>();
+    private ResponseCache.Key[] keys = new ResponseCache.Key[0];
+    private String[] answers = new String[0];
+    private byte[] vectors = new byte[0];
+    private float[] scales = new float[0];
+    private long[] storedAt = new long[0];
+    private int[] buckets = new int[0];
+    private int[] bucketNext = new int[0];
+    private int[] bucketPrev = new int[0];
+    private int[] lruNext = new int[0];
+    private int[] lruPrev = new int[0];
+    private int[] seen = new int[0];
+    private int lruHead = NONE;
+    private int lruTail = NONE;
+    private int freeHead = NONE;
+    private int allocated;
+    private int lookups;
+    private long hits;
+    private long misses;
+
+    SemanticCache(int maxEntries, long ttlNanos) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = ttlNanos;
+        this.bits = Math.max(MIN_BITS, Math.min(MAX_BITS, 32 - Integer.numberOfLeadingZeros(this.maxEntries) - 2));
+        this.bucketHeads = new int[TABLES << bits];
+        Arrays.fill(bucketHeads, NONE);
+    }
+
+    /**
+     * Gets the answer to the most similar cached question, or null if none is at least as similar as the threshold
+     *
+     * @param threshold the lowest cosine similarity accepted, from 0 to 1
+     */
+    String get(ResponseCache.Key key, float threshold, long now) {
+        float[] vector = QueryEmbedder.embed(key.query());
+        if (vector == null) {
+            return null;
+        }
+        byte[] quantized = new byte[DIMENSIONS];
+        float scale = quantize(vector, quantized, 0);
+        int[] used = usedDimensions(vector);
+        int[] hashes = hashes(vector, used);
+
+        synchronized (this) {
+            // Slots compared in this lookup are stamped so one seen in several tables is compared once
+            int stamp = ++lookups;
+            int best = NONE;
+            float bestSimilarity = threshold;
+            for (int table = 0; table < TABLES && bestSimilarity < IDENTICAL; table++) {
+                int slot = bucketHeads[(table << bits) | hashes[table]];
+                for (int compared = 0; slot != NONE && compared < MAX_BUCKET_CANDIDATES && bestSimilarity < IDENTICAL; compared++) {
+                    int next = bucketNext[slot * TABLES + table];
+                    if (seen[slot] != stamp) {
+                        seen[slot] = stamp;
+                        if (now - storedAt[slot] >= ttlNanos) {
+                            remove(slot);
+                        } else {
+                            // Settings are checked last since they're in another object, and rarely differ
+                            float similarity = dot(quantized, used, slot) * scale * scales[slot];
+                            if (similarity >= bestSimilarity && sameSettings(keys[slot], key)) {
+                                best = slot;
+                                bestSimilarity = similarity;
+                            }
+                        }
+                    }
+                    slot = next;
+                }
+            }
+
+            if (best == NONE) {
+                misses++;
+                return null;
+            }
+            hits++;
+            unlinkLru(best);
+            linkLruHead(best);
+            return answers[best];
+        }
+    }
+
+    /**
+     * Adds an answer, replacing the one for the same question and evicting the least recently used if full
+     */
+    void put(ResponseCache.Key key, String answer, long now) {
+        float[] vector = QueryEmbedder.embed(key.query());
+        if (vector == null) {
+            return;
+        }
+        int[] hashes = hashes(vector, usedDimensions(vector));
+
+        synchronized (this) {
+            Integer existing = slots.get(key);
+            if (existing != null) {
+                remove(existing);
+            } else if (slots.size() >= maxEntries) {
+                remove(lruTail);
+            }
+
+            int slot = allocate();
+            slots.put(key, slot);
+            keys[slot] = key;
+            answers[slot] = answer;
+            scales[slot] = quantize(vector, vectors, slot * DIMENSIONS);
+            storedAt[slot] = now;
+            for (int table = 0; table < TABLES; table++) {
+                int bucket = (table << bits) | hashes[table];
+                int link = slot * TABLES + table;
+                buckets[link] = bucket;
+                bucketPrev[link] = NONE;
+                bucketNext[link] = bucketHeads[bucket];
+                if (bucketHeads[bucket] != NONE) {
+                    bucketPrev[bucketHeads[bucket] * TABLES + table] = slot;
+                }
+                bucketHeads[bucket] = slot;
+            }
+            linkLruHead(slot);
+        }
+    }
+
+    synchronized void clear() {
+        while (lruHead != NONE) {
+            remove(lruHead);
+        }
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private static boolean sameSettings(ResponseCache.Key cached, ResponseCache.Key key) {
+        return cached.provider().equals(key.provider())
+            && cached.model().equals(key.model())
+            && cached.systemPrompt().equals(key.systemPrompt());
+    }
+
+    /**
+     * Dot product with a cached vector, over the dimensions the question uses since the others are 0
+     */
+    private int dot(byte[] quantized, int[] used, int slot) {
+        int offset = slot * DIMENSIONS;
+        int sum = 0;
+        for (int d : used) {
+            sum += quantized[d] * vectors[offset + d];
+        }
+        return sum;
+    }
+
+    /**
+     * Takes a free slot, growing the arrays if every allocated slot is in use
+     */
+    private int allocate() {
+        if (freeHead != NONE) {
+            int slot = freeHead;
+            freeHead = lruNext[slot];
+            return slot;
+        }
+        if (allocated == keys.length) {
+            grow(Math.min(maxEntries, Math.max(INITIAL_SLOTS, allocated * 2)));
+        }
+        return allocated++;
+    }
+
+    private void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        answers = Arrays.copyOf(answers, capacity);
+        vectors = Arrays.copyOf(vectors, capacity * DIMENSIONS);
+        scales = Arrays.copyOf(scales, capacity);
+        storedAt = Arrays.copyOf(storedAt, capacity);
+        buckets = Arrays.copyOf(buckets, capacity * TABLES);
+        bucketNext = Arrays.copyOf(bucketNext, capacity * TABLES);
+        bucketPrev = Arrays.copyOf(bucketPrev, capacity * TABLES);
+        lruNext = Arrays.copyOf(lruNext, capacity);
+        lruPrev = Arrays.copyOf(lruPrev, capacity);
+        seen = Arrays.copyOf(seen, capacity);
+    }
+
+    /**
+     * Takes an entry out of its buckets and the LRU list, and puts its slot on the free list
+     */
+    private void remove(int slot) {
+        slots.remove(keys[slot]);
+        for (int table = 0; table < TABLES; table++) {
+            int link = slot * TABLES + table;
+            int prev = bucketPrev[link];
+            int next = bucketNext[link];
+            if (prev != NONE) {
+                bucketNext[prev * TABLES + table] = next;
+            } else {
+                bucketHeads[buckets[link]] = next;
+            }
+            if (next != NONE) {
+                bucketPrev[next * TABLES + table] = prev;
+            }
+        }
+        unlinkLru(slot);
+        keys[slot] = null;
+        answers[slot] = null;
+        // The free list reuses the LRU links
+        lruNext[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    private void linkLruHead(int slot) {
+        lruPrev[slot] = NONE;
+        lruNext[slot] = lruHead;
+        if (lruHead != NONE) {
+            lruPrev[lruHead] = slot;
+        } else {
+            lruTail = slot;
+        }
+        lruHead = slot;
+    }
+
+    private void unlinkLru(int slot) {
+        int prev = lruPrev[slot];
+        int next = lruNext[slot];
+        if (prev != NONE) {
+            lruNext[prev] = next;
+        } else {
+            lruHead = next;
+        }
+        if (next != NONE) {
+            lruPrev[next] = prev;
+        } else {
+            lruTail = prev;
+        }
+    }
+
+    /**
+     * Stores a unit vector as bytes scaled to its largest component, returning the scale
+     */
+    private static float quantize(float[] vector, byte[] into, int offset) {
+        float max = 0;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+        float scale = max / 127;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            into[offset + d] = (byte) Math.round(vector[d] / scale);
+        }
+        return scale;
+    }
+
+    /**
+     * The dimensions of a vector that aren't 0; a question only touches a few dozen of them
+     */
+    private static int[] usedDimensions(float[] vector) {
+        int count = 0;
+        for (float value : vector) {
+            if (value != 0) {
+                count++;
+            }
+        }
+        int[] used = new int[count];
+        count = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (vector[d] != 0) {
+                used[count++] = d;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * The bucket of a vector in each table: one bit per hyperplane, set if the vector is on its positive side
+     */
+    private int[] hashes(float[] vector, int[] used) {
+        // Hyperplane p of a table is column table * bits + p, summed a dimension at a time
+        int planes = TABLES * bits;
+        float[] sides = new float[planes];
+        for (int d : used) {
+            float[] row = HYPERPLANES[d];
+            float value = vector[d];
+            for (int p = 0; p < planes; p++) {
+                sides[p] += row[p] * value;
+            }
+        }
+
+        int[] hashes = new int[TABLES];
+        for (int table = 0; table < TABLES; table++) {
+            int hash = 0;
+            for (int bit = 0; bit < bits; bit++) {
+                hash = (hash << 1) | (sides[table * bits + bit] >= 0 ? 1 : 0);
+            }
+            hashes[table] = hash;
+        }
+        return hashes;
+    }
+
+    private static float[][] hyperplanes(long seed) {
+        Random random = new Random(seed);
+        float[][] rows = new float[DIMENSIONS][TABLES * MAX_BITS];
+        for (float[] row : rows) {
+            for (int p = 0; p < row.length; p++) {
+                row[p] = (float) random.nextGaussian();
+            }
+        }
+        return rows;
+    }
+}
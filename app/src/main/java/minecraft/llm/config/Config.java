@@ -1,74 +1,395 @@
 package minecraft.llm.config;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class Config {
     private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
     
-    // API keys
-    private String anthropicApiKey = "";
-    private String openaiApiKey = "";
-    private String geminiApiKey = "";
+    // Names of the timeout settings, as used in the config file and /llmconfig
+    public static final String CONNECT_TIMEOUT = "connectTimeoutSeconds";
+    public static final String FIRST_BYTE_TIMEOUT = "firstByteTimeoutSeconds";
+    public static final String REQUEST_TIMEOUT = "requestTimeoutSeconds";
     
-    // Models
-    private String anthropicModel = "claude-3-haiku-20240307";
-    private String openaiModel = "gpt-4o-mini";
-    private String geminiModel = "gemini-2.0-flash";
+    static final Path CONFIG_FILE = Paths.get("config").resolve("llmcommand.json");
     
-    // System prompt
-    private String systemPrompt = "You are a helpful Minecraft assistant. Answer questions about Minecraft and provide helpful advice to players. Keep responses concise to fit in the Minecraft chat.";
+    private static final Set<String> PROVIDERS = Set.of("anthropic", "openai", "gemini");
     
-    // Provider selection
-    private String currentProvider = "anthropic"; // Default provider: anthropic, openai, or gemini
+    // The current values, replaced as a whole on every change
+    private volatile ConfigSnapshot snapshot = new ConfigSnapshot();
+    private final Path file;
+    private final ConfigWriter writer;
+    private final List<ReloadListener> reloadListeners = new CopyOnWriteArrayList<>();
     
-    // Debug mode
-    private boolean debugMode = false;
+    /**
+     * Notified after the config file was changed by hand and reloaded
+     */
+    public interface ReloadListener {
+        void onReload(ConfigSnapshot previous, ConfigSnapshot current);
+    }
     
     public Config() {
-        // Default constructor
+        this(CONFIG_FILE);
+    }
+    
+    /**
+     * Uses a config file somewhere other than config/llmcommand.json, such as in tests
+     */
+    Config(Path file) {
+        this.file = file;
+        this.writer = new ConfigWriter(file, () -> toJson(snapshot).toString());
+    }
+    
+    /**
+     * The file this configuration is saved to and reloaded from
+     */
+    Path getFile() {
+        return file;
     }
     
     // Getters and setters
-    public String getAnthropicApiKey() { return anthropicApiKey; }
-    public void setAnthropicApiKey(String key) { this.anthropicApiKey = key; }
+    public String getAnthropicApiKey() { return snapshot.anthropicApiKey; }
+    public void setAnthropicApiKey(String key) { update(next -> next.anthropicApiKey = key); }
+    
+    public String getOpenaiApiKey() { return snapshot.openaiApiKey; }
+    public void setOpenaiApiKey(String key) { update(next -> next.openaiApiKey = key); }
+    
+    public String getGeminiApiKey() { return snapshot.geminiApiKey; }
+    public void setGeminiApiKey(String key) { update(next -> next.geminiApiKey = key); }
+    
+    public String getAnthropicModel() { return snapshot.anthropicModel; }
+    public void setAnthropicModel(String model) { update(next -> next.anthropicModel = model); }
+    
+    public String getOpenaiModel() { return snapshot.openaiModel; }
+    public void setOpenaiModel(String model) { update(next -> next.openaiModel = model); }
+    
+    public String getGeminiModel() { return snapshot.geminiModel; }
+    public void setGeminiModel(String model) { update(next -> next.geminiModel = model); }
+    
+    public String getAnthropicBaseUrl() { return snapshot.anthropicBaseUrl; }
+    public void setAnthropicBaseUrl(String url) { update(next -> next.anthropicBaseUrl = trimBaseUrl(url)); }
+    
+    public String getOpenaiBaseUrl() { return snapshot.openaiBaseUrl; }
+    public void setOpenaiBaseUrl(String url) { update(next -> next.openaiBaseUrl = trimBaseUrl(url)); }
+    
+    public String getGeminiBaseUrl() { return snapshot.geminiBaseUrl; }
+    public void setGeminiBaseUrl(String url) { update(next -> next.geminiBaseUrl = trimBaseUrl(url)); }
+    
+    public String getSystemPrompt() { return snapshot.systemPrompt; }
+    public void setSystemPrompt(String prompt) { update(next -> next.systemPrompt = prompt); }
+    
+    public String getCurrentProvider() { return snapshot.currentProvider; }
+    public void setCurrentProvider(String provider) { update(next -> next.currentProvider = provider); }
+    
+    public boolean getDebugMode() { return snapshot.debugMode; }
+    public void setDebugMode(boolean debug) { update(next -> next.debugMode = debug); }
+    
+    public int getMaxConcurrentRequests() { return snapshot.maxConcurrentRequests; }
+    public void setMaxConcurrentRequests(int max) { update(next -> next.maxConcurrentRequests = max); }
+    
+    public int getMaxQueuedRequests() { return snapshot.maxQueuedRequests; }
+    public void setMaxQueuedRequests(int max) { update(next -> next.maxQueuedRequests = max); }
+    
+    public boolean getResponseCacheEnabled() { return snapshot.responseCacheEnabled; }
+    public void setResponseCacheEnabled(boolean enabled) { update(next -> next.responseCacheEnabled = enabled); }
+    
+    public int getResponseCacheMaxEntries() { return snapshot.responseCacheMaxEntries; }
+    public void setResponseCacheMaxEntries(int max) { update(next -> next.responseCacheMaxEntries = max); }
+    
+    public int getResponseCacheTtlMinutes() { return snapshot.responseCacheTtlMinutes; }
+    public void setResponseCacheTtlMinutes(int minutes) { update(next -> next.responseCacheTtlMinutes = minutes); }
+    
+    public boolean getSemanticCacheEnabled() { return snapshot.semanticCacheEnabled; }
+    public void setSemanticCacheEnabled(boolean enabled) { update(next -> next.semanticCacheEnabled = enabled); }
+    
+    public int getSemanticCacheSimilarityPercent() { return snapshot.semanticCacheSimilarityPercent; }
+    public void setSemanticCacheSimilarityPercent(int percent) { update(next -> next.semanticCacheSimilarityPercent = percent); }
+    
+    public int getSemanticCacheMaxEntries() { return snapshot.semanticCacheMaxEntries; }
+    public void setSemanticCacheMaxEntries(int max) { update(next -> next.semanticCacheMaxEntries = max); }
     
-    public String getOpenaiApiKey() { return openaiApiKey; }
-    public void setOpenaiApiKey(String key) { this.openaiApiKey = key; }
+    public boolean getAnswerStoreEnabled() { return snapshot.answerStoreEnabled; }
+    public void setAnswerStoreEnabled(boolean enabled) { update(next -> next.answerStoreEnabled = enabled); }
     
-    public String getGeminiApiKey() { return geminiApiKey; }
-    public void setGeminiApiKey(String key) { this.geminiApiKey = key; }
+    public int getAnswerStoreMaxMegabytes() { return snapshot.answerStoreMaxMegabytes; }
+    public void setAnswerStoreMaxMegabytes(int megabytes) { update(next -> next.answerStoreMaxMegabytes = megabytes); }
     
-    public String getAnthropicModel() { return anthropicModel; }
-    public void setAnthropicModel(String model) { this.anthropicModel = model; }
+    public int getRateLimitPlayerPerMinute() { return snapshot.rateLimitPlayerPerMinute; }
+    public void setRateLimitPlayerPerMinute(int perMinute) { update(next -> next.rateLimitPlayerPerMinute = perMinute); }
     
-    public String getOpenaiModel() { return openaiModel; }
-    public void setOpenaiModel(String model) { this.openaiModel = model; }
+    public int getRateLimitPlayerBurst() { return snapshot.rateLimitPlayerBurst; }
+    public void setRateLimitPlayerBurst(int burst) { update(next -> next.rateLimitPlayerBurst = burst); }
     
-    public String getGeminiModel() { return geminiModel; }
-    public void setGeminiModel(String model) { this.geminiModel = model; }
+    public int getRateLimitGlobalPerMinute() { return snapshot.rateLimitGlobalPerMinute; }
+    public void setRateLimitGlobalPerMinute(int perMinute) { update(next -> next.rateLimitGlobalPerMinute = perMinute); }
     
-    public String getSystemPrompt() { return systemPrompt; }
-    public void setSystemPrompt(String prompt) { this.systemPrompt = prompt; }
+    public int getRateLimitGlobalBurst() { return snapshot.rateLimitGlobalBurst; }
+    public void setRateLimitGlobalBurst(int burst) { update(next -> next.rateLimitGlobalBurst = burst); }
     
-    public String getCurrentProvider() { return currentProvider; }
-    public void setCurrentProvider(String provider) { this.currentProvider = provider; }
+    public int getConversationMaxTurns() { return snapshot.conversationMaxTurns; }
+    public void setConversationMaxTurns(int maxTurns) { update(next -> next.conversationMaxTurns = maxTurns); }
+    
+    public int getConversationMaxTokens() { return snapshot.conversationMaxTokens; }
+    public void setConversationMaxTokens(int maxTokens) { update(next -> next.conversationMaxTokens = maxTokens); }
+    
+    public int getConversationIdleMinutes() { return snapshot.conversationIdleMinutes; }
+    public void setConversationIdleMinutes(int minutes) { update(next -> next.conversationIdleMinutes = minutes); }
+    
+    public int getConversationMaxPlayers() { return snapshot.conversationMaxPlayers; }
+    public void setConversationMaxPlayers(int maxPlayers) { update(next -> next.conversationMaxPlayers = maxPlayers); }
+    
+    public int getChatLinesPerTick() { return snapshot.chatLinesPerTick; }
+    public void setChatLinesPerTick(int linesPerTick) { update(next -> next.chatLinesPerTick = linesPerTick); }
+    
+    public int getRetryMaxAttempts() { return snapshot.retryMaxAttempts; }
+    public void setRetryMaxAttempts(int attempts) { update(next -> next.retryMaxAttempts = attempts); }
+    
+    public int getRetryBaseDelayMillis() { return snapshot.retryBaseDelayMillis; }
+    public void setRetryBaseDelayMillis(int delayMillis) { update(next -> next.retryBaseDelayMillis = delayMillis); }
+    
+    public int getRetryMaxDelaySeconds() { return snapshot.retryMaxDelaySeconds; }
+    public void setRetryMaxDelaySeconds(int delaySeconds) { update(next -> next.retryMaxDelaySeconds = delaySeconds); }
+    
+    public boolean getProviderRouting() { return snapshot.providerRouting; }
+    public void setProviderRouting(boolean routing) { update(next -> next.providerRouting = routing); }
+    
+    public int getCircuitBreakerFailures() { return snapshot.circuitBreakerFailures; }
+    public void setCircuitBreakerFailures(int failures) { update(next -> next.circuitBreakerFailures = failures); }
+    
+    public int getCircuitBreakerCooldownSeconds() { return snapshot.circuitBreakerCooldownSeconds; }
+    public void setCircuitBreakerCooldownSeconds(int cooldownSeconds) { update(next -> next.circuitBreakerCooldownSeconds = cooldownSeconds); }
+    
+    public boolean getHedgingEnabled() { return snapshot.hedgingEnabled; }
+    public void setHedgingEnabled(boolean enabled) { update(next -> next.hedgingEnabled = enabled); }
+    
+    public int getHedgingPercentile() { return snapshot.hedgingPercentile; }
+    public void setHedgingPercentile(int percentile) { update(next -> next.hedgingPercentile = percentile); }
+    
+    public int getHedgingBudgetPercent() { return snapshot.hedgingBudgetPercent; }
+    public void setHedgingBudgetPercent(int budgetPercent) { update(next -> next.hedgingBudgetPercent = budgetPercent); }
+    
+    public int getMetricsExportSeconds() { return snapshot.metricsExportSeconds; }
+    public void setMetricsExportSeconds(int seconds) { update(next -> next.metricsExportSeconds = seconds); }
+    
+    public int getSchedulerPriorityPermissionLevel() { return snapshot.schedulerPriorityPermissionLevel; }
+    public void setSchedulerPriorityPermissionLevel(int level) { update(next -> next.schedulerPriorityPermissionLevel = level); }
+    
+    public List<String> getSchedulerPriorityPlayers() { return snapshot.schedulerPriorityPlayers; }
+    public void setSchedulerPriorityPlayers(List<String> players) { update(next -> next.schedulerPriorityPlayers = List.copyOf(players)); }
+    
+    public int getSchedulerPriorityWeight() { return snapshot.schedulerPriorityWeight; }
+    public void setSchedulerPriorityWeight(int weight) { update(next -> next.schedulerPriorityWeight = weight); }
+    
+    public int getSchedulerMaxWaitSeconds() { return snapshot.schedulerMaxWaitSeconds; }
+    public void setSchedulerMaxWaitSeconds(int seconds) { update(next -> next.schedulerMaxWaitSeconds = seconds); }
+    
+    public int getConnectTimeoutSeconds(String provider) { return snapshot.getConnectTimeoutSeconds(provider); }
+    public int getFirstByteTimeoutSeconds(String provider) { return snapshot.getFirstByteTimeoutSeconds(provider); }
+    public int getRequestTimeoutSeconds(String provider) { return snapshot.getRequestTimeoutSeconds(provider); }
+    
+    /**
+     * Gets a timeout for a provider, falling back to the default when it has no override
+     */
+    public int getTimeoutSeconds(String setting, String provider) {
+        return snapshot.getTimeoutSeconds(setting, provider);
+    }
+    
+    /**
+     * Sets a timeout for one provider, or the default for all providers when provider is null
+     */
+    public void setTimeoutSeconds(String setting, String provider, int seconds) {
+        update(next -> next.setTimeoutSeconds(setting, provider, seconds));
+    }
     
-    public boolean getDebugMode() { return debugMode; }
-    public void setDebugMode(boolean debug) { this.debugMode = debug; }
+    /**
+     * Gets the current values as one consistent, unchanging snapshot
+     */
+    public ConfigSnapshot snapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Publishes a changed copy of the current values. Changes are serialized so none are lost.
+     */
+    private synchronized void update(Consumer<ConfigSnapshot> change) {
+        ConfigSnapshot next = snapshot.copy();
+        change.accept(next);
+        snapshot = next;
+    }
+    
+    public void addReloadListener(ReloadListener listener) {
+        reloadListeners.add(listener);
+    }
+    
+    /**
+     * Reads the config file again and, if it was changed and is valid, swaps it in.
+     * Requests already running keep the snapshot they started with.
+     *
+     * @return true if new settings were published
+     */
+    public boolean reload() {
+        String text;
+        try {
+            text = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.error("Error reading config file " + file, e);
+            return false;
+        }
+        
+        // Our own saves show up as changes too
+        if (writer.isPending() || text.equals(writer.getLastWritten())) {
+            return false;
+        }
+        
+        ConfigSnapshot parsed;
+        try {
+            parsed = parse(JsonParser.parseString(text).getAsJsonObject());
+        } catch (Exception e) {
+            LOGGER.error("Ignoring change to " + file + ", it could not be read: " + e.getMessage());
+            return false;
+        }
+        
+        List<String> problems = validate(parsed);
+        if (!problems.isEmpty()) {
+            LOGGER.error("Ignoring change to " + file + ": " + String.join("; ", problems));
+            return false;
+        }
+        
+        ConfigSnapshot previous;
+        synchronized (this) {
+            previous = snapshot;
+            if (toJson(parsed).equals(toJson(previous))) {
+                return false;
+            }
+            snapshot = parsed;
+        }
+        
+        LOGGER.info("Reloaded configuration from " + file);
+        for (ReloadListener listener : reloadListeners) {
+            listener.onReload(previous, parsed);
+        }
+        return true;
+    }
+    
+    /**
+     * Lists the values that can't be used, such as an unknown provider or a non-positive limit
+     */
+    private static List<String> validate(ConfigSnapshot values) {
+        List<String> problems = new ArrayList<>();
+        if (!PROVIDERS.contains(values.currentProvider)) {
+            problems.add("currentProvider must be 'anthropic', 'openai', or 'gemini'");
+        }
+        if (values.anthropicModel.isBlank() || values.openaiModel.isBlank() || values.geminiModel.isBlank()) {
+            problems.add("models can't be empty");
+        }
+        requireHttpUrl(problems, "anthropicBaseUrl", values.anthropicBaseUrl);
+        requireHttpUrl(problems, "openaiBaseUrl", values.openaiBaseUrl);
+        requireHttpUrl(problems, "geminiBaseUrl", values.geminiBaseUrl);
+        requirePositive(problems, "maxConcurrentRequests", values.maxConcurrentRequests);
+        requirePositive(problems, "maxQueuedRequests", values.maxQueuedRequests);
+        requirePositive(problems, CONNECT_TIMEOUT, values.connectTimeoutSeconds);
+        requirePositive(problems, FIRST_BYTE_TIMEOUT, values.firstByteTimeoutSeconds);
+        requirePositive(problems, REQUEST_TIMEOUT, values.requestTimeoutSeconds);
+        for (Map.Entry<String, Map<String, Integer>> provider : values.providerTimeouts.entrySet()) {
+            if (!PROVIDERS.contains(provider.getKey())) {
+                problems.add("providerTimeouts has unknown provider '" + provider.getKey() + "'");
+            }
+            for (Map.Entry<String, Integer> timeout : provider.getValue().entrySet()) {
+                requirePositive(problems, "providerTimeouts." + provider.getKey() + "." + timeout.getKey(), timeout.getValue());
+            }
+        }
+        requirePositive(problems, "responseCacheMaxEntries", values.responseCacheMaxEntries);
+        requirePositive(problems, "responseCacheTtlMinutes", values.responseCacheTtlMinutes);
+        if (values.semanticCacheSimilarityPercent < 1 || values.semanticCacheSimilarityPercent > 100) {
+            problems.add("semanticCacheSimilarityPercent must be a number from 1 to 100");
+        }
+        requirePositive(problems, "semanticCacheMaxEntries", values.semanticCacheMaxEntries);
+        requirePositive(problems, "answerStoreMaxMegabytes", values.answerStoreMaxMegabytes);
+        requireNonNegative(problems, "rateLimitPlayerPerMinute", values.rateLimitPlayerPerMinute);
+        requirePositive(problems, "rateLimitPlayerBurst", values.rateLimitPlayerBurst);
+        requireNonNegative(problems, "rateLimitGlobalPerMinute", values.rateLimitGlobalPerMinute);
+        requirePositive(problems, "rateLimitGlobalBurst", values.rateLimitGlobalBurst);
+        requireNonNegative(problems, "conversationMaxTurns", values.conversationMaxTurns);
+        requirePositive(problems, "conversationMaxTokens", values.conversationMaxTokens);
+        requirePositive(problems, "conversationIdleMinutes", values.conversationIdleMinutes);
+        requirePositive(problems, "conversationMaxPlayers", values.conversationMaxPlayers);
+        requirePositive(problems, "chatLinesPerTick", values.chatLinesPerTick);
+        requireNonNegative(problems, "retryMaxAttempts", values.retryMaxAttempts);
+        requirePositive(problems, "retryBaseDelayMillis", values.retryBaseDelayMillis);
+        requirePositive(problems, "retryMaxDelaySeconds", values.retryMaxDelaySeconds);
+        requirePositive(problems, "circuitBreakerFailures", values.circuitBreakerFailures);
+        requirePositive(problems, "circuitBreakerCooldownSeconds", values.circuitBreakerCooldownSeconds);
+        if (values.hedgingPercentile < 1 || values.hedgingPercentile > 99) {
+            problems.add("hedgingPercentile must be a number from 1 to 99");
+        }
+        if (values.hedgingBudgetPercent < 1 || values.hedgingBudgetPercent > 50) {
+            problems.add("hedgingBudgetPercent must be a number from 1 to 50");
+        }
+        requireNonNegative(problems, "metricsExportSeconds", values.metricsExportSeconds);
+        if (values.schedulerPriorityPermissionLevel < 0 || values.schedulerPriorityPermissionLevel > 4) {
+            problems.add("schedulerPriorityPermissionLevel must be a number from 0 to 4");
+        }
+        for (String player : values.schedulerPriorityPlayers) {
+            if (player.isBlank()) {
+                problems.add("schedulerPriorityPlayers can't have empty names");
+                break;
+            }
+        }
+        requirePositive(problems, "schedulerPriorityWeight", values.schedulerPriorityWeight);
+        requirePositive(problems, "schedulerMaxWaitSeconds", values.schedulerMaxWaitSeconds);
+        return problems;
+    }
+    
+    private static void requirePositive(List<String> problems, String name, int value) {
+        if (value <= 0) {
+            problems.add(name + " must be a positive number");
+        }
+    }
+    
+    private static void requireHttpUrl(List<String> problems, String name, String value) {
+        if (!value.startsWith("http://") && !value.startsWith("https://")) {
+            problems.add(name + " must start with http:// or https://");
+        }
+    }
+    
+    /**
+     * Drops trailing slashes so request paths can be appended to a base URL as they are
+     */
+    private static String trimBaseUrl(String url) {
+        String trimmed = url.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+    
+    private static void requireNonNegative(List<String> problems, String name, int value) {
+        if (value < 0) {
+            problems.add(name + " must be 0 or a positive number");
+        }
+    }
     
     // Load config from file
     public static Config loadConfig() {
-        Path configDir = Paths.get("config");
-        Path configFile = configDir.resolve("llmcommand.json");
+        Path configDir = CONFIG_FILE.getParent();
+        Path configFile = CONFIG_FILE;
         
         try {
             // Create config directory if it doesn't exist
@@ -78,66 +399,76 @@ public class Config {
             }
             
             Config config = new Config();
+            ConfigSnapshot loaded = new ConfigSnapshot();
             
             // Load existing config if it exists
             if (Files.exists(configFile)) {
                 log("Loading config from: " + configFile);
-                JsonObject json = JsonParser.parseReader(new FileReader(configFile.toFile())).getAsJsonObject();
-                config.anthropicApiKey = json.get("anthropicApiKey").getAsString();
-                config.anthropicModel = json.get("anthropicModel").getAsString();
-                
-                // Load system prompt if it exists
-                if (json.has("systemPrompt")) {
-                    config.systemPrompt = json.get("systemPrompt").getAsString();
-                }
-                
-                // Load debug mode if it exists
-                if (json.has("debugMode")) {
-                    config.debugMode = json.get("debugMode").getAsBoolean();
-                }
-                
-                // Load OpenAI configs if they exist
-                if (json.has("openaiApiKey")) {
-                    config.openaiApiKey = json.get("openaiApiKey").getAsString();
-                }
-                if (json.has("openaiModel")) {
-                    config.openaiModel = json.get("openaiModel").getAsString();
-                }
-                
-                // Load Gemini configs if they exist
-                if (json.has("geminiApiKey")) {
-                    config.geminiApiKey = json.get("geminiApiKey").getAsString();
-                }
-                if (json.has("geminiModel")) {
-                    config.geminiModel = json.get("geminiModel").getAsString();
-                }
-                
-                // Load current provider if it exists
-                if (json.has("currentProvider")) {
-                    config.currentProvider = json.get("currentProvider").getAsString();
+                JsonObject json;
+                try (Reader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+                    json = JsonParser.parseReader(reader).getAsJsonObject();
                 }
+                loaded = parse(json);
             } else {
                 // Create default config file
                 log("Creating default config file");
                 JsonObject json = new JsonObject();
                 json.addProperty("anthropicApiKey", "your_anthropic_key_here");
-                json.addProperty("anthropicModel", config.anthropicModel);
-                json.addProperty("systemPrompt", config.systemPrompt);
+                json.addProperty("anthropicModel", loaded.anthropicModel);
+                json.addProperty("systemPrompt", loaded.systemPrompt);
                 json.addProperty("debugMode", false);
                 json.addProperty("openaiApiKey", "your_openai_key_here");
-                json.addProperty("openaiModel", config.openaiModel);
+                json.addProperty("openaiModel", loaded.openaiModel);
                 json.addProperty("geminiApiKey", "your_gemini_key_here");
-                json.addProperty("geminiModel", config.geminiModel);
-                json.addProperty("currentProvider", config.currentProvider);
+                json.addProperty("geminiModel", loaded.geminiModel);
+                json.addProperty("anthropicBaseUrl", loaded.anthropicBaseUrl);
+                json.addProperty("openaiBaseUrl", loaded.openaiBaseUrl);
+                json.addProperty("geminiBaseUrl", loaded.geminiBaseUrl);
+                json.addProperty("currentProvider", loaded.currentProvider);
+                json.addProperty("maxConcurrentRequests", loaded.maxConcurrentRequests);
+                json.addProperty("maxQueuedRequests", loaded.maxQueuedRequests);
+                json.addProperty(CONNECT_TIMEOUT, loaded.connectTimeoutSeconds);
+                json.addProperty(FIRST_BYTE_TIMEOUT, loaded.firstByteTimeoutSeconds);
+                json.addProperty(REQUEST_TIMEOUT, loaded.requestTimeoutSeconds);
+                json.addProperty("responseCacheEnabled", loaded.responseCacheEnabled);
+                json.addProperty("responseCacheMaxEntries", loaded.responseCacheMaxEntries);
+                json.addProperty("responseCacheTtlMinutes", loaded.responseCacheTtlMinutes);
+                json.addProperty("semanticCacheEnabled", loaded.semanticCacheEnabled);
+                json.addProperty("semanticCacheSimilarityPercent", loaded.semanticCacheSimilarityPercent);
+                json.addProperty("semanticCacheMaxEntries", loaded.semanticCacheMaxEntries);
+                json.addProperty("answerStoreEnabled", loaded.answerStoreEnabled);
+                json.addProperty("answerStoreMaxMegabytes", loaded.answerStoreMaxMegabytes);
+                json.addProperty("rateLimitPlayerPerMinute", loaded.rateLimitPlayerPerMinute);
+                json.addProperty("rateLimitPlayerBurst", loaded.rateLimitPlayerBurst);
+                json.addProperty("rateLimitGlobalPerMinute", loaded.rateLimitGlobalPerMinute);
+                json.addProperty("rateLimitGlobalBurst", loaded.rateLimitGlobalBurst);
+                json.addProperty("conversationMaxTurns", loaded.conversationMaxTurns);
+                json.addProperty("conversationMaxTokens", loaded.conversationMaxTokens);
+                json.addProperty("conversationIdleMinutes", loaded.conversationIdleMinutes);
+                json.addProperty("conversationMaxPlayers", loaded.conversationMaxPlayers);
+                json.addProperty("chatLinesPerTick", loaded.chatLinesPerTick);
+                json.addProperty("retryMaxAttempts", loaded.retryMaxAttempts);
+                json.addProperty("retryBaseDelayMillis", loaded.retryBaseDelayMillis);
+                json.addProperty("retryMaxDelaySeconds", loaded.retryMaxDelaySeconds);
+                json.addProperty("providerRouting", loaded.providerRouting);
+                json.addProperty("circuitBreakerFailures", loaded.circuitBreakerFailures);
+                json.addProperty("circuitBreakerCooldownSeconds", loaded.circuitBreakerCooldownSeconds);
+                json.addProperty("hedgingEnabled", loaded.hedgingEnabled);
+                json.addProperty("hedgingPercentile", loaded.hedgingPercentile);
+                json.addProperty("hedgingBudgetPercent", loaded.hedgingBudgetPercent);
+                json.addProperty("metricsExportSeconds", loaded.metricsExportSeconds);
+                json.addProperty("schedulerPriorityPermissionLevel", loaded.schedulerPriorityPermissionLevel);
+                json.add("schedulerPriorityPlayers", new JsonArray());
+                json.addProperty("schedulerPriorityWeight", loaded.schedulerPriorityWeight);
+                json.addProperty("schedulerMaxWaitSeconds", loaded.schedulerMaxWaitSeconds);
                 
-                try (FileWriter writer = new FileWriter(configFile.toFile())) {
-                    writer.write(json.toString());
-                }
+                ConfigWriter.writeAtomically(configFile, json.toString());
                 
                 log("Created default config file at: " + configFile);
                 log("Please edit this file to add your API keys.");
             }
             
+            config.snapshot = loaded;
             return config;
         } catch (Exception e) {
             log("Error loading config: " + e.getMessage());
@@ -146,42 +477,279 @@ public class Config {
         }
     }
     
-    // Save config to file
-    public void saveConfig() {
-        Path configDir = Paths.get("config");
-        Path configFile = configDir.resolve("llmcommand.json");
+    /**
+     * Reads the values in a config file, keeping defaults for anything missing
+     */
+    private static ConfigSnapshot parse(JsonObject json) {
+        ConfigSnapshot values = new ConfigSnapshot();
+        values.anthropicApiKey = json.get("anthropicApiKey").getAsString();
+        values.anthropicModel = json.get("anthropicModel").getAsString();
         
-        try {
-            JsonObject json = new JsonObject();
-            json.addProperty("anthropicApiKey", anthropicApiKey);
-            json.addProperty("anthropicModel", anthropicModel);
-            json.addProperty("systemPrompt", systemPrompt);
-            json.addProperty("debugMode", debugMode);
-            json.addProperty("openaiApiKey", openaiApiKey);
-            json.addProperty("openaiModel", openaiModel);
-            json.addProperty("geminiApiKey", geminiApiKey);
-            json.addProperty("geminiModel", geminiModel);
-            json.addProperty("currentProvider", currentProvider);
-            
-            try (FileWriter writer = new FileWriter(configFile.toFile())) {
-                writer.write(json.toString());
+        // Load system prompt if it exists
+        if (json.has("systemPrompt")) {
+            values.systemPrompt = json.get("systemPrompt").getAsString();
+        }
+        
+        // Load debug mode if it exists
+        if (json.has("debugMode")) {
+            values.debugMode = json.get("debugMode").getAsBoolean();
+        }
+        
+        // Load OpenAI configs if they exist
+        if (json.has("openaiApiKey")) {
+            values.openaiApiKey = json.get("openaiApiKey").getAsString();
+        }
+        if (json.has("openaiModel")) {
+            values.openaiModel = json.get("openaiModel").getAsString();
+        }
+        
+        // Load Gemini configs if they exist
+        if (json.has("geminiApiKey")) {
+            values.geminiApiKey = json.get("geminiApiKey").getAsString();
+        }
+        if (json.has("geminiModel")) {
+            values.geminiModel = json.get("geminiModel").getAsString();
+        }
+        
+        // Load API endpoints if they exist
+        if (json.has("anthropicBaseUrl")) {
+            values.anthropicBaseUrl = trimBaseUrl(json.get("anthropicBaseUrl").getAsString());
+        }
+        if (json.has("openaiBaseUrl")) {
+            values.openaiBaseUrl = trimBaseUrl(json.get("openaiBaseUrl").getAsString());
+        }
+        if (json.has("geminiBaseUrl")) {
+            values.geminiBaseUrl = trimBaseUrl(json.get("geminiBaseUrl").getAsString());
+        }
+        
+        // Load current provider if it exists
+        if (json.has("currentProvider")) {
+            values.currentProvider = json.get("currentProvider").getAsString();
+        }
+        
+        // Load request concurrency limits if they exist
+        if (json.has("maxConcurrentRequests")) {
+            values.maxConcurrentRequests = json.get("maxConcurrentRequests").getAsInt();
+        }
+        if (json.has("maxQueuedRequests")) {
+            values.maxQueuedRequests = json.get("maxQueuedRequests").getAsInt();
+        }
+        
+        // Load network timeouts if they exist
+        if (json.has(CONNECT_TIMEOUT)) {
+            values.connectTimeoutSeconds = json.get(CONNECT_TIMEOUT).getAsInt();
+        }
+        if (json.has(FIRST_BYTE_TIMEOUT)) {
+            values.firstByteTimeoutSeconds = json.get(FIRST_BYTE_TIMEOUT).getAsInt();
+        }
+        if (json.has(REQUEST_TIMEOUT)) {
+            values.requestTimeoutSeconds = json.get(REQUEST_TIMEOUT).getAsInt();
+        }
+        if (json.has("providerTimeouts")) {
+            for (Map.Entry<String, JsonElement> provider : json.getAsJsonObject("providerTimeouts").entrySet()) {
+                for (Map.Entry<String, JsonElement> timeout : provider.getValue().getAsJsonObject().entrySet()) {
+                    values.setTimeoutSeconds(timeout.getKey(), provider.getKey(), timeout.getValue().getAsInt());
+                }
             }
-            
-            log("Configuration saved to: " + configFile);
-        } catch (Exception e) {
-            logError("Error saving config", e);
         }
+        
+        // Load response cache settings if they exist
+        if (json.has("responseCacheEnabled")) {
+            values.responseCacheEnabled = json.get("responseCacheEnabled").getAsBoolean();
+        }
+        if (json.has("responseCacheMaxEntries")) {
+            values.responseCacheMaxEntries = json.get("responseCacheMaxEntries").getAsInt();
+        }
+        if (json.has("responseCacheTtlMinutes")) {
+            values.responseCacheTtlMinutes = json.get("responseCacheTtlMinutes").getAsInt();
+        }
+        if (json.has("semanticCacheEnabled")) {
+            values.semanticCacheEnabled = json.get("semanticCacheEnabled").getAsBoolean();
+        }
+        if (json.has("semanticCacheSimilarityPercent")) {
+            values.semanticCacheSimilarityPercent = json.get("semanticCacheSimilarityPercent").getAsInt();
+        }
+        if (json.has("semanticCacheMaxEntries")) {
+            values.semanticCacheMaxEntries = json.get("semanticCacheMaxEntries").getAsInt();
+        }
+        
+        // Load answer store settings if they exist
+        if (json.has("answerStoreEnabled")) {
+            values.answerStoreEnabled = json.get("answerStoreEnabled").getAsBoolean();
+        }
+        if (json.has("answerStoreMaxMegabytes")) {
+            values.answerStoreMaxMegabytes = json.get("answerStoreMaxMegabytes").getAsInt();
+        }
+        
+        // Load rate limits if they exist
+        if (json.has("rateLimitPlayerPerMinute")) {
+            values.rateLimitPlayerPerMinute = json.get("rateLimitPlayerPerMinute").getAsInt();
+        }
+        if (json.has("rateLimitPlayerBurst")) {
+            values.rateLimitPlayerBurst = json.get("rateLimitPlayerBurst").getAsInt();
+        }
+        if (json.has("rateLimitGlobalPerMinute")) {
+            values.rateLimitGlobalPerMinute = json.get("rateLimitGlobalPerMinute").getAsInt();
+        }
+        if (json.has("rateLimitGlobalBurst")) {
+            values.rateLimitGlobalBurst = json.get("rateLimitGlobalBurst").getAsInt();
+        }
+        
+        // Load conversation settings if they exist
+        if (json.has("conversationMaxTurns")) {
+            values.conversationMaxTurns = json.get("conversationMaxTurns").getAsInt();
+        }
+        if (json.has("conversationMaxTokens")) {
+            values.conversationMaxTokens = json.get("conversationMaxTokens").getAsInt();
+        }
+        if (json.has("conversationIdleMinutes")) {
+            values.conversationIdleMinutes = json.get("conversationIdleMinutes").getAsInt();
+        }
+        if (json.has("conversationMaxPlayers")) {
+            values.conversationMaxPlayers = json.get("conversationMaxPlayers").getAsInt();
+        }
+        
+        // Load chat delivery settings if they exist
+        if (json.has("chatLinesPerTick")) {
+            values.chatLinesPerTick = json.get("chatLinesPerTick").getAsInt();
+        }
+        
+        // Load retry settings if they exist
+        if (json.has("retryMaxAttempts")) {
+            values.retryMaxAttempts = json.get("retryMaxAttempts").getAsInt();
+        }
+        if (json.has("retryBaseDelayMillis")) {
+            values.retryBaseDelayMillis = json.get("retryBaseDelayMillis").getAsInt();
+        }
+        if (json.has("retryMaxDelaySeconds")) {
+            values.retryMaxDelaySeconds = json.get("retryMaxDelaySeconds").getAsInt();
+        }
+        
+        // Load routing settings if they exist
+        if (json.has("providerRouting")) {
+            values.providerRouting = json.get("providerRouting").getAsBoolean();
+        }
+        if (json.has("circuitBreakerFailures")) {
+            values.circuitBreakerFailures = json.get("circuitBreakerFailures").getAsInt();
+        }
+        if (json.has("circuitBreakerCooldownSeconds")) {
+            values.circuitBreakerCooldownSeconds = json.get("circuitBreakerCooldownSeconds").getAsInt();
+        }
+        
+        // Load hedging settings if they exist
+        if (json.has("hedgingEnabled")) {
+            values.hedgingEnabled = json.get("hedgingEnabled").getAsBoolean();
+        }
+        if (json.has("hedgingPercentile")) {
+            values.hedgingPercentile = json.get("hedgingPercentile").getAsInt();
+        }
+        if (json.has("hedgingBudgetPercent")) {
+            values.hedgingBudgetPercent = json.get("hedgingBudgetPercent").getAsInt();
+        }
+        
+        // Load metrics export settings if they exist
+        if (json.has("metricsExportSeconds")) {
+            values.metricsExportSeconds = json.get("metricsExportSeconds").getAsInt();
+        }
+        
+        // Load scheduler settings if they exist
+        if (json.has("schedulerPriorityPermissionLevel")) {
+            values.schedulerPriorityPermissionLevel = json.get("schedulerPriorityPermissionLevel").getAsInt();
+        }
+        if (json.has("schedulerPriorityPlayers")) {
+            List<String> players = new ArrayList<>();
+            for (JsonElement player : json.getAsJsonArray("schedulerPriorityPlayers")) {
+                players.add(player.getAsString().trim());
+            }
+            values.schedulerPriorityPlayers = List.copyOf(players);
+        }
+        if (json.has("schedulerPriorityWeight")) {
+            values.schedulerPriorityWeight = json.get("schedulerPriorityWeight").getAsInt();
+        }
+        if (json.has("schedulerMaxWaitSeconds")) {
+            values.schedulerMaxWaitSeconds = json.get("schedulerMaxWaitSeconds").getAsInt();
+        }
+        return values;
     }
     
-    private static void log(String message) {
-        LOGGER.info(message);
+    /**
+     * Saves the config file in the background; saves made in quick succession are written once
+     */
+    public void saveConfig() {
+        writer.schedule();
+    }
+    
+    /**
+     * Writes any unsaved change now, for when the server stops
+     */
+    public void flush() {
+        writer.flush();
     }
     
-    private static void logError(String message, Throwable error) {
-        if (error != null) {
-            LOGGER.error(message, error);
-        } else {
-            LOGGER.error(message);
+    private static JsonObject toJson(ConfigSnapshot values) {
+        JsonObject json = new JsonObject();
+        json.addProperty("anthropicApiKey", values.anthropicApiKey);
+        json.addProperty("anthropicModel", values.anthropicModel);
+        json.addProperty("systemPrompt", values.systemPrompt);
+        json.addProperty("debugMode", values.debugMode);
+        json.addProperty("openaiApiKey", values.openaiApiKey);
+        json.addProperty("openaiModel", values.openaiModel);
+        json.addProperty("geminiApiKey", values.geminiApiKey);
+        json.addProperty("geminiModel", values.geminiModel);
+        json.addProperty("anthropicBaseUrl", values.anthropicBaseUrl);
+        json.addProperty("openaiBaseUrl", values.openaiBaseUrl);
+        json.addProperty("geminiBaseUrl", values.geminiBaseUrl);
+        json.addProperty("currentProvider", values.currentProvider);
+        json.addProperty("maxConcurrentRequests", values.maxConcurrentRequests);
+        json.addProperty("maxQueuedRequests", values.maxQueuedRequests);
+        json.addProperty(CONNECT_TIMEOUT, values.connectTimeoutSeconds);
+        json.addProperty(FIRST_BYTE_TIMEOUT, values.firstByteTimeoutSeconds);
+        json.addProperty(REQUEST_TIMEOUT, values.requestTimeoutSeconds);
+        
+        JsonObject timeoutsJson = new JsonObject();
+        for (Map.Entry<String, Map<String, Integer>> provider : values.providerTimeouts.entrySet()) {
+            JsonObject overrides = new JsonObject();
+            provider.getValue().forEach(overrides::addProperty);
+            timeoutsJson.add(provider.getKey(), overrides);
         }
+        json.add("providerTimeouts", timeoutsJson);
+        json.addProperty("responseCacheEnabled", values.responseCacheEnabled);
+        json.addProperty("responseCacheMaxEntries", values.responseCacheMaxEntries);
+        json.addProperty("responseCacheTtlMinutes", values.responseCacheTtlMinutes);
+        json.addProperty("semanticCacheEnabled", values.semanticCacheEnabled);
+        json.addProperty("semanticCacheSimilarityPercent", values.semanticCacheSimilarityPercent);
+        json.addProperty("semanticCacheMaxEntries", values.semanticCacheMaxEntries);
+        json.addProperty("answerStoreEnabled", values.answerStoreEnabled);
+        json.addProperty("answerStoreMaxMegabytes", values.answerStoreMaxMegabytes);
+        json.addProperty("rateLimitPlayerPerMinute", values.rateLimitPlayerPerMinute);
+        json.addProperty("rateLimitPlayerBurst", values.rateLimitPlayerBurst);
+        json.addProperty("rateLimitGlobalPerMinute", values.rateLimitGlobalPerMinute);
+        json.addProperty("rateLimitGlobalBurst", values.rateLimitGlobalBurst);
+        json.addProperty("conversationMaxTurns", values.conversationMaxTurns);
+        json.addProperty("conversationMaxTokens", values.conversationMaxTokens);
+        json.addProperty("conversationIdleMinutes", values.conversationIdleMinutes);
+        json.addProperty("conversationMaxPlayers", values.conversationMaxPlayers);
+        json.addProperty("chatLinesPerTick", values.chatLinesPerTick);
+        json.addProperty("retryMaxAttempts", values.retryMaxAttempts);
+        json.addProperty("retryBaseDelayMillis", values.retryBaseDelayMillis);
+        json.addProperty("retryMaxDelaySeconds", values.retryMaxDelaySeconds);
+        json.addProperty("providerRouting", values.providerRouting);
+        json.addProperty("circuitBreakerFailures", values.circuitBreakerFailures);
+        json.addProperty("circuitBreakerCooldownSeconds", values.circuitBreakerCooldownSeconds);
+        json.addProperty("hedgingEnabled", values.hedgingEnabled);
+        json.addProperty("hedgingPercentile", values.hedgingPercentile);
+        json.addProperty("hedgingBudgetPercent", values.hedgingBudgetPercent);
+        json.addProperty("metricsExportSeconds", values.metricsExportSeconds);
+        json.addProperty("schedulerPriorityPermissionLevel", values.schedulerPriorityPermissionLevel);
+        JsonArray priorityPlayers = new JsonArray();
+        values.schedulerPriorityPlayers.forEach(priorityPlayers::add);
+        json.add("schedulerPriorityPlayers", priorityPlayers);
+        json.addProperty("schedulerPriorityWeight", values.schedulerPriorityWeight);
+        json.addProperty("schedulerMaxWaitSeconds", values.schedulerMaxWaitSeconds);
+        return json;
+    }
+    
+    private static void log(String message) {
+        LOGGER.info(message);
     }
 } 
\ No newline at end of file
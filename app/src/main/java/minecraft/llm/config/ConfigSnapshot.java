@@ -0,0 +1,286 @@
+package minecraft.llm.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One consistent set of configuration values.
+ *
+ * {@link Config} copies the current snapshot, changes the copy and publishes it
+ * through a volatile field, so a published snapshot is never modified again.
+ * Code that reads several settings for one request should take a snapshot once
+ * with {@link Config#snapshot()} so they can't change halfway through.
+ */
+public final class ConfigSnapshot {
+    // API keys
+    String anthropicApiKey = "";
+    String openaiApiKey = "";
+    String geminiApiKey = "";
+
+    // Models
+    String anthropicModel = "claude-3-haiku-20240307";
+    String openaiModel = "gpt-4o-mini";
+    String geminiModel = "gemini-2.0-flash";
+
+    // API endpoints, overridable to point at a proxy or a local mock server
+    String anthropicBaseUrl = "https://api.anthropic.com";
+    String openaiBaseUrl = "https://api.openai.com";
+    String geminiBaseUrl = "https://generativelanguage.googleapis.com";
+
+    // System prompt
+    String systemPrompt = "You are a helpful Minecraft assistant. Answer questions about Minecraft and provide helpful advice to players. Keep responses concise to fit in the Minecraft chat.";
+
+    // Provider selection
+    String currentProvider = "anthropic"; // Default provider: anthropic, openai, or gemini
+
+    // Debug mode
+    boolean debugMode = false;
+
+    // Request concurrency
+    int maxConcurrentRequests = 4;
+    int maxQueuedRequests = 16;
+
+    // Network timeouts in seconds, with optional per-provider overrides (never modified in place)
+    int connectTimeoutSeconds = 10;
+    int firstByteTimeoutSeconds = 30;
+    int requestTimeoutSeconds = 120;
+    Map<String, Map<String, Integer>> providerTimeouts = Collections.emptyMap();
+
+    // Response cache for repeated questions
+    boolean responseCacheEnabled = true;
+    int responseCacheMaxEntries = 500;
+    int responseCacheTtlMinutes = 60;
+
+    // Answers to differently worded questions with the same meaning, found by local similarity
+    boolean semanticCacheEnabled = false;
+    int semanticCacheSimilarityPercent = 90;
+    int semanticCacheMaxEntries = 1000;
+
+    // Answers persisted to disk so the cache survives restarts
+    boolean answerStoreEnabled = false;
+    int answerStoreMaxMegabytes = 32;
+
+    // How often /llm can be used, per player and across the server (0 per minute means no limit)
+    int rateLimitPlayerPerMinute = 6;
+    int rateLimitPlayerBurst = 3;
+    int rateLimitGlobalPerMinute = 60;
+    int rateLimitGlobalBurst = 10;
+
+    // Per-player conversation history sent with each question (0 turns turns it off)
+    int conversationMaxTurns = 6;
+    int conversationMaxTokens = 1500;
+    int conversationIdleMinutes = 30;
+    int conversationMaxPlayers = 100;
+
+    // Chat lines sent to players per server tick, across all answers
+    int chatLinesPerTick = 10;
+
+    // Retries when an API is busy or failing, before any of the answer has arrived (0 attempts turns them off)
+    int retryMaxAttempts = 3;
+    int retryBaseDelayMillis = 500;
+    int retryMaxDelaySeconds = 20;
+
+    // Routing across every provider with an API key, preferring the healthiest, and pausing one that keeps failing
+    boolean providerRouting = false;
+    int circuitBreakerFailures = 3;
+    int circuitBreakerCooldownSeconds = 30;
+
+    // Hedging: a second request when the first is slower than usual to start answering
+    boolean hedgingEnabled = false;
+    int hedgingPercentile = 95;
+    int hedgingBudgetPercent = 10;
+
+    // Metrics export
+    int metricsExportSeconds = 0;
+
+    // Fair scheduling of waiting questions; priority players are those at the permission level (0 for none) or listed by name or UUID
+    int schedulerPriorityPermissionLevel = 2;
+    List<String> schedulerPriorityPlayers = List.of();
+    int schedulerPriorityWeight = 4;
+    int schedulerMaxWaitSeconds = 60;
+
+    ConfigSnapshot() {
+        // Defaults
+    }
+
+    /**
+     * Copies every value, for building the next snapshot
+     */
+    ConfigSnapshot copy() {
+        ConfigSnapshot copy = new ConfigSnapshot();
+        copy.anthropicApiKey = anthropicApiKey;
+        copy.openaiApiKey = openaiApiKey;
+        copy.geminiApiKey = geminiApiKey;
+        copy.anthropicModel = anthropicModel;
+        copy.openaiModel = openaiModel;
+        copy.geminiModel = geminiModel;
+        copy.anthropicBaseUrl = anthropicBaseUrl;
+        copy.openaiBaseUrl = openaiBaseUrl;
+        copy.geminiBaseUrl = geminiBaseUrl;
+        copy.systemPrompt = systemPrompt;
+        copy.currentProvider = currentProvider;
+        copy.debugMode = debugMode;
+        copy.maxConcurrentRequests = maxConcurrentRequests;
+        copy.maxQueuedRequests = maxQueuedRequests;
+        copy.connectTimeoutSeconds = connectTimeoutSeconds;
+        copy.firstByteTimeoutSeconds = firstByteTimeoutSeconds;
+        copy.requestTimeoutSeconds = requestTimeoutSeconds;
+        copy.providerTimeouts = providerTimeouts;
+        copy.responseCacheEnabled = responseCacheEnabled;
+        copy.responseCacheMaxEntries = responseCacheMaxEntries;
+        copy.responseCacheTtlMinutes = responseCacheTtlMinutes;
+        copy.semanticCacheEnabled = semanticCacheEnabled;
+        copy.semanticCacheSimilarityPercent = semanticCacheSimilarityPercent;
+        copy.semanticCacheMaxEntries = semanticCacheMaxEntries;
+        copy.answerStoreEnabled = answerStoreEnabled;
+        copy.answerStoreMaxMegabytes = answerStoreMaxMegabytes;
+        copy.rateLimitPlayerPerMinute = rateLimitPlayerPerMinute;
+        copy.rateLimitPlayerBurst = rateLimitPlayerBurst;
+        copy.rateLimitGlobalPerMinute = rateLimitGlobalPerMinute;
+        copy.rateLimitGlobalBurst = rateLimitGlobalBurst;
+        copy.conversationMaxTurns = conversationMaxTurns;
+        copy.conversationMaxTokens = conversationMaxTokens;
+        copy.conversationIdleMinutes = conversationIdleMinutes;
+        copy.conversationMaxPlayers = conversationMaxPlayers;
+        copy.chatLinesPerTick = chatLinesPerTick;
+        copy.retryMaxAttempts = retryMaxAttempts;
+        copy.retryBaseDelayMillis = retryBaseDelayMillis;
+        copy.retryMaxDelaySeconds = retryMaxDelaySeconds;
+        copy.providerRouting = providerRouting;
+        copy.circuitBreakerFailures = circuitBreakerFailures;
+        copy.circuitBreakerCooldownSeconds = circuitBreakerCooldownSeconds;
+        copy.hedgingEnabled = hedgingEnabled;
+        copy.hedgingPercentile = hedgingPercentile;
+        copy.hedgingBudgetPercent = hedgingBudgetPercent;
+        copy.metricsExportSeconds = metricsExportSeconds;
+        copy.schedulerPriorityPermissionLevel = schedulerPriorityPermissionLevel;
+        copy.schedulerPriorityPlayers = schedulerPriorityPlayers;
+        copy.schedulerPriorityWeight = schedulerPriorityWeight;
+        copy.schedulerMaxWaitSeconds = schedulerMaxWaitSeconds;
+        return copy;
+    }
+
+    // Getters
+    public String getAnthropicApiKey() { return anthropicApiKey; }
+    public String getOpenaiApiKey() { return openaiApiKey; }
+    public String getGeminiApiKey() { return geminiApiKey; }
+
+    public String getAnthropicModel() { return anthropicModel; }
+    public String getOpenaiModel() { return openaiModel; }
+    public String getGeminiModel() { return geminiModel; }
+
+    public String getAnthropicBaseUrl() { return anthropicBaseUrl; }
+    public String getOpenaiBaseUrl() { return openaiBaseUrl; }
+    public String getGeminiBaseUrl() { return geminiBaseUrl; }
+
+    public String getSystemPrompt() { return systemPrompt; }
+    public String getCurrentProvider() { return currentProvider; }
+    public boolean getDebugMode() { return debugMode; }
+
+    public int getMaxConcurrentRequests() { return maxConcurrentRequests; }
+    public int getMaxQueuedRequests() { return maxQueuedRequests; }
+
+    public boolean getResponseCacheEnabled() { return responseCacheEnabled; }
+    public int getResponseCacheMaxEntries() { return responseCacheMaxEntries; }
+    public int getResponseCacheTtlMinutes() { return responseCacheTtlMinutes; }
+
+    public boolean getSemanticCacheEnabled() { return semanticCacheEnabled; }
+    public int getSemanticCacheSimilarityPercent() { return semanticCacheSimilarityPercent; }
+    public int getSemanticCacheMaxEntries() { return semanticCacheMaxEntries; }
+
+    public boolean getAnswerStoreEnabled() { return answerStoreEnabled; }
+    public int getAnswerStoreMaxMegabytes() { return answerStoreMaxMegabytes; }
+
+    public int getRateLimitPlayerPerMinute() { return rateLimitPlayerPerMinute; }
+    public int getRateLimitPlayerBurst() { return rateLimitPlayerBurst; }
+    public int getRateLimitGlobalPerMinute() { return rateLimitGlobalPerMinute; }
+    public int getRateLimitGlobalBurst() { return rateLimitGlobalBurst; }
+
+    public int getConversationMaxTurns() { return conversationMaxTurns; }
+    public int getConversationMaxTokens() { return conversationMaxTokens; }
+    public int getConversationIdleMinutes() { return conversationIdleMinutes; }
+    public int getConversationMaxPlayers() { return conversationMaxPlayers; }
+
+    public int getChatLinesPerTick() { return chatLinesPerTick; }
+
+    public int getRetryMaxAttempts() { return retryMaxAttempts; }
+    public int getRetryBaseDelayMillis() { return retryBaseDelayMillis; }
+    public int getRetryMaxDelaySeconds() { return retryMaxDelaySeconds; }
+
+    public boolean getProviderRouting() { return providerRouting; }
+    public int getCircuitBreakerFailures() { return circuitBreakerFailures; }
+    public int getCircuitBreakerCooldownSeconds() { return circuitBreakerCooldownSeconds; }
+
+    public boolean getHedgingEnabled() { return hedgingEnabled; }
+    public int getHedgingPercentile() { return hedgingPercentile; }
+    public int getHedgingBudgetPercent() { return hedgingBudgetPercent; }
+
+    public int getMetricsExportSeconds() { return metricsExportSeconds; }
+
+    public int getSchedulerPriorityPermissionLevel() { return schedulerPriorityPermissionLevel; }
+    public List<String> getSchedulerPriorityPlayers() { return schedulerPriorityPlayers; }
+    public int getSchedulerPriorityWeight() { return schedulerPriorityWeight; }
+    public int getSchedulerMaxWaitSeconds() { return schedulerMaxWaitSeconds; }
+
+    public int getConnectTimeoutSeconds(String provider) { return getTimeoutSeconds(Config.CONNECT_TIMEOUT, provider); }
+    public int getFirstByteTimeoutSeconds(String provider) { return getTimeoutSeconds(Config.FIRST_BYTE_TIMEOUT, provider); }
+    public int getRequestTimeoutSeconds(String provider) { return getTimeoutSeconds(Config.REQUEST_TIMEOUT, provider); }
+
+    /**
+     * Gets a timeout for a provider, falling back to the default when it has no override
+     */
+    public int getTimeoutSeconds(String setting, String provider) {
+        Map<String, Integer> overrides = providerTimeouts.get(provider);
+        if (overrides != null && overrides.containsKey(setting)) {
+            return overrides.get(setting);
+        }
+        switch (setting) {
+            case Config.CONNECT_TIMEOUT:
+                return connectTimeoutSeconds;
+            case Config.FIRST_BYTE_TIMEOUT:
+                return firstByteTimeoutSeconds;
+            case Config.REQUEST_TIMEOUT:
+                return requestTimeoutSeconds;
+            default:
+                throw new IllegalArgumentException("Unknown timeout setting: " + setting);
+        }
+    }
+
+    /**
+     * Per-provider timeout overrides, keyed by provider and then setting
+     */
+    public Map<String, Map<String, Integer>> getProviderTimeouts() {
+        return providerTimeouts;
+    }
+
+    /**
+     * Sets a timeout for one provider, or the default for all providers when provider is null.
+     * Only used while building a snapshot that hasn't been published yet.
+     */
+    void setTimeoutSeconds(String setting, String provider, int seconds) {
+        if (provider != null) {
+            // Replace the maps rather than changing them, since older snapshots share them
+            Map<String, Map<String, Integer>> timeouts = new HashMap<>(providerTimeouts);
+            Map<String, Integer> overrides = new HashMap<>(timeouts.getOrDefault(provider, Collections.emptyMap()));
+            overrides.put(setting, seconds);
+            timeouts.put(provider, Collections.unmodifiableMap(overrides));
+            providerTimeouts = Collections.unmodifiableMap(timeouts);
+            return;
+        }
+        switch (setting) {
+            case Config.CONNECT_TIMEOUT:
+                connectTimeoutSeconds = seconds;
+                break;
+            case Config.FIRST_BYTE_TIMEOUT:
+                firstByteTimeoutSeconds = seconds;
+                break;
+            case Config.REQUEST_TIMEOUT:
+                requestTimeoutSeconds = seconds;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown timeout setting: " + setting);
+        }
+    }
+}
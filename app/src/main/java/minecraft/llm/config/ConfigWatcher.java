@@ -0,0 +1,110 @@
+package minecraft.llm.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the configuration when llmcommand.json is edited while the server runs.
+ *
+ * Editors often save a file in several steps, so the watcher waits for the
+ * changes to settle before reloading. {@link Config#reload()} ignores the
+ * mod's own saves and files that don't validate.
+ */
+public class ConfigWatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    // Wait this long after the last change before reloading
+    private static final long SETTLE_MILLIS = 300;
+
+    private final Config config;
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Starts watching the config directory
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        Path directory = config.getFile().toAbsolutePath().getParent();
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            // Saves that replace the file by renaming show up as creates rather than modifies
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOGGER.error("Could not watch " + directory + " for config changes", e);
+            return;
+        }
+
+        WatchService service = watchService;
+        thread = new Thread(() -> watch(service), "LLMCommandMod-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching; the watcher can be started again later
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing config watcher", e);
+        }
+        thread.interrupt();
+        thread = null;
+        watchService = null;
+    }
+
+    private void watch(WatchService service) {
+        Path fileName = config.getFile().getFileName();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = drain(key, fileName);
+
+                // Keep collecting until the file has been quiet for a moment
+                while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key, fileName);
+                }
+
+                if (changed) {
+                    try {
+                        config.reload();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Error applying reloaded config", e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    private static boolean drain(WatchKey key, Path fileName) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
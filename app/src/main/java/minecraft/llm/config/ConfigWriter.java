@@ -0,0 +1,116 @@
+package minecraft.llm.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Writes the config file on a background thread.
+ *
+ * Saves requested in quick succession are coalesced into one write of the
+ * latest contents. The file is written to a temporary file next to it and then
+ * renamed over it, so a crash mid-write never leaves a truncated config behind.
+ */
+class ConfigWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    // Changes made within this window are written together
+    private static final long COALESCE_MILLIS = 250;
+
+    private final Path file;
+    private final Supplier<String> contents;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile String lastWritten;
+    private ScheduledExecutorService executor;
+
+    ConfigWriter(Path file, Supplier<String> contents) {
+        this.file = file;
+        this.contents = contents;
+    }
+
+    /**
+     * Schedules a write unless one is already waiting to go out
+     */
+    void schedule() {
+        if (pending.compareAndSet(false, true)) {
+            executor().schedule(this::writePending, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a pending change right away, waiting briefly for it to finish
+     */
+    void flush() {
+        if (!pending.get()) {
+            return;
+        }
+        try {
+            executor().submit(this::writePending).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            LOGGER.error("Error flushing config", e);
+        }
+    }
+
+    /**
+     * Whether a change is waiting to be written
+     */
+    boolean isPending() {
+        return pending.get();
+    }
+
+    /**
+     * The contents of the last write, so the file watcher can recognize our own changes
+     */
+    String getLastWritten() {
+        return lastWritten;
+    }
+
+    private void writePending() {
+        // Clear the flag first, so a change made while writing schedules another write
+        if (!pending.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            String text = contents.get();
+            lastWritten = text;
+            writeAtomically(file, text);
+            LOGGER.info("Configuration saved to: " + file);
+        } catch (Exception e) {
+            LOGGER.error("Error saving config", e);
+        }
+    }
+
+    private synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LLMCommandMod-ConfigWriter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Replaces a file's contents by writing a temporary file and renaming it over the original
+     */
+    static void writeAtomically(Path file, String text) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, text, StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package minecraft.llm.conversation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The questions a player asked and the answers they got, oldest first.
+ *
+ * Conversations are immutable; adding a turn returns a new conversation, so
+ * one can be handed to a provider while the player keeps asking.
+ */
+public final class Conversation {
+    public static final Conversation EMPTY = new Conversation(Collections.emptyList(), 0);
+
+    private final List<Turn> turns;
+    private final int tokens;
+
+    /**
+     * One question and its answer, with their estimated token cost
+     */
+    public record Turn(String question, String answer, int tokens) {
+        public Turn(String question, String answer) {
+            this(question, answer, TokenEstimator.estimate(question) + TokenEstimator.estimate(answer));
+        }
+    }
+
+    private Conversation(List<Turn> turns, int tokens) {
+        this.turns = turns;
+        this.tokens = tokens;
+    }
+
+    public List<Turn> turns() {
+        return turns;
+    }
+
+    public boolean isEmpty() {
+        return turns.isEmpty();
+    }
+
+    /**
+     * Estimated tokens across every turn
+     */
+    public int tokens() {
+        return tokens;
+    }
+
+    /**
+     * Adds a turn, then drops the oldest turns until both limits are met
+     */
+    public Conversation with(Turn turn, int maxTurns, int maxTokens) {
+        List<Turn> added = new ArrayList<>(turns.size() + 1);
+        added.addAll(turns);
+        added.add(turn);
+        return new Conversation(added, tokens + turn.tokens()).trimmed(maxTurns, maxTokens);
+    }
+
+    /**
+     * The most recent turns that fit within the limits
+     */
+    public Conversation trimmed(int maxTurns, int maxTokens) {
+        int start = 0;
+        int remaining = tokens;
+        while (start < turns.size() && (turns.size() - start > maxTurns || remaining > maxTokens)) {
+            remaining -= turns.get(start).tokens();
+            start++;
+        }
+        if (start == 0) {
+            return this;
+        }
+        if (start == turns.size()) {
+            return EMPTY;
+        }
+        return new Conversation(List.copyOf(turns.subList(start, turns.size())), remaining);
+    }
+}
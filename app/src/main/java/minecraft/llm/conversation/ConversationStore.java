@@ -0,0 +1,122 @@
+package minecraft.llm.conversation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import minecraft.llm.config.Config;
+import minecraft.llm.providers.ResponseSink;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps each player's recent conversation so follow-up questions have context.
+ *
+ * Every conversation is capped by the configured number of turns and token
+ * budget, and only the most recently active players are kept, so the memory
+ * used stays bounded however many players ask. Conversations of players who
+ * stop asking are forgotten after the idle timeout.
+ */
+public class ConversationStore {
+    private final Config config;
+    private volatile Cache<UUID, Conversation> conversations;
+
+    public ConversationStore(Config config) {
+        this.config = config;
+        this.conversations = build(config);
+    }
+
+    public boolean isEnabled() {
+        return config.getConversationMaxTurns() > 0;
+    }
+
+    /**
+     * Gets the turns to send along with a question, trimmed to the token budget
+     */
+    public Conversation get(UUID player, String query) {
+        if (player == null || !isEnabled()) {
+            return Conversation.EMPTY;
+        }
+        Conversation conversation = conversations.getIfPresent(player);
+        if (conversation == null) {
+            return Conversation.EMPTY;
+        }
+        // The question itself comes out of the same budget
+        int budget = config.getConversationMaxTokens() - TokenEstimator.estimate(query);
+        return conversation.trimmed(config.getConversationMaxTurns(), budget);
+    }
+
+    /**
+     * Wraps a sink so the question and its answer join the player's conversation once it completes
+     */
+    public ResponseSink recording(UUID player, String query, ResponseSink delegate) {
+        if (player == null || !isEnabled()) {
+            return delegate;
+        }
+
+        return new ResponseSink() {
+            private final StringBuilder answer = new StringBuilder();
+
+            @Override
+            public void onText(String text) {
+                answer.append(text);
+                delegate.onText(text);
+            }
+
+            @Override
+            public void onComplete() {
+                if (answer.length() > 0) {
+                    add(player, new Conversation.Turn(query, answer.toString()));
+                }
+                delegate.onComplete();
+            }
+
+            @Override
+            public void onError(String message) {
+                delegate.onError(message);
+            }
+        };
+    }
+
+    /**
+     * Forgets a player's conversation
+     */
+    public void reset(UUID player) {
+        conversations.invalidate(player);
+    }
+
+    /**
+     * Rebuilds the store with the current limits, keeping existing conversations where they fit
+     */
+    public void reconfigure() {
+        Cache<UUID, Conversation> old = conversations;
+        Cache<UUID, Conversation> rebuilt = build(config);
+        old.asMap().forEach((player, conversation) -> {
+            Conversation trimmed = conversation.trimmed(config.getConversationMaxTurns(), config.getConversationMaxTokens());
+            if (!trimmed.isEmpty()) {
+                rebuilt.put(player, trimmed);
+            }
+        });
+        conversations = rebuilt;
+        old.invalidateAll();
+    }
+
+    public long size() {
+        return conversations.size();
+    }
+
+    private void add(UUID player, Conversation.Turn turn) {
+        int maxTurns = config.getConversationMaxTurns();
+        int maxTokens = config.getConversationMaxTokens();
+        conversations.asMap().compute(player, (uuid, conversation) -> {
+            Conversation updated = (conversation != null ? conversation : Conversation.EMPTY).with(turn, maxTurns, maxTokens);
+            return updated.isEmpty() ? null : updated;
+        });
+    }
+
+    private static Cache<UUID, Conversation> build(Config config) {
+        return CacheBuilder.newBuilder()
+            .maximumSize(Math.max(1, config.getConversationMaxPlayers()))
+            .expireAfterAccess(Math.max(1, config.getConversationIdleMinutes()), TimeUnit.MINUTES)
+            .build();
+    }
+}
@@ -0,0 +1,32 @@
+package minecraft.llm.conversation;
+
+/**
+ * Cheap local estimate of how many tokens a piece of text costs.
+ *
+ * English text averages about four characters per token across the providers'
+ * tokenizers, while most other scripts use about one token per character. The
+ * estimate only needs to be close enough to keep requests inside a budget.
+ */
+public final class TokenEstimator {
+    // Role markers and separators around every message
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * Estimates the tokens in one message, including its overhead
+     */
+    public static int estimate(CharSequence text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(text.charAt(i))) {
+                other++;
+            }
+        }
+        return MESSAGE_OVERHEAD + (ascii + 3) / 4 + other;
+    }
+}
@@ -0,0 +1,234 @@
+package minecraft.llm.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Everything the mod measures about the questions it answers.
+ *
+ * Counters are LongAdders and latencies go into lock-free histograms, so
+ * recording costs a few atomic increments on whichever thread is handling the
+ * request. Reading the numbers, for /llmstats or the Prometheus export, adds
+ * them up at that moment.
+ */
+public class Metrics {
+    // Bucket bounds of the exported histograms, in seconds
+    private static final double[] EXPORT_BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    private final LongAdder questions = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder semanticHits = new LongAdder();
+    private final LongAdder storeHits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final Histogram queueWait = new Histogram();
+    private final Histogram turnWait = new Histogram();
+    // Sorted by name so the export is stable
+    private final Map<String, ProviderMetrics> providers = new ConcurrentSkipListMap<>();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    private record Gauge(String name, String label, String help, IntSupplier value) {
+    }
+
+    /**
+     * Get the metrics of a provider, creating them on first use
+     */
+    public ProviderMetrics provider(String providerName) {
+        return providers.computeIfAbsent(providerName, ProviderMetrics::new);
+    }
+
+    public Collection<ProviderMetrics> getProviders() {
+        return providers.values();
+    }
+
+    /**
+     * Adds a value that is read when the metrics are shown, such as the number of queued requests.
+     * The name is used in the export and the label in the chat.
+     */
+    public void addGauge(String name, String label, String help, IntSupplier value) {
+        gauges.add(new Gauge(name, label, help, value));
+    }
+
+    /**
+     * A question was asked with /llm
+     */
+    public void recordQuestion() {
+        questions.increment();
+    }
+
+    public void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    /**
+     * A question was turned away because every request slot was taken and the queue was full
+     */
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    public void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * A question was answered with the cached answer to a differently worded one
+     */
+    public void recordSemanticHit() {
+        semanticHits.increment();
+    }
+
+    public void recordStoreHit() {
+        storeHits.increment();
+    }
+
+    /**
+     * A question joined an identical request already in flight
+     */
+    public void recordCoalesced() {
+        coalesced.increment();
+    }
+
+    /**
+     * Time requests spent waiting for a free worker
+     */
+    public Histogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Time questions spent waiting their turn behind other players' questions
+     */
+    public Histogram getTurnWait() {
+        return turnWait;
+    }
+
+    /**
+     * A short summary for the chat, one line per entry
+     */
+    public List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Questions: %d (cache hits: %d, similar: %d, from disk: %d, shared: %d)",
+            questions.sum(), cacheHits.sum(), semanticHits.sum(), storeHits.sum(), coalesced.sum()));
+        lines.add(String.format(Locale.ROOT, "Turned away: %d rate limited, %d busy", rateLimited.sum(), rejected.sum()));
+        if (!gauges.isEmpty()) {
+            StringBuilder now = new StringBuilder("Now:");
+            for (Gauge gauge : gauges) {
+                now.append(' ').append(gauge.value().getAsInt()).append(' ').append(gauge.label()).append(',');
+            }
+            now.setLength(now.length() - 1);
+            lines.add(now.toString());
+        }
+        lines.add("Turn wait: " + latencies(turnWait));
+        lines.add("Queue wait: " + latencies(queueWait));
+        for (ProviderMetrics provider : providers.values()) {
+            if (provider.getRequests() == 0) {
+                continue;
+            }
+            lines.add(String.format(Locale.ROOT, "%s: %d requests, %d errors, %d cancelled, tokens in %d / out %d (%.1f tokens/s)",
+                provider.getProviderName(), provider.getRequests(), provider.getErrors(), provider.getCancelled(),
+                provider.getInputTokens(), provider.getOutputTokens(), provider.getTokensPerSecond()));
+            lines.add("  first token: " + latencies(provider.getFirstToken()));
+            lines.add("  whole answer: " + latencies(provider.getDuration()));
+        }
+        return lines;
+    }
+
+    private static String latencies(Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "no data";
+        }
+        return String.format(Locale.ROOT, "p50 %s, p90 %s, p99 %s, max %s (%d)",
+            millis(histogram.getPercentile(50)), millis(histogram.getPercentile(90)),
+            millis(histogram.getPercentile(99)), millis(histogram.getMax()), histogram.getCount());
+    }
+
+    private static String millis(long micros) {
+        return micros < 10_000
+            ? String.format(Locale.ROOT, "%.1fms", micros / 1000.0)
+            : TimeUnit.MICROSECONDS.toMillis(micros) + "ms";
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        counter(out, "llm_questions_total", "Questions asked with /llm", questions.sum());
+        counter(out, "llm_rate_limited_total", "Questions turned away by the rate limiter", rateLimited.sum());
+        counter(out, "llm_rejected_total", "Questions turned away because the request queue was full", rejected.sum());
+        counter(out, "llm_cache_hits_total", "Questions answered from the response cache", cacheHits.sum());
+        counter(out, "llm_semantic_cache_hits_total", "Questions answered with the cached answer to a similar question", semanticHits.sum());
+        counter(out, "llm_answer_store_hits_total", "Questions answered from the answer store on disk", storeHits.sum());
+        counter(out, "llm_coalesced_total", "Questions that joined an identical request in flight", coalesced.sum());
+        for (Gauge gauge : gauges) {
+            header(out, gauge.name(), gauge.help(), "gauge");
+            out.append(gauge.name()).append(' ').append(gauge.value().getAsInt()).append('\n');
+        }
+        histogram(out, "llm_turn_wait_seconds", "Time questions waited their turn behind other players' questions", null, turnWait, true);
+        histogram(out, "llm_queue_wait_seconds", "Time requests waited for a free worker", null, queueWait, true);
+
+        perProvider(out, "llm_provider_requests_total", "Requests sent to each provider", "counter", ProviderMetrics::getRequests);
+        perProvider(out, "llm_provider_errors_total", "Requests that failed", "counter", ProviderMetrics::getErrors);
+        perProvider(out, "llm_provider_cancelled_total", "Requests cancelled before they finished", "counter", ProviderMetrics::getCancelled);
+        perProvider(out, "llm_provider_input_tokens_total", "Input tokens reported by each provider", "counter", ProviderMetrics::getInputTokens);
+        perProvider(out, "llm_provider_output_tokens_total", "Output tokens reported by each provider", "counter", ProviderMetrics::getOutputTokens);
+        boolean first = true;
+        for (ProviderMetrics provider : providers.values()) {
+            histogram(out, "llm_provider_first_token_seconds", "Time from sending a request to its first text", provider.getProviderName(), provider.getFirstToken(), first);
+            first = false;
+        }
+        first = true;
+        for (ProviderMetrics provider : providers.values()) {
+            histogram(out, "llm_provider_duration_seconds", "Time from sending a request to the end of its answer", provider.getProviderName(), provider.getDuration(), first);
+            first = false;
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private void perProvider(StringBuilder out, String name, String help, String type, ToLongFunction<ProviderMetrics> value) {
+        header(out, name, help, type);
+        for (ProviderMetrics provider : providers.values()) {
+            out.append(name).append("{provider=\"").append(provider.getProviderName()).append("\"} ")
+                .append(value.applyAsLong(provider)).append('\n');
+        }
+    }
+
+    private static void histogram(StringBuilder out, String name, String help, String provider, Histogram histogram, boolean withHeader) {
+        if (withHeader) {
+            header(out, name, help, "histogram");
+        }
+        // Read the count first and cap the buckets by it, so they stay cumulative while requests are being recorded
+        long count = histogram.getCount();
+        String labels = provider == null ? "" : "provider=\"" + provider + "\",";
+        for (double bound : EXPORT_BUCKETS) {
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(bound).append("\"} ")
+                .append(Math.min(count, histogram.countAtMost((long) (bound * 1_000_000)))).append('\n');
+        }
+        out.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").append(count).append('\n');
+        String plainLabels = provider == null ? "" : "{provider=\"" + provider + "\"}";
+        out.append(name).append("_sum").append(plainLabels).append(' ')
+            .append(String.format(Locale.ROOT, "%.6f", histogram.getSum() / 1e6)).append('\n');
+        out.append(name).append("_count").append(plainLabels).append(' ').append(count).append('\n');
+    }
+}
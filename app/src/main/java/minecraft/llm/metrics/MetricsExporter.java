@@ -0,0 +1,136 @@
+package minecraft.llm.metrics;
+
+import minecraft.llm.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics to a text file in the Prometheus format.
+ *
+ * The file can be picked up by node_exporter's textfile collector or read by
+ * hand. It is written on its own thread, every metricsExportSeconds when that
+ * is set and whenever /llmstats export asks for it, to a temporary file that is
+ * then renamed, so readers never see half of it.
+ */
+public class MetricsExporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    public static final Path EXPORT_FILE = Paths.get("config").resolve("llmcommand-metrics.prom");
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final Config config;
+    private final Metrics metrics;
+    private final Path file;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> periodic;
+
+    public MetricsExporter(Config config, Metrics metrics) {
+        this(config, metrics, EXPORT_FILE);
+    }
+
+    MetricsExporter(Config config, Metrics metrics, Path file) {
+        this.config = config;
+        this.metrics = metrics;
+        this.file = file;
+    }
+
+    /**
+     * Starts the export thread and the periodic export, if one is configured
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LLMCommandMod-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconfigure();
+    }
+
+    /**
+     * Applies a changed export interval
+     */
+    public synchronized void reconfigure() {
+        if (periodic != null) {
+            periodic.cancel(false);
+            periodic = null;
+        }
+        int seconds = config.getMetricsExportSeconds();
+        if (executor != null && seconds > 0) {
+            periodic = executor.scheduleWithFixedDelay(this::exportQuietly, seconds, seconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes the file now, completing with its path once it is written
+     */
+    public synchronized CompletableFuture<Path> export() {
+        if (executor == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("the server is not running"));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                write();
+                return file;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Stops the export thread, writing the file one last time when it is exported periodically
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        if (periodic != null) {
+            periodic.cancel(false);
+            periodic = null;
+            executor.execute(this::exportQuietly);
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Metrics export did not finish within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    private void exportQuietly() {
+        try {
+            write();
+        } catch (IOException e) {
+            LOGGER.error("Error exporting metrics to " + file, e);
+        }
+    }
+
+    private void write() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, metrics.toPrometheus(), StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
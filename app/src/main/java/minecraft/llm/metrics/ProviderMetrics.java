@@ -0,0 +1,159 @@
+package minecraft.llm.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the requests sent to one provider.
+ *
+ * Every attempt counts, including retries' final outcome, failovers and hedged
+ * copies, since each one is a request the API has to answer. Token counts are
+ * the ones the API reports in its usage data, so they cost nothing to collect.
+ */
+public class ProviderMetrics {
+    private final String providerName;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder inputTokens = new LongAdder();
+    private final LongAdder outputTokens = new LongAdder();
+    // Output tokens of complete answers and the time from their first token to their end, for tokens per second
+    private final LongAdder generatedTokens = new LongAdder();
+    private final LongAdder generatingNanos = new LongAdder();
+    private final Histogram firstToken = new Histogram();
+    private final Histogram duration = new Histogram();
+
+    public ProviderMetrics(String providerName) {
+        this.providerName = providerName;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * Starts measuring one request, returning the handle to report its progress to
+     */
+    public Request start() {
+        requests.increment();
+        return new Request(System.nanoTime());
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    public long getInputTokens() {
+        return inputTokens.sum();
+    }
+
+    public long getOutputTokens() {
+        return outputTokens.sum();
+    }
+
+    /**
+     * Output tokens per second while answers were being generated, or 0 before any were measured
+     */
+    public double getTokensPerSecond() {
+        long nanos = generatingNanos.sum();
+        return nanos == 0 ? 0 : generatedTokens.sum() / (nanos / 1e9);
+    }
+
+    /**
+     * Time from sending a request to its first piece of text
+     */
+    public Histogram getFirstToken() {
+        return firstToken;
+    }
+
+    /**
+     * Time from sending a request to the end of its answer, or its error
+     */
+    public Histogram getDuration() {
+        return duration;
+    }
+
+    /**
+     * One request in flight. Only the first of finish, fail or cancel counts;
+     * a cancel can come from another thread while the answer is still streaming.
+     */
+    public class Request {
+        private final long started;
+        private long firstTokenAt;
+        private int input;
+        private int output;
+        private boolean finished;
+
+        private Request(long started) {
+            this.started = started;
+        }
+
+        public synchronized void firstToken() {
+            if (firstTokenAt == 0 && !finished) {
+                firstTokenAt = System.nanoTime();
+                firstToken.recordNanos(firstTokenAt - started);
+            }
+        }
+
+        /**
+         * Records the token counts reported so far; usage arrives in pieces, so the largest of each counts
+         */
+        public synchronized void usage(int inputTokens, int outputTokens) {
+            input = Math.max(input, inputTokens);
+            output = Math.max(output, outputTokens);
+        }
+
+        public synchronized void finish() {
+            if (end()) {
+                long now = System.nanoTime();
+                duration.recordNanos(now - started);
+                if (firstTokenAt != 0 && output > 0) {
+                    generatedTokens.add(output);
+                    generatingNanos.add(Math.max(now - firstTokenAt, TimeUnit.MILLISECONDS.toNanos(1)));
+                }
+            }
+        }
+
+        public synchronized void fail() {
+            if (end()) {
+                errors.increment();
+                duration.recordNanos(System.nanoTime() - started);
+            }
+        }
+
+        public synchronized void cancel() {
+            if (end()) {
+                cancelled.increment();
+            }
+        }
+
+        /**
+         * Takes back a request that never left the server, so it isn't counted at all
+         */
+        public synchronized void abandon() {
+            if (!finished) {
+                finished = true;
+                requests.decrement();
+            }
+        }
+
+        private boolean end() {
+            if (finished) {
+                return false;
+            }
+            finished = true;
+            // Tokens are billed even when the answer fails halfway, so count what was reported
+            inputTokens.add(input);
+            outputTokens.add(output);
+            return true;
+        }
+    }
+}
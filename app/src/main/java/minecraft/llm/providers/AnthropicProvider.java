@@ -3,30 +3,34 @@ package minecraft.llm.providers;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import minecraft.llm.config.Config;
-import minecraft.llm.util.MessageUtils;
-import net.minecraft.server.command.ServerCommandSource;
+import minecraft.llm.config.ConfigSnapshot;
+import minecraft.llm.conversation.Conversation;
+import minecraft.llm.request.RequestExecutor;
+import minecraft.llm.util.JsonBodyWriter;
+import minecraft.llm.util.SseDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class AnthropicProvider implements LLMProvider {
     private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
-    private static final HttpClient CLIENT = HttpClient.newHttpClient();
     
     private final Config config;
-    private String model;
+    private final RequestExecutor executor;
+    private final HttpTransport transport;
+    private final RetryPolicy retryPolicy;
+    private volatile String model;
+    // The system prompt is the same for most requests, so it is only escaped when it changes
+    private final JsonBodyWriter.EncodedString systemPrompt = new JsonBodyWriter.EncodedString();
     
-    public AnthropicProvider(Config config) {
+    public AnthropicProvider(Config config, RequestExecutor executor, HttpTransport transport, RetryPolicy retryPolicy) {
         this.config = config;
+        this.executor = executor;
+        this.transport = transport;
+        this.retryPolicy = retryPolicy;
         this.model = config.getAnthropicModel();
     }
     
@@ -52,122 +56,121 @@ public class AnthropicProvider implements LLMProvider {
     }
     
     @Override
-    public CompletableFuture<Void> streamResponse(String query, ServerCommandSource source) {
-        return CompletableFuture.runAsync(() -> {
+    public CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+        CompletableFuture<Void> stream = new CompletableFuture<>();
+        executor.submit(() -> {
+            if (stream.isCancelled()) {
+                // Cancelled while waiting for a worker, so it never needs to be sent
+                return stream;
+            }
             try {
+                // Read every setting for this request from one snapshot
+                ConfigSnapshot settings = config.snapshot();
                 log("Using model: " + model);
                 
                 // Set up Anthropic API request
-                String apiUrl = "https://api.anthropic.com/v1/messages";
-                String apiKey = config.getAnthropicApiKey();
+                String apiUrl = settings.getAnthropicBaseUrl() + "/v1/messages";
+                String apiKey = settings.getAnthropicApiKey();
                 
-                String requestBodyJson;
-                if (config.getSystemPrompt() != null && !config.getSystemPrompt().isEmpty()) {
-                    log("Using system prompt: " + config.getSystemPrompt());
-                    requestBodyJson = String.format(
-                        "{\"model\":\"%s\",\"messages\":[{\"role\":\"user\",\"content\":\"%s\"}],\"system\":\"%s\",\"stream\":true,\"max_tokens\":2000}",
-                        model, 
-                        query.replace("\"", "\\\""),
-                        config.getSystemPrompt().replace("\"", "\\\"")
-                    );
-                } else {
-                    requestBodyJson = String.format(
-                        "{\"model\":\"%s\",\"messages\":[{\"role\":\"user\",\"content\":\"%s\"}],\"stream\":true,\"max_tokens\":2000}",
-                        model, 
-                        query.replace("\"", "\\\"")
-                    );
+                if (hasSystemPrompt(settings)) {
+                    log("Using system prompt: " + settings.getSystemPrompt());
                 }
+                JsonBodyWriter requestBody = writeBody(settings, history, query, true);
+                // The writer is reused by this thread's next request while this one is still streaming
+                String loggedBody = config.getDebugMode() ? requestBody.toString() : null;
                 
                 log("Sending request to Anthropic API with query: " + query);
                 if (config.getDebugMode()) {
-                    log("Request body: " + requestBodyJson);
+                    log("Request body: " + loggedBody);
                     // Print directly to console for visibility
                     log("[LLMCommandMod] DEBUG: Sending to URL: " + apiUrl);
                     log("[LLMCommandMod] DEBUG: With headers: content-type: application/json, x-api-key: [API_KEY_HIDDEN], anthropic-version: 2023-06-01");
                 }
                 
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(apiUrl))
+                HttpTransport.Timeouts timeouts = HttpTransport.Timeouts.fromConfig(settings, getProviderName());
+                HttpRequest request = transport.newRequest(apiUrl, timeouts)
                     .header("content-type", "application/json")
                     .header("x-api-key", apiKey)
                     .header("anthropic-version", "2023-06-01")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+                    .POST(requestBody.detachedPublisher())
                     .build();
                 
-                // For keeping track of response chunks
-                StringBuilder currentMessage = new StringBuilder();
-                AtomicReference<String> lastMessageRef = new AtomicReference<>("");
-                
-                // Stream the response
-                try {
-                    log("Starting streaming response");
-                    
-                    // Use a timeout for the request
-                    HttpResponse<InputStream> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
-                    
-                    // Check response status
-                    int statusCode = response.statusCode();
-                    if (config.getDebugMode()) {
-                        log("[LLMCommandMod] DEBUG: Received response with status code: " + statusCode);
-                    }
-                    
-                    if (statusCode != 200) {
-                        // Try to read error message
-                        StringBuilder errorBody = new StringBuilder();
-                        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body()))) {
-                            String line;
-                            while ((line = reader.readLine()) != null) {
-                                errorBody.append(line);
-                            }
-                        }
-                        
-                        String errorMessage = "API returned error code " + statusCode;
-                        if (errorBody.length() > 0) {
-                            errorMessage += ": " + errorBody.toString();
-                            log("[LLMCommandMod] API Error: " + errorBody.toString());
-                            // Log the request payload that caused the error
-                            log("[LLMCommandMod] API Request: " + requestBodyJson);
-                        }
-                        throw new Exception(errorMessage);
-                    }
-                    
-                    // Process successful response
-                    response.body().transferTo(handleAnthropicStream(source, currentMessage, lastMessageRef));
-                    log("Stream completed successfully");
-                } catch (Exception e) {
-                    logError("Error during streaming", e);
-                    MessageUtils.sendMessageToMinecraft(source, "§cError talking to Claude: " + e.getMessage() + "§r");
-                    throw e;
-                }
+                // Stream the response; the events are handled on the HTTP client's threads as they arrive
+                log("Starting streaming response");
+                SseDecoder decoder = handleAnthropicStream(sink);
+                retryPolicy.sendAsync(settings, getProviderName(), timeouts, stream, () -> transport.stream(request, timeouts, stream, decoder))
+                    .whenComplete((response, error) -> finishStream(stream, sink, response, error, loggedBody));
             } catch (Exception e) {
                 logError("Error executing Anthropic request", e);
-                throw new RuntimeException(e);
+                stream.completeExceptionally(e);
             }
+            return stream;
         });
+        return stream;
+    }
+    
+    /**
+     * Reports how the stream ended, once the whole body has been read
+     */
+    private void finishStream(CompletableFuture<Void> stream, ResponseSink sink, HttpResponse<String> response, Throwable error, String loggedBody) {
+        if (stream.isCancelled()) {
+            // Whoever cancelled the request has finished with the sink
+            log("Stream cancelled");
+            return;
+        }
+        if (error == null) {
+            // Check response status
+            int statusCode = response.statusCode();
+            if (config.getDebugMode()) {
+                log("[LLMCommandMod] DEBUG: Received response with status code: " + statusCode);
+            }
+            
+            if (statusCode == 200) {
+                sink.onComplete();
+                stream.complete(null);
+                log("Stream completed successfully");
+                return;
+            }
+            
+            String errorBody = response.body();
+            String errorMessage = "API returned error code " + statusCode;
+            if (errorBody != null && !errorBody.isEmpty()) {
+                errorMessage += ": " + errorBody;
+                log("[LLMCommandMod] API Error: " + errorBody);
+                // Log the request payload that caused the error
+                log("[LLMCommandMod] API Request: " + loggedBody);
+            }
+            if (RetryPolicy.isRetryable(statusCode)) {
+                // Retries ran out; the details are in the log, the player only needs to try again later
+                errorMessage = "the API is busy right now (error " + statusCode + "), please try again in a moment";
+            }
+            error = new Exception(errorMessage);
+        }
+        logError("Error during streaming", error);
+        sink.onError("Error talking to Claude: " + error.getMessage());
+        stream.completeExceptionally(error);
     }
     
     @Override
     public CompletableFuture<String> getResponse(String query) {
         return CompletableFuture.supplyAsync(() -> {
             try {
+                // Read every setting for this request from one snapshot
+                ConfigSnapshot settings = config.snapshot();
                 // Fallback non-streaming method
-                String apiUrl = "https://api.anthropic.com/v1/messages";
-                String apiKey = config.getAnthropicApiKey();
-                String requestBody = String.format(
-                    "{\"model\":\"%s\",\"messages\":[{\"role\":\"user\",\"content\":\"%s\"}],\"max_tokens\":2000}",
-                    model, 
-                    query.replace("\"", "\\\"")
-                );
+                String apiUrl = settings.getAnthropicBaseUrl() + "/v1/messages";
+                String apiKey = settings.getAnthropicApiKey();
+                JsonBodyWriter requestBody = writeBody(settings, Conversation.EMPTY, query, false);
                 
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(apiUrl))
+                HttpTransport.Timeouts timeouts = HttpTransport.Timeouts.fromConfig(settings, getProviderName());
+                HttpRequest request = transport.newRequest(apiUrl, timeouts)
                     .header("content-type", "application/json")
                     .header("x-api-key", apiKey)
                     .header("anthropic-version", "2023-06-01")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                    .POST(requestBody.publisher())
                     .build();
                 
-                HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+                HttpResponse<String> response = retryPolicy.send(settings, getProviderName(), timeouts, () -> transport.send(request, timeouts));
                 
                 // Parse JSON response with Gson
                 JsonObject jsonResponse = JsonParser.parseString(response.body()).getAsJsonObject();
@@ -180,98 +183,82 @@ public class AnthropicProvider implements LLMProvider {
                 logError("Error in non-streaming Anthropic request", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, executor);
     }
     
-    private java.io.OutputStream handleAnthropicStream(
-        ServerCommandSource source,
-        StringBuilder currentMessage,
-        AtomicReference<String> lastMessageRef
-    ) {
-        return new java.io.OutputStream() {
-            private final StringBuilder lineBuffer = new StringBuilder();
+    SseDecoder handleAnthropicStream(ResponseSink sink) {
+        return new SseDecoder((event, data) -> {
+            // Log raw event if in debug mode
+            if (config.getDebugMode()) {
+                log("Received event: " + event + " " + data);
+            }
             
-            @Override
-            public void write(int b) {
-                char c = (char) b;
-                lineBuffer.append(c);
-                
-                // Process complete lines
-                if (c == '\n') {
-                    processLine(lineBuffer.toString(), source, currentMessage, lastMessageRef);
-                    lineBuffer.setLength(0);
-                }
+            // Skip ping events and empty data
+            if (data.isEmpty() || "ping".equals(event)) {
+                return;
             }
             
-            private void processLine(String line, ServerCommandSource source, StringBuilder currentMessage, AtomicReference<String> lastMessageRef) {
-                // Skip empty lines and event prefixes
-                if (line.isEmpty() || line.equals("\n")) {
-                    return;
-                }
+            try {
+                JsonObject json = JsonParser.parseString(data).getAsJsonObject();
                 
-                // Log raw line if in debug mode
-                if (config.getDebugMode()) {
-                    log("Received line: " + line);
+                // Handle content_block_delta events which contain text chunks
+                if (json.has("type") && "content_block_delta".equals(json.get("type").getAsString())) {
+                    if (json.has("delta") && json.getAsJsonObject("delta").has("text")) {
+                        String textChunk = json.getAsJsonObject("delta").get("text").getAsString();
+                        sink.onText(textChunk);
+                    }
                 }
                 
-                // Handle the new stream format from Anthropic
-                if (line.startsWith("data: ")) {
-                    String data = line.substring(6).trim();
-                    
-                    try {
-                        // Skip ping events and empty data
-                        if (data.isEmpty() || data.equals("\"type\": \"ping\"}")) {
-                            return;
-                        }
-                        
-                        JsonObject json = JsonParser.parseString(data).getAsJsonObject();
-                        
-                        // Handle content_block_delta events which contain text chunks
-                        if (json.has("type") && "content_block_delta".equals(json.get("type").getAsString())) {
-                            if (json.has("delta") && json.getAsJsonObject("delta").has("text")) {
-                                String textChunk = json.getAsJsonObject("delta").get("text").getAsString();
-                                currentMessage.append(textChunk);
-                                
-                                // Check if we need to send a message because we're approaching the length limit
-                                if (currentMessage.length() >= MessageUtils.getMaxMessageLength()) {
-                                    // Find a good break point (space, period, etc.)
-                                    int breakPoint = MessageUtils.findBreakPoint(currentMessage.toString(), MessageUtils.getMaxMessageLength());
-                                    
-                                    // Extract the part to send
-                                    String toSend = currentMessage.substring(0, breakPoint);
-                                    
-                                    // Only send if different from last message sent
-                                    // This avoids duplicate messages if chunks arrive mid-character
-                                    if (!toSend.equals(lastMessageRef.get())) {
-                                        MessageUtils.sendMessageToMinecraft(source, toSend);
-                                        lastMessageRef.set(toSend);
-                                    }
-                                    
-                                    // Keep the remainder for the next message
-                                    currentMessage.delete(0, breakPoint);
-                                }
-                            }
-                        }
-                        // Handle message_stop event to send any remaining text
-                        else if (json.has("type") && "message_stop".equals(json.get("type").getAsString())) {
-                            if (currentMessage.length() > 0) {
-                                MessageUtils.sendMessageToMinecraft(source, currentMessage.toString());
-                                currentMessage.setLength(0);
-                            }
-                        }
-                        // Handle content_block_stop event to display message if we have a complete block
-                        else if (json.has("type") && "content_block_stop".equals(json.get("type").getAsString())) {
-                            if (currentMessage.length() > 0 && currentMessage.length() < MessageUtils.getMaxMessageLength()) {
-                                MessageUtils.sendMessageToMinecraft(source, currentMessage.toString());
-                                currentMessage.setLength(0);
-                            }
-                        }
-                    } catch (Exception e) {
-                        logError("Error parsing JSON", e);
+                // Usage comes in two parts: the input tokens when the message starts, the output tokens as it ends
+                if (json.has("type") && "message_start".equals(json.get("type").getAsString())) {
+                    JsonObject message = json.getAsJsonObject("message");
+                    if (message != null && message.has("usage")) {
+                        reportUsage(sink, message.getAsJsonObject("usage"));
                     }
+                } else if (json.has("type") && "message_delta".equals(json.get("type").getAsString()) && json.has("usage")) {
+                    reportUsage(sink, json.getAsJsonObject("usage"));
                 }
+            } catch (Exception e) {
+                logError("Error parsing JSON", e);
             }
-        };
+        });
+    }
+    
+    private static void reportUsage(ResponseSink sink, JsonObject usage) {
+        int inputTokens = usage.has("input_tokens") ? usage.get("input_tokens").getAsInt() : 0;
+        int outputTokens = usage.has("output_tokens") ? usage.get("output_tokens").getAsInt() : 0;
+        sink.onUsage(inputTokens, outputTokens);
+    }
+    
+    private static boolean hasSystemPrompt(ConfigSnapshot settings) {
+        return settings.getSystemPrompt() != null && !settings.getSystemPrompt().isEmpty();
+    }
+    
+    /**
+     * Writes the request body: the system prompt, the earlier turns, then the new question
+     */
+    JsonBodyWriter writeBody(ConfigSnapshot settings, Conversation history, String query, boolean stream) {
+        JsonBodyWriter body = JsonBodyWriter.forCurrentThread()
+            .beginObject()
+            .name("model").value(model);
+        if (hasSystemPrompt(settings)) {
+            body.name("system").encodedValue(systemPrompt.get(settings.getSystemPrompt()));
+        }
+        body.name("messages").beginArray();
+        for (Conversation.Turn turn : history.turns()) {
+            writeMessage(body, "user", turn.question());
+            writeMessage(body, "assistant", turn.answer());
+        }
+        writeMessage(body, "user", query);
+        body.endArray();
+        if (stream) {
+            body.name("stream").value(true);
+        }
+        return body.name("max_tokens").value(2000).endObject();
+    }
+    
+    private static void writeMessage(JsonBodyWriter body, String role, String content) {
+        body.beginObject().name("role").value(role).name("content").value(content).endObject();
     }
     
     private void log(String message) {
@@ -5,28 +5,34 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import minecraft.llm.config.Config;
-import minecraft.llm.util.MessageUtils;
-import net.minecraft.server.command.ServerCommandSource;
+import minecraft.llm.config.ConfigSnapshot;
+import minecraft.llm.conversation.Conversation;
+import minecraft.llm.request.RequestExecutor;
+import minecraft.llm.util.JsonBodyWriter;
+import minecraft.llm.util.SseDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.concurrent.CompletableFuture;
 
 public class GeminiProvider implements LLMProvider {
     private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
-    private static final HttpClient CLIENT = HttpClient.newHttpClient();
     
     private final Config config;
-    private String model;
+    private final RequestExecutor executor;
+    private final HttpTransport transport;
+    private final RetryPolicy retryPolicy;
+    private volatile String model;
+    // The system prompt is the same for most requests, so it is only escaped when it changes
+    private final JsonBodyWriter.EncodedString systemPrompt = new JsonBodyWriter.EncodedString();
     
-    public GeminiProvider(Config config) {
+    public GeminiProvider(Config config, RequestExecutor executor, HttpTransport transport, RetryPolicy retryPolicy) {
         this.config = config;
+        this.executor = executor;
+        this.transport = transport;
+        this.retryPolicy = retryPolicy;
         this.model = config.getGeminiModel();
     }
     
@@ -52,167 +58,115 @@ public class GeminiProvider implements LLMProvider {
     }
     
     @Override
-    public CompletableFuture<Void> streamResponse(String query, ServerCommandSource source) {
-        return CompletableFuture.runAsync(() -> {
+    public CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+        CompletableFuture<Void> stream = new CompletableFuture<>();
+        executor.submit(() -> {
+            if (stream.isCancelled()) {
+                // Cancelled while waiting for a worker, so it never needs to be sent
+                return stream;
+            }
             try {
+                // Read every setting for this request from one snapshot
+                ConfigSnapshot settings = config.snapshot();
                 log("Using model: " + model);
                 
                 // Set up Gemini API request
-                String apiKey = config.getGeminiApiKey();
-                // Note: Using streamGenerateContent even though we read the whole response now.
-                // The non-streaming endpoint has a different structure.
-                String apiUrl = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":streamGenerateContent?key=" + apiKey;
+                String apiKey = settings.getGeminiApiKey();
+                // alt=sse makes streamGenerateContent send each partial response as a server-sent event
+                String apiUrl = settings.getGeminiBaseUrl() + "/v1beta/models/" + model + ":streamGenerateContent?alt=sse&key=" + apiKey;
                 
                 // Create request body
-                String requestBodyJson;
-                if (config.getSystemPrompt() != null && !config.getSystemPrompt().isEmpty()) {
-                    log("Using system prompt with Gemini: " + config.getSystemPrompt());
-                    requestBodyJson = String.format(
-                        "{\"system_instruction\":{\"parts\":[{\"text\":\"%s\"}]},\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"%s\"}]}],\"generationConfig\":{\"responseMimeType\":\"text/plain\"}}",
-                        config.getSystemPrompt().replace("\"", "\\\""),
-                        query.replace("\"", "\\\"")
-                    );
-                } else {
-                    requestBodyJson = String.format(
-                        "{\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"%s\"}]}],\"generationConfig\":{\"responseMimeType\":\"text/plain\"}}",
-                        query.replace("\"", "\\\"")
-                    );
+                if (hasSystemPrompt(settings)) {
+                    log("Using system prompt with Gemini: " + settings.getSystemPrompt());
                 }
+                JsonBodyWriter requestBody = writeBody(settings, history, query, true);
                 
                 log("Sending request to Gemini API with query: " + query);
                 if (config.getDebugMode()) {
-                    log("Request body: " + requestBodyJson);
-                    log("[LLMCommandMod] DEBUG: Sending to URL: " + apiUrl);
+                    log("Request body: " + requestBody);
+                    log("[LLMCommandMod] DEBUG: Sending to URL: " + apiUrl.replace(apiKey, "[API_KEY_HIDDEN]"));
                 }
                 
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(apiUrl))
+                HttpTransport.Timeouts timeouts = HttpTransport.Timeouts.fromConfig(settings, getProviderName());
+                HttpRequest request = transport.newRequest(apiUrl, timeouts)
                     .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+                    .POST(requestBody.detachedPublisher())
                     .build();
                 
-                // For keeping track of response chunks
-                StringBuilder fullMessage = new StringBuilder();
-                
-                // Read the full response instead of streaming chunk by chunk
-                try {
-                    log("Sending request and waiting for full response from Gemini...");
-                    
-                    // Use BodyHandlers.ofString() to get the full response body
-                    HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-                    
-                    // Check response status
-                    int statusCode = response.statusCode();
-                    String responseBody = response.body();
-                    
-                    if (config.getDebugMode()) {
-                        log("[LLMCommandMod] DEBUG: Received response with status code: " + statusCode);
-                        log("[LLMCommandMod] DEBUG: Full response body: " + responseBody);
-                    }
-                    
-                    if (statusCode != 200) {
-                        String errorMessage = "Gemini API returned error code " + statusCode;
-                        if (responseBody != null && !responseBody.isEmpty()) {
-                            errorMessage += ": " + responseBody;
-                            log("[LLMCommandMod] API Error Body: " + responseBody);
-                        }
-                        throw new Exception(errorMessage);
-                    }
-                    
-                    // Process the full response body
-                    // Gemini stream responses are often newline-separated JSON objects.
-                    // We need to handle the potential array structure or sequence of objects.
-                    try {
-                        // Check if it's a JSON array
-                        if (responseBody.trim().startsWith("[")) {
-                            JsonArray jsonArray = JsonParser.parseString(responseBody).getAsJsonArray();
-                            for (JsonElement element : jsonArray) {
-                                extractTextFromGeminiCandidate(element.getAsJsonObject(), fullMessage);
-                            }
-                        } else {
-                            // Assume newline-separated JSON objects
-                            String[] jsonObjects = responseBody.split("\r?\n");
-                            for (String jsonObjStr : jsonObjects) {
-                                if (jsonObjStr.trim().isEmpty() || !jsonObjStr.trim().startsWith("{")) {
-                                    continue; // Skip empty lines or non-JSON parts
-                                }
-                                try {
-                                    JsonObject json = JsonParser.parseString(jsonObjStr).getAsJsonObject();
-                                    extractTextFromGeminiCandidate(json, fullMessage);
-                                } catch (Exception parseEx) {
-                                    if (config.getDebugMode()) {
-                                        log("Skipping invalid JSON object in stream: " + jsonObjStr + " | Error: " + parseEx.getMessage());
-                                    }
-                                }
-                            }
-                        }
-                        
-                    } catch (Exception e) {
-                        logError("Error parsing full Gemini response", e);
-                        log("Problematic response body: " + responseBody);
-                        // Fallback: try treating the whole body as plain text if parsing fails completely?
-                        // Or just report the parsing error. Let's report for now.
-                        throw new Exception("Failed to parse Gemini response: " + e.getMessage());
-                    }
-                    
-                    // Send the accumulated message in chunks
-                    if (fullMessage.length() > 0) {
-                        String finalMessage = fullMessage.toString();
-                        int start = 0;
-                        while (start < finalMessage.length()) {
-                            int end = MessageUtils.findBreakPoint(finalMessage.substring(start), MessageUtils.getMaxMessageLength());
-                            MessageUtils.sendMessageToMinecraft(source, finalMessage.substring(start, start + end));
-                            start += end;
-                        }
-                    } else {
-                        // Send a message indicating no content was received if applicable
-                        MessageUtils.sendMessageToMinecraft(source, "§7(Received empty response from Gemini)§r");
-                    }
-                    
-                    log("Gemini response processed successfully.");
-                    
-                } catch (Exception e) {
-                    logError("Error during Gemini request/processing", e);
-                    MessageUtils.sendMessageToMinecraft(source, "§cError talking to Gemini: " + e.getMessage() + "§r");
-                    throw e; // Re-throw to be caught by the outer handler
-                }
+                // Stream the response; the events are handled on the HTTP client's threads as they arrive
+                log("Starting streaming response from Gemini");
+                SseDecoder decoder = handleGeminiStream(sink);
+                retryPolicy.sendAsync(settings, getProviderName(), timeouts, stream, () -> transport.stream(request, timeouts, stream, decoder))
+                    .whenComplete((response, error) -> finishStream(stream, sink, response, error));
             } catch (Exception e) {
                 logError("Error executing Gemini request", e);
-                throw new RuntimeException(e);
+                stream.completeExceptionally(e);
             }
+            return stream;
         });
+        return stream;
+    }
+    
+    /**
+     * Reports how the stream ended, once the whole body has been read
+     */
+    private void finishStream(CompletableFuture<Void> stream, ResponseSink sink, HttpResponse<String> response, Throwable error) {
+        if (stream.isCancelled()) {
+            // Whoever cancelled the request has finished with the sink
+            log("Stream cancelled");
+            return;
+        }
+        if (error == null) {
+            // Check response status
+            int statusCode = response.statusCode();
+            if (config.getDebugMode()) {
+                log("[LLMCommandMod] DEBUG: Received response with status code: " + statusCode);
+            }
+            
+            if (statusCode == 200) {
+                sink.onComplete();
+                stream.complete(null);
+                log("Gemini stream completed successfully");
+                return;
+            }
+            
+            String errorBody = response.body();
+            String errorMessage = "Gemini API returned error code " + statusCode;
+            if (errorBody != null && !errorBody.isEmpty()) {
+                errorMessage += ": " + errorBody;
+                log("[LLMCommandMod] API Error Body: " + errorBody);
+            }
+            if (RetryPolicy.isRetryable(statusCode)) {
+                // Retries ran out; the details are in the log, the player only needs to try again later
+                errorMessage = "the API is busy right now (error " + statusCode + "), please try again in a moment";
+            }
+            error = new Exception(errorMessage);
+        }
+        logError("Error during Gemini streaming", error);
+        sink.onError("Error talking to Gemini: " + error.getMessage());
+        stream.completeExceptionally(error);
     }
     
     @Override
     public CompletableFuture<String> getResponse(String query) {
         return CompletableFuture.supplyAsync(() -> {
             try {
+                // Read every setting for this request from one snapshot
+                ConfigSnapshot settings = config.snapshot();
                 // Non-streaming Gemini API request
-                String apiKey = config.getGeminiApiKey();
-                String apiUrl = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":generateContent?key=" + apiKey;
+                String apiKey = settings.getGeminiApiKey();
+                String apiUrl = settings.getGeminiBaseUrl() + "/v1beta/models/" + model + ":generateContent?key=" + apiKey;
                 
                 // Create request body
-                String requestBodyJson;
-                if (config.getSystemPrompt() != null && !config.getSystemPrompt().isEmpty()) {
-                    requestBodyJson = String.format(
-                        "{\"system_instruction\":{\"parts\":[{\"text\":\"%s\"}]},\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"%s\"}]}]}",
-                        config.getSystemPrompt().replace("\"", "\\\""),
-                        query.replace("\"", "\\\"")
-                    );
-                } else {
-                    requestBodyJson = String.format(
-                        "{\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"%s\"}]}]}",
-                        query.replace("\"", "\\\"")
-                    );
-                }
+                JsonBodyWriter requestBody = writeBody(settings, Conversation.EMPTY, query, false);
                 
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(apiUrl))
+                HttpTransport.Timeouts timeouts = HttpTransport.Timeouts.fromConfig(settings, getProviderName());
+                HttpRequest request = transport.newRequest(apiUrl, timeouts)
                     .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+                    .POST(requestBody.publisher())
                     .build();
                 
-                HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+                HttpResponse<String> response = retryPolicy.send(settings, getProviderName(), timeouts, () -> transport.send(request, timeouts));
                 
                 // Process response
                 if (response.statusCode() != 200) {
@@ -242,25 +196,88 @@ public class GeminiProvider implements LLMProvider {
                 logError("Error in non-streaming Gemini request", e);
                 throw new RuntimeException(e);
             }
+        }, executor);
+    }
+    
+    SseDecoder handleGeminiStream(ResponseSink sink) {
+        return new SseDecoder((event, data) -> {
+            // Log raw event if in debug mode
+            if (config.getDebugMode()) {
+                log("Received data from Gemini: " + data);
+            }
+            
+            try {
+                // Every event is a complete GenerateContentResponse holding the next piece of text
+                JsonObject json = JsonParser.parseString(data).getAsJsonObject();
+                String textChunk = extractTextFromGeminiCandidate(json);
+                if (!textChunk.isEmpty()) {
+                    sink.onText(textChunk);
+                }
+                
+                // Every event repeats the usage so far, so the last one holds the totals
+                if (json.has("usageMetadata")) {
+                    JsonObject usage = json.getAsJsonObject("usageMetadata");
+                    int inputTokens = usage.has("promptTokenCount") ? usage.get("promptTokenCount").getAsInt() : 0;
+                    int outputTokens = usage.has("candidatesTokenCount") ? usage.get("candidatesTokenCount").getAsInt() : 0;
+                    sink.onUsage(inputTokens, outputTokens);
+                }
+            } catch (Exception e) {
+                logError("Error parsing Gemini JSON", e);
+            }
         });
     }
     
     // Helper method to extract text from a single Gemini JSON object (candidate structure)
-    private void extractTextFromGeminiCandidate(JsonObject json, StringBuilder messageBuilder) {
+    private String extractTextFromGeminiCandidate(JsonObject json) {
+        StringBuilder text = new StringBuilder();
         if (json.has("candidates") && json.getAsJsonArray("candidates").size() > 0) {
             JsonObject candidate = json.getAsJsonArray("candidates").get(0).getAsJsonObject();
             
-            if (candidate.has("content") && candidate.getAsJsonObject("content").has("parts") && 
-                candidate.getAsJsonObject("content").getAsJsonArray("parts").size() > 0) {
-                
-                JsonElement part = candidate.getAsJsonObject("content").getAsJsonArray("parts").get(0);
-                
-                if (part.isJsonObject() && part.getAsJsonObject().has("text")) {
-                    String textChunk = part.getAsJsonObject().get("text").getAsString();
-                    messageBuilder.append(textChunk); 
+            if (candidate.has("content") && candidate.getAsJsonObject("content").has("parts")) {
+                for (JsonElement part : candidate.getAsJsonObject("content").getAsJsonArray("parts")) {
+                    if (part.isJsonObject() && part.getAsJsonObject().has("text")) {
+                        text.append(part.getAsJsonObject().get("text").getAsString());
+                    }
                 }
             }
         }
+        return text.toString();
+    }
+    
+    private static boolean hasSystemPrompt(ConfigSnapshot settings) {
+        return settings.getSystemPrompt() != null && !settings.getSystemPrompt().isEmpty();
+    }
+    
+    /**
+     * Writes the request body: the system instruction, the earlier turns, then the new question
+     */
+    JsonBodyWriter writeBody(ConfigSnapshot settings, Conversation history, String query, boolean stream) {
+        JsonBodyWriter body = JsonBodyWriter.forCurrentThread().beginObject();
+        if (hasSystemPrompt(settings)) {
+            body.name("system_instruction").beginObject()
+                .name("parts").beginArray()
+                .beginObject().name("text").encodedValue(systemPrompt.get(settings.getSystemPrompt())).endObject()
+                .endArray()
+                .endObject();
+        }
+        body.name("contents").beginArray();
+        for (Conversation.Turn turn : history.turns()) {
+            writeContent(body, "user", turn.question());
+            writeContent(body, "model", turn.answer());
+        }
+        writeContent(body, "user", query);
+        body.endArray();
+        if (stream) {
+            body.name("generationConfig").beginObject().name("responseMimeType").value("text/plain").endObject();
+        }
+        return body.endObject();
+    }
+    
+    private static void writeContent(JsonBodyWriter body, String role, String text) {
+        body.beginObject()
+            .name("role").value(role)
+            .name("parts").beginArray().beginObject().name("text").value(text).endObject().endArray()
+            .endObject();
     }
     
     private void log(String message) {
@@ -0,0 +1,242 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.conversation.Conversation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a second copy of a question when the first is slow to start answering.
+ *
+ * If no text has arrived by the configured percentile of recent first-token
+ * times, the same question is sent again (through the router, when routing is
+ * on). Whichever request produces text first is passed on to the player and the
+ * other is cancelled, which aborts its HTTP exchange. Hedges share a budget of a
+ * percentage of all requests, so a slow API doesn't get twice the traffic.
+ */
+public class HedgingProvider implements LLMProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LLMCommandMod-Hedging");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Config config;
+    private final LLMProvider delegate;
+    private final LatencyWindow latencies;
+    private final RequestBudget budget;
+
+    HedgingProvider(Config config, LLMProvider delegate, LatencyWindow latencies, RequestBudget budget) {
+        this.config = config;
+        this.delegate = delegate;
+        this.latencies = latencies;
+        this.budget = budget;
+    }
+
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public String getCurrentModel() {
+        return delegate.getCurrentModel();
+    }
+
+    @Override
+    public void setModel(String model) {
+        delegate.setModel(model);
+    }
+
+    @Override
+    public boolean hasValidApiKey() {
+        return delegate.hasValidApiKey();
+    }
+
+    @Override
+    public CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+        budget.deposit(config.getHedgingBudgetPercent() / 100.0);
+        Race race = new Race(sink);
+        race.start(0, query, history);
+
+        long threshold = latencies.percentile(config.getHedgingPercentile());
+        if (threshold >= 0) {
+            race.timer = TIMER.schedule(() -> race.hedge(query, history), threshold, TimeUnit.NANOSECONDS);
+        }
+        return race.done;
+    }
+
+    @Override
+    public CompletableFuture<String> getResponse(String query) {
+        return delegate.getResponse(query);
+    }
+
+    /**
+     * The first request and its hedge, racing to produce the first text
+     */
+    private class Race {
+        private final ResponseSink sink;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final CompletableFuture<?>[] attempts = new CompletableFuture<?>[2];
+        // When the first request was sent; both requests' waits count from here
+        private final long started = System.nanoTime();
+        private volatile Future<?> timer;
+        // Index of the request whose answer is passed on, or -1 while neither has produced anything
+        private volatile int winner = -1;
+        private int running;
+
+        Race(ResponseSink sink) {
+            this.sink = sink;
+            // Cancelling the hedged request cancels both copies
+            done.whenComplete((ignored, error) -> {
+                if (done.isCancelled()) {
+                    cancel(-1);
+                }
+            });
+        }
+
+        void start(int index, String query, Conversation history) {
+            synchronized (this) {
+                running++;
+            }
+            CompletableFuture<Void> attempt;
+            try {
+                attempt = delegate.streamResponse(query, history, new Contender(index));
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                }
+                throw e;
+            }
+            boolean lost;
+            synchronized (this) {
+                attempts[index] = attempt;
+                // The race may have been won or cancelled while this request was being sent
+                lost = done.isCancelled() || (winner != -1 && winner != index);
+            }
+            if (lost) {
+                attempt.cancel(true);
+            }
+        }
+
+        void hedge(String query, Conversation history) {
+            synchronized (this) {
+                if (winner != -1 || running == 0 || done.isDone()) {
+                    return;
+                }
+            }
+            if (!budget.tryWithdraw()) {
+                return;
+            }
+            LOGGER.info("No answer from {} after the p{} wait, sending a hedged request", delegate.getProviderName(), config.getHedgingPercentile());
+            try {
+                start(1, query, history);
+            } catch (RejectedExecutionException e) {
+                // The request executor is full; the first request carries on alone
+            }
+        }
+
+        /**
+         * Makes the given request the winner if nothing has won yet, and says whether it is the winner
+         */
+        boolean claim(int index) {
+            if (winner == index) {
+                return true;
+            }
+            boolean won;
+            synchronized (this) {
+                if (winner == -1) {
+                    winner = index;
+                    // The first request's wait, even when the hedge won: it would have taken at least this long,
+                    // while timing the hedge from its own start would pull the threshold down
+                    latencies.record(System.nanoTime() - started);
+                    if (index == 1) {
+                        LOGGER.info("Hedged request to {} answered first", delegate.getProviderName());
+                    }
+                }
+                won = winner == index;
+            }
+            if (won) {
+                cancel(index);
+            }
+            return won;
+        }
+
+        /**
+         * Cancels the pending hedge and every request except the given one
+         */
+        private void cancel(int keep) {
+            Future<?> pending = timer;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            for (int i = 0; i < attempts.length; i++) {
+                CompletableFuture<?> attempt;
+                synchronized (this) {
+                    attempt = attempts[i];
+                }
+                if (i != keep && attempt != null) {
+                    attempt.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * Whether a failed request should be reported: when it was the winner, or the last one running with no hedge to come
+         */
+        boolean reportFailure(int index) {
+            synchronized (this) {
+                running--;
+                if (winner == index) {
+                    return true;
+                }
+                if (winner != -1 || running > 0) {
+                    return false;
+                }
+                // Every request failed before answering, so this error is the answer (and no hedge follows)
+                winner = index;
+            }
+            cancel(index);
+            return true;
+        }
+
+        private class Contender implements ResponseSink {
+            private final int index;
+
+            Contender(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public void onText(String text) {
+                if (claim(index)) {
+                    sink.onText(text);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                if (claim(index)) {
+                    sink.onComplete();
+                    done.complete(null);
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                if (reportFailure(index)) {
+                    sink.onError(message);
+                    done.complete(null);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.ConfigSnapshot;
+import minecraft.llm.util.SseDecoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP layer shared by all providers.
+ *
+ * Requests go through HTTP/2 clients that run on a small dedicated executor,
+ * so concurrent streams to the same API share one connection, and streamed
+ * answers are read as the client delivers them rather than by a blocked
+ * thread each. Every request is bound by three deadlines: connecting,
+ * receiving the response headers (first byte) and receiving the whole body.
+ * When a deadline passes the exchange is aborted and fails with an
+ * HttpTimeoutException.
+ */
+public class HttpTransport {
+    private static final int HTTP_THREADS = 2;
+
+    /**
+     * Deadlines for a single request
+     */
+    public record Timeouts(Duration connect, Duration firstByte, Duration total) {
+        /**
+         * Reads the timeouts configured for the given provider
+         */
+        public static Timeouts fromConfig(ConfigSnapshot config, String provider) {
+            return new Timeouts(
+                Duration.ofSeconds(config.getConnectTimeoutSeconds(provider)),
+                Duration.ofSeconds(config.getFirstByteTimeoutSeconds(provider)),
+                Duration.ofSeconds(config.getRequestTimeoutSeconds(provider))
+            );
+        }
+    }
+
+    private final ExecutorService httpExecutor = Executors.newFixedThreadPool(HTTP_THREADS, daemonThreads("LLMCommandMod-Http-"));
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(daemonThreads("LLMCommandMod-Deadline-"));
+    // The connect timeout is a client setting, so providers with the same value share a client
+    private final Map<Duration, HttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Starts a request builder with the first-byte deadline applied
+     */
+    public HttpRequest.Builder newRequest(String url, Timeouts timeouts) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(url))
+            .timeout(timeouts.firstByte());
+    }
+
+    /**
+     * Sends a request without holding a thread while it streams. A 200 response
+     * body is fed to the decoder as it arrives, and the next buffer is only asked
+     * for once the previous one has been decoded, so a slow reader slows the
+     * stream down rather than piling up buffers. Any other response body is read
+     * as a string. The future completes when the body has ended: with a null body
+     * for a streamed answer, or with the error text. It fails with an
+     * HttpTimeoutException once the total deadline passes, and cancelling the
+     * owner aborts the exchange at any point.
+     */
+    public CompletableFuture<HttpResponse<String>> stream(HttpRequest request, Timeouts timeouts, CompletableFuture<?> owner, SseDecoder decoder) {
+        StreamingExchange exchange = new StreamingExchange(decoder);
+        ScheduledFuture<?> expiry = deadlines.schedule(
+            () -> exchange.abort(new HttpTimeoutException("Response did not finish within " + timeouts.total().toSeconds() + " seconds")),
+            timeouts.total().toNanos(), TimeUnit.NANOSECONDS);
+        exchange.result.whenComplete((response, error) -> expiry.cancel(false));
+        owner.whenComplete((ignored, error) -> {
+            if (owner.isCancelled()) {
+                exchange.abort(new CancellationException("Request was cancelled"));
+            }
+        });
+        exchange.start(client(timeouts), request);
+        return exchange.result;
+    }
+
+    /**
+     * Sends a request and reads the whole body as a string within the total deadline
+     */
+    public HttpResponse<String> send(HttpRequest request, Timeouts timeouts) throws IOException, InterruptedException {
+        return await(client(timeouts).sendAsync(request, HttpResponse.BodyHandlers.ofString()), timeouts);
+    }
+
+    private HttpClient client(Timeouts timeouts) {
+        return clients.computeIfAbsent(timeouts.connect(), connectTimeout -> HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(connectTimeout)
+            .executor(httpExecutor)
+            .build());
+    }
+
+    /**
+     * Waits for an exchange, cancelling it rather than leaving it running if the
+     * total deadline passes or the waiting thread is interrupted
+     */
+    private static <T> T await(CompletableFuture<T> exchange, Timeouts timeouts) throws IOException, InterruptedException {
+        try {
+            return exchange.get(timeouts.total().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            exchange.cancel(true);
+            throw new HttpTimeoutException("Request did not complete within " + timeouts.total().toSeconds() + " seconds");
+        } catch (InterruptedException e) {
+            exchange.cancel(true);
+            throw e;
+        } catch (CancellationException e) {
+            throw new IOException("Request was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Unwraps the CompletionException an asynchronous stage wraps a failure in
+     */
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * One streamed exchange: picks the body subscriber once the status is known,
+     * and feeds a 200 body to the decoder one buffer at a time
+     */
+    private static class StreamingExchange implements HttpResponse.BodyHandler<String>, HttpResponse.BodySubscriber<String> {
+        private final SseDecoder decoder;
+        private final CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        private final CompletableFuture<String> body = new CompletableFuture<>();
+        private volatile CompletableFuture<HttpResponse<String>> exchange;
+        private volatile Flow.Subscription subscription;
+
+        StreamingExchange(SseDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        void start(HttpClient client, HttpRequest request) {
+            CompletableFuture<HttpResponse<String>> sent = client.sendAsync(request, this);
+            exchange = sent;
+            sent.whenComplete((response, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(unwrap(error));
+                } else {
+                    result.complete(response);
+                }
+            });
+            // Aborted before the exchange existed
+            if (result.isCompletedExceptionally()) {
+                sent.cancel(true);
+            }
+        }
+
+        /**
+         * Ends the exchange with the given error, stopping the body and the HTTP exchange
+         */
+        void abort(Throwable reason) {
+            if (!result.completeExceptionally(reason)) {
+                return;
+            }
+            body.completeExceptionally(reason);
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+            CompletableFuture<HttpResponse<String>> sent = exchange;
+            if (sent != null) {
+                sent.cancel(true);
+            }
+        }
+
+        @Override
+        public HttpResponse.BodySubscriber<String> apply(HttpResponse.ResponseInfo responseInfo) {
+            if (responseInfo.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+            }
+            return this;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (result.isDone()) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                decoder.feed(buffers);
+            } catch (RuntimeException e) {
+                abort(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            body.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                decoder.finish();
+                body.complete(null);
+            } catch (RuntimeException e) {
+                abort(e);
+            }
+        }
+
+        @Override
+        public CompletionStage<String> getBody() {
+            return body;
+        }
+    }
+}
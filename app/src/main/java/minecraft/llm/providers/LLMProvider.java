@@ -1,6 +1,7 @@
 package minecraft.llm.providers;
 
-import net.minecraft.server.command.ServerCommandSource;
+import minecraft.llm.conversation.Conversation;
+
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -28,9 +29,18 @@ public interface LLMProvider {
     boolean hasValidApiKey();
     
     /**
-     * Sends a query to the LLM and streams the response to the user
+     * Sends a query to the LLM and streams the response into the sink.
+     * Throws RejectedExecutionException if the request executor is full.
+     */
+    default CompletableFuture<Void> streamResponse(String query, ResponseSink sink) {
+        return streamResponse(query, Conversation.EMPTY, sink);
+    }
+    
+    /**
+     * Sends a query along with the earlier turns of the conversation and streams the response into the sink.
+     * Throws RejectedExecutionException if the request executor is full.
      */
-    CompletableFuture<Void> streamResponse(String query, ServerCommandSource source);
+    CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink);
     
     /**
      * Non-streaming fallback method if streaming is not available
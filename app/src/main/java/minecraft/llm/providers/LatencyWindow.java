@@ -0,0 +1,44 @@
+package minecraft.llm.providers;
+
+import java.util.Arrays;
+
+/**
+ * The most recent latency samples of one provider, for percentile estimates.
+ *
+ * Samples go into a fixed ring, so memory stays constant and old samples fade
+ * out as the provider's behavior changes. Percentiles sort a copy of the ring;
+ * with a few hundred samples that costs microseconds, once per request.
+ */
+class LatencyWindow {
+    private static final int CAPACITY = 256;
+    // Too few samples say little about the tail
+    static final int MIN_SAMPLES = 20;
+
+    private final long[] samples = new long[CAPACITY];
+    private int next;
+    private int count;
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % CAPACITY;
+        if (count < CAPACITY) {
+            count++;
+        }
+    }
+
+    /**
+     * The given percentile (0-100) of the recorded samples in nanoseconds, or -1 if there are too few
+     */
+    long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
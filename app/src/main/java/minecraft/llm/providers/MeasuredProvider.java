@@ -0,0 +1,108 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.conversation.Conversation;
+import minecraft.llm.metrics.ProviderMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Records the requests, latencies and token usage of one provider.
+ *
+ * Wraps each provider directly, underneath routing and hedging, so every
+ * request that reaches an API is measured against the provider that answered it.
+ */
+public class MeasuredProvider implements LLMProvider {
+    private final LLMProvider delegate;
+    private final ProviderMetrics metrics;
+
+    MeasuredProvider(LLMProvider delegate, ProviderMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public String getCurrentModel() {
+        return delegate.getCurrentModel();
+    }
+
+    @Override
+    public void setModel(String model) {
+        delegate.setModel(model);
+    }
+
+    @Override
+    public boolean hasValidApiKey() {
+        return delegate.hasValidApiKey();
+    }
+
+    @Override
+    public CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+        ProviderMetrics.Request request = metrics.start();
+        ResponseSink measured = new ResponseSink() {
+            @Override
+            public void onText(String text) {
+                request.firstToken();
+                sink.onText(text);
+            }
+
+            @Override
+            public void onComplete() {
+                request.finish();
+                sink.onComplete();
+            }
+
+            @Override
+            public void onError(String message) {
+                request.fail();
+                sink.onError(message);
+            }
+
+            @Override
+            public void onUsage(int inputTokens, int outputTokens) {
+                request.usage(inputTokens, outputTokens);
+                sink.onUsage(inputTokens, outputTokens);
+            }
+        };
+        CompletableFuture<Void> stream;
+        try {
+            stream = delegate.streamResponse(query, history, measured);
+        } catch (RejectedExecutionException e) {
+            request.abandon();
+            throw e;
+        }
+        stream.whenComplete((ignored, error) -> {
+            if (stream.isCancelled()) {
+                request.cancel();
+            } else if (error != null) {
+                request.fail();
+            }
+        });
+        return stream;
+    }
+
+    @Override
+    public CompletableFuture<String> getResponse(String query) {
+        ProviderMetrics.Request request = metrics.start();
+        CompletableFuture<String> response;
+        try {
+            response = delegate.getResponse(query);
+        } catch (RejectedExecutionException e) {
+            request.abandon();
+            throw e;
+        }
+        return response.whenComplete((answer, error) -> {
+            if (error == null) {
+                request.firstToken();
+                request.finish();
+            } else {
+                request.fail();
+            }
+        });
+    }
+}
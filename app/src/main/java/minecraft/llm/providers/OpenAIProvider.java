@@ -3,30 +3,34 @@ package minecraft.llm.providers;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import minecraft.llm.config.Config;
-import minecraft.llm.util.MessageUtils;
-import net.minecraft.server.command.ServerCommandSource;
+import minecraft.llm.config.ConfigSnapshot;
+import minecraft.llm.conversation.Conversation;
+import minecraft.llm.request.RequestExecutor;
+import minecraft.llm.util.JsonBodyWriter;
+import minecraft.llm.util.SseDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class OpenAIProvider implements LLMProvider {
     private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
-    private static final HttpClient CLIENT = HttpClient.newHttpClient();
     
     private final Config config;
-    private String model;
+    private final RequestExecutor executor;
+    private final HttpTransport transport;
+    private final RetryPolicy retryPolicy;
+    private volatile String model;
+    // The system prompt is the same for most requests, so it is only escaped when it changes
+    private final JsonBodyWriter.EncodedString systemPrompt = new JsonBodyWriter.EncodedString();
     
-    public OpenAIProvider(Config config) {
+    public OpenAIProvider(Config config, RequestExecutor executor, HttpTransport transport, RetryPolicy retryPolicy) {
         this.config = config;
+        this.executor = executor;
+        this.transport = transport;
+        this.retryPolicy = retryPolicy;
         this.model = config.getOpenaiModel();
     }
     
@@ -52,126 +56,114 @@ public class OpenAIProvider implements LLMProvider {
     }
     
     @Override
-    public CompletableFuture<Void> streamResponse(String query, ServerCommandSource source) {
-        return CompletableFuture.runAsync(() -> {
+    public CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+        CompletableFuture<Void> stream = new CompletableFuture<>();
+        executor.submit(() -> {
+            if (stream.isCancelled()) {
+                // Cancelled while waiting for a worker, so it never needs to be sent
+                return stream;
+            }
             try {
+                // Read every setting for this request from one snapshot
+                ConfigSnapshot settings = config.snapshot();
                 log("Using model: " + model);
                 
                 // Set up OpenAI API request
-                String apiUrl = "https://api.openai.com/v1/chat/completions";
-                String apiKey = config.getOpenaiApiKey();
+                String apiUrl = settings.getOpenaiBaseUrl() + "/v1/chat/completions";
+                String apiKey = settings.getOpenaiApiKey();
                 
-                String requestBodyJson;
-                if (config.getSystemPrompt() != null && !config.getSystemPrompt().isEmpty()) {
-                    log("Using system prompt: " + config.getSystemPrompt());
-                    requestBodyJson = String.format(
-                        "{\"model\":\"%s\",\"messages\":[{\"role\":\"system\",\"content\":\"%s\"},{\"role\":\"user\",\"content\":\"%s\"}],\"stream\":true,\"max_tokens\":2000}",
-                        model, 
-                        config.getSystemPrompt().replace("\"", "\\\""),
-                        query.replace("\"", "\\\"")
-                    );
-                } else {
-                    requestBodyJson = String.format(
-                        "{\"model\":\"%s\",\"messages\":[{\"role\":\"user\",\"content\":\"%s\"}],\"stream\":true,\"max_tokens\":2000}",
-                        model, 
-                        query.replace("\"", "\\\"")
-                    );
+                if (hasSystemPrompt(settings)) {
+                    log("Using system prompt: " + settings.getSystemPrompt());
                 }
+                JsonBodyWriter requestBody = writeBody(settings, history, query, true);
                 
                 log("Sending request to OpenAI API with query: " + query);
                 if (config.getDebugMode()) {
-                    log("Request body: " + requestBodyJson);
+                    log("Request body: " + requestBody);
                     log("[LLMCommandMod] DEBUG: Sending to URL: " + apiUrl);
                 }
                 
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(apiUrl))
+                HttpTransport.Timeouts timeouts = HttpTransport.Timeouts.fromConfig(settings, getProviderName());
+                HttpRequest request = transport.newRequest(apiUrl, timeouts)
                     .header("Content-Type", "application/json")
                     .header("Authorization", "Bearer " + apiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+                    .POST(requestBody.detachedPublisher())
                     .build();
                 
-                // For keeping track of response chunks
-                StringBuilder currentMessage = new StringBuilder();
-                AtomicReference<String> lastMessageRef = new AtomicReference<>("");
-                
-                // Stream the response
-                try {
-                    log("Starting streaming response from OpenAI");
-                    
-                    HttpResponse<InputStream> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
-                    
-                    // Check response status
-                    int statusCode = response.statusCode();
-                    if (config.getDebugMode()) {
-                        log("[LLMCommandMod] DEBUG: Received response with status code: " + statusCode);
-                    }
-                    
-                    if (statusCode != 200) {
-                        // Try to read error message
-                        StringBuilder errorBody = new StringBuilder();
-                        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body()))) {
-                            String line;
-                            while ((line = reader.readLine()) != null) {
-                                errorBody.append(line);
-                            }
-                        }
-                        
-                        String errorMessage = "OpenAI API returned error code " + statusCode;
-                        if (errorBody.length() > 0) {
-                            errorMessage += ": " + errorBody.toString();
-                            log("[LLMCommandMod] API Error: " + errorBody.toString());
-                        }
-                        throw new Exception(errorMessage);
-                    }
-                    
-                    // Process successful response
-                    response.body().transferTo(handleOpenAIStream(source, currentMessage, lastMessageRef));
-                    log("OpenAI stream completed successfully");
-                } catch (Exception e) {
-                    logError("Error during OpenAI streaming", e);
-                    MessageUtils.sendMessageToMinecraft(source, "§cError talking to OpenAI: " + e.getMessage() + "§r");
-                    throw e;
-                }
+                // Stream the response; the events are handled on the HTTP client's threads as they arrive
+                log("Starting streaming response from OpenAI");
+                SseDecoder decoder = handleOpenAIStream(sink);
+                retryPolicy.sendAsync(settings, getProviderName(), timeouts, stream, () -> transport.stream(request, timeouts, stream, decoder))
+                    .whenComplete((response, error) -> finishStream(stream, sink, response, error));
             } catch (Exception e) {
                 logError("Error executing OpenAI request", e);
-                throw new RuntimeException(e);
+                stream.completeExceptionally(e);
             }
+            return stream;
         });
+        return stream;
+    }
+    
+    /**
+     * Reports how the stream ended, once the whole body has been read
+     */
+    private void finishStream(CompletableFuture<Void> stream, ResponseSink sink, HttpResponse<String> response, Throwable error) {
+        if (stream.isCancelled()) {
+            // Whoever cancelled the request has finished with the sink
+            log("Stream cancelled");
+            return;
+        }
+        if (error == null) {
+            // Check response status
+            int statusCode = response.statusCode();
+            if (config.getDebugMode()) {
+                log("[LLMCommandMod] DEBUG: Received response with status code: " + statusCode);
+            }
+            
+            if (statusCode == 200) {
+                sink.onComplete();
+                stream.complete(null);
+                log("OpenAI stream completed successfully");
+                return;
+            }
+            
+            String errorBody = response.body();
+            String errorMessage = "OpenAI API returned error code " + statusCode;
+            if (errorBody != null && !errorBody.isEmpty()) {
+                errorMessage += ": " + errorBody;
+                log("[LLMCommandMod] API Error: " + errorBody);
+            }
+            if (RetryPolicy.isRetryable(statusCode)) {
+                // Retries ran out; the details are in the log, the player only needs to try again later
+                errorMessage = "the API is busy right now (error " + statusCode + "), please try again in a moment";
+            }
+            error = new Exception(errorMessage);
+        }
+        logError("Error during OpenAI streaming", error);
+        sink.onError("Error talking to OpenAI: " + error.getMessage());
+        stream.completeExceptionally(error);
     }
     
     @Override
     public CompletableFuture<String> getResponse(String query) {
         return CompletableFuture.supplyAsync(() -> {
             try {
+                // Read every setting for this request from one snapshot
+                ConfigSnapshot settings = config.snapshot();
                 // Non-streaming request to OpenAI API
-                String apiUrl = "https://api.openai.com/v1/chat/completions";
-                String apiKey = config.getOpenaiApiKey();
+                String apiUrl = settings.getOpenaiBaseUrl() + "/v1/chat/completions";
+                String apiKey = settings.getOpenaiApiKey();
                 
-                String requestBodyJson;
-                if (config.getSystemPrompt() != null && !config.getSystemPrompt().isEmpty()) {
-                    requestBodyJson = String.format(
-                        "{\"model\":\"%s\",\"messages\":[{\"role\":\"system\",\"content\":\"%s\"},{\"role\":\"user\",\"content\":\"%s\"}],\"max_tokens\":2000}",
-                        model, 
-                        config.getSystemPrompt().replace("\"", "\\\""),
-                        query.replace("\"", "\\\"")
-                    );
-                } else {
-                    requestBodyJson = String.format(
-                        "{\"model\":\"%s\",\"messages\":[{\"role\":\"user\",\"content\":\"%s\"}],\"max_tokens\":2000}",
-                        model, 
-                        query.replace("\"", "\\\"")
-                    );
-                }
+                JsonBodyWriter requestBody = writeBody(settings, Conversation.EMPTY, query, false);
                 
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(apiUrl))
+                HttpTransport.Timeouts timeouts = HttpTransport.Timeouts.fromConfig(settings, getProviderName());
+                HttpRequest request = transport.newRequest(apiUrl, timeouts)
                     .header("Content-Type", "application/json")
                     .header("Authorization", "Bearer " + apiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+                    .POST(requestBody.publisher())
                     .build();
                 
-                HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+                HttpResponse<String> response = retryPolicy.send(settings, getProviderName(), timeouts, () -> transport.send(request, timeouts));
                 
                 // Parse JSON response
                 JsonObject jsonResponse = JsonParser.parseString(response.body()).getAsJsonObject();
@@ -185,98 +177,82 @@ public class OpenAIProvider implements LLMProvider {
                 logError("Error in non-streaming OpenAI request", e);
                 throw new RuntimeException(e);
             }
-        });
+        }, executor);
     }
     
-    private java.io.OutputStream handleOpenAIStream(
-        ServerCommandSource source,
-        StringBuilder currentMessage,
-        AtomicReference<String> lastMessageRef
-    ) {
-        return new java.io.OutputStream() {
-            private final StringBuilder lineBuffer = new StringBuilder();
+    SseDecoder handleOpenAIStream(ResponseSink sink) {
+        return new SseDecoder((event, data) -> {
+            // Log raw event if in debug mode
+            if (config.getDebugMode()) {
+                log("Received data from OpenAI: " + data);
+            }
             
-            @Override
-            public void write(int b) {
-                char c = (char) b;
-                lineBuffer.append(c);
-                
-                // Process complete lines
-                if (c == '\n') {
-                    processLine(lineBuffer.toString(), source, currentMessage, lastMessageRef);
-                    lineBuffer.setLength(0);
-                }
+            // Skip [DONE] marker, the end of the stream completes the answer
+            if (data.equals("[DONE]")) {
+                return;
             }
             
-            private void processLine(String line, ServerCommandSource source, StringBuilder currentMessage, AtomicReference<String> lastMessageRef) {
-                // Skip empty lines and event prefixes
-                if (line.isEmpty() || line.equals("\n")) {
-                    return;
-                }
-                
-                // Log raw line if in debug mode
-                if (config.getDebugMode()) {
-                    log("Received line from OpenAI: " + line);
-                }
+            try {
+                JsonObject json = JsonParser.parseString(data).getAsJsonObject();
                 
-                // Handle OpenAI stream format
-                if (line.startsWith("data: ")) {
-                    String data = line.substring(6).trim();
-                    
-                    // Skip [DONE] marker
-                    if (data.equals("[DONE]")) {
-                        if (currentMessage.length() > 0) {
-                            MessageUtils.sendMessageToMinecraft(source, currentMessage.toString());
-                            currentMessage.setLength(0);
-                        }
-                        return;
-                    }
+                // Extract content from choices
+                if (json.has("choices") && json.getAsJsonArray("choices").size() > 0) {
+                    JsonObject choice = json.getAsJsonArray("choices").get(0).getAsJsonObject();
                     
-                    try {
-                        JsonObject json = JsonParser.parseString(data).getAsJsonObject();
-                        
-                        // Extract content from choices
-                        if (json.has("choices") && json.getAsJsonArray("choices").size() > 0) {
-                            JsonObject choice = json.getAsJsonArray("choices").get(0).getAsJsonObject();
-                            
-                            // Check for content in delta
-                            if (choice.has("delta") && choice.getAsJsonObject("delta").has("content")) {
-                                String textChunk = choice.getAsJsonObject("delta").get("content").getAsString();
-                                currentMessage.append(textChunk);
-                                
-                                // Check if we need to send a message because we're approaching the length limit
-                                if (currentMessage.length() >= MessageUtils.getMaxMessageLength()) {
-                                    // Find a good break point
-                                    int breakPoint = MessageUtils.findBreakPoint(currentMessage.toString(), MessageUtils.getMaxMessageLength());
-                                    
-                                    // Extract the part to send
-                                    String toSend = currentMessage.substring(0, breakPoint);
-                                    
-                                    // Only send if different from last message sent
-                                    if (!toSend.equals(lastMessageRef.get())) {
-                                        MessageUtils.sendMessageToMinecraft(source, toSend);
-                                        lastMessageRef.set(toSend);
-                                    }
-                                    
-                                    // Keep the remainder for the next message
-                                    currentMessage.delete(0, breakPoint);
-                                }
-                            }
-                            
-                            // Check for finish_reason to send remaining text
-                            if (choice.has("finish_reason") && choice.get("finish_reason").getAsString() != null) {
-                                if (currentMessage.length() > 0) {
-                                    MessageUtils.sendMessageToMinecraft(source, currentMessage.toString());
-                                    currentMessage.setLength(0);
-                                }
-                            }
-                        }
-                    } catch (Exception e) {
-                        logError("Error parsing OpenAI JSON", e);
+                    // Check for content in delta
+                    if (choice.has("delta") && choice.getAsJsonObject("delta").has("content")
+                        && !choice.getAsJsonObject("delta").get("content").isJsonNull()) {
+                        String textChunk = choice.getAsJsonObject("delta").get("content").getAsString();
+                        sink.onText(textChunk);
                     }
                 }
+                
+                // With include_usage the last chunk before [DONE] carries the usage for the whole answer
+                if (json.has("usage") && json.get("usage").isJsonObject()) {
+                    JsonObject usage = json.getAsJsonObject("usage");
+                    int inputTokens = usage.has("prompt_tokens") ? usage.get("prompt_tokens").getAsInt() : 0;
+                    int outputTokens = usage.has("completion_tokens") ? usage.get("completion_tokens").getAsInt() : 0;
+                    sink.onUsage(inputTokens, outputTokens);
+                }
+            } catch (Exception e) {
+                logError("Error parsing OpenAI JSON", e);
             }
-        };
+        });
+    }
+    
+    private static boolean hasSystemPrompt(ConfigSnapshot settings) {
+        return settings.getSystemPrompt() != null && !settings.getSystemPrompt().isEmpty();
+    }
+    
+    /**
+     * Writes the request body: the system prompt, the earlier turns, then the new question
+     */
+    JsonBodyWriter writeBody(ConfigSnapshot settings, Conversation history, String query, boolean stream) {
+        JsonBodyWriter body = JsonBodyWriter.forCurrentThread()
+            .beginObject()
+            .name("model").value(model)
+            .name("messages").beginArray();
+        if (hasSystemPrompt(settings)) {
+            body.beginObject().name("role").value("system")
+                .name("content").encodedValue(systemPrompt.get(settings.getSystemPrompt()))
+                .endObject();
+        }
+        for (Conversation.Turn turn : history.turns()) {
+            writeMessage(body, "user", turn.question());
+            writeMessage(body, "assistant", turn.answer());
+        }
+        writeMessage(body, "user", query);
+        body.endArray();
+        if (stream) {
+            // Ask for the token usage, which OpenAI only sends while streaming when asked
+            body.name("stream").value(true)
+                .name("stream_options").beginObject().name("include_usage").value(true).endObject();
+        }
+        return body.name("max_tokens").value(2000).endObject();
+    }
+    
+    private static void writeMessage(JsonBodyWriter body, String role, String content) {
+        body.beginObject().name("role").value(role).name("content").value(content).endObject();
     }
     
     private void log(String message) {
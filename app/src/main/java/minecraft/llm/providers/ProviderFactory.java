@@ -1,28 +1,126 @@
 package minecraft.llm.providers;
 
 import minecraft.llm.config.Config;
+import minecraft.llm.metrics.Metrics;
+import minecraft.llm.request.RequestExecutor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Factory class for creating LLM providers
+ * Creates each LLM provider once and hands out the one selected in the configuration.
+ *
+ * Providers live for the whole session, so they can keep per-instance state.
+ * Looking up the current provider is a single volatile read; call
+ * {@link #refresh()} after the configuration changes.
  */
 public class ProviderFactory {
-    
+    private static final String DEFAULT_PROVIDER = "anthropic";
+    private static final int HEDGE_BUDGET_MAX = 5;
+
+    private final Config config;
+    private final Map<String, LLMProvider> providers;
+    private final Map<String, ProviderHealth> health;
+    // Recent first-token times and the shared hedge budget, kept while hedging is switched on and off
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final RequestBudget hedgeBudget = new RequestBudget(HEDGE_BUDGET_MAX);
+    private volatile LLMProvider currentProvider;
+
+    public ProviderFactory(Config config, RequestExecutor executor, Metrics metrics) {
+        this.config = config;
+
+        // All providers share one HTTP transport so connections and threads are pooled, and one retry budget
+        HttpTransport transport = new HttpTransport();
+        RetryPolicy retryPolicy = new RetryPolicy();
+        Map<String, LLMProvider> created = new LinkedHashMap<>();
+        register(created, metrics, new AnthropicProvider(config, executor, transport, retryPolicy));
+        register(created, metrics, new OpenAIProvider(config, executor, transport, retryPolicy));
+        register(created, metrics, new GeminiProvider(config, executor, transport, retryPolicy));
+        this.providers = Collections.unmodifiableMap(created);
+
+        Map<String, ProviderHealth> tracked = new LinkedHashMap<>();
+        for (String name : providers.keySet()) {
+            tracked.put(name, new ProviderHealth(name));
+        }
+        this.health = Collections.unmodifiableMap(tracked);
+
+        refresh();
+    }
+
     /**
-     * Get the appropriate LLM provider based on the configuration
+     * Get the LLM provider selected in the configuration, or the router when routing is on
      */
-    public static LLMProvider getProvider(Config config) {
-        String providerName = config.getCurrentProvider().toLowerCase();
-        
-        switch (providerName) {
-            case "anthropic":
-                return new AnthropicProvider(config);
-            case "openai":
-                return new OpenAIProvider(config);
-            case "gemini":
-                return new GeminiProvider(config);
-            default:
-                // Default to Anthropic if the provider is not recognized
-                return new AnthropicProvider(config);
+    public LLMProvider getProvider() {
+        return currentProvider;
+    }
+
+    /**
+     * Get a provider by name, or null if there is no such provider
+     */
+    public LLMProvider getProvider(String providerName) {
+        return providers.get(providerName.toLowerCase());
+    }
+
+    /**
+     * Get the model a provider answers with now, including the router's combined models, or null if
+     * there is no such provider
+     */
+    public String getCurrentModel(String providerName) {
+        LLMProvider current = currentProvider;
+        if (current.getProviderName().equals(providerName)) {
+            return current.getCurrentModel();
         }
+        LLMProvider provider = providers.get(providerName);
+        return provider == null ? null : provider.getCurrentModel();
+    }
+
+    /**
+     * Get every available provider
+     */
+    public Collection<LLMProvider> getProviders() {
+        return providers.values();
+    }
+
+    /**
+     * Get how well each provider has been answering, in routing mode
+     */
+    public Collection<ProviderHealth> getHealth() {
+        return health.values();
+    }
+
+    /**
+     * Applies the configured models and provider selection to the existing providers
+     */
+    public synchronized void refresh() {
+        providers.get("anthropic").setModel(config.getAnthropicModel());
+        providers.get("openai").setModel(config.getOpenaiModel());
+        providers.get("gemini").setModel(config.getGeminiModel());
+
+        LLMProvider selected = providers.get(config.getCurrentProvider().toLowerCase());
+        // Default to Anthropic if the provider is not recognized
+        if (selected == null) {
+            selected = providers.get(DEFAULT_PROVIDER);
+        }
+        LLMProvider chosen = selected;
+        if (config.getProviderRouting()) {
+            // Route across every provider, preferring the selected one when they are equally healthy
+            Map<String, LLMProvider> preferred = new LinkedHashMap<>();
+            preferred.put(selected.getProviderName(), selected);
+            providers.forEach(preferred::putIfAbsent);
+            chosen = new RoutingProvider(config, Collections.unmodifiableMap(preferred), health);
+        }
+        if (config.getHedgingEnabled()) {
+            LatencyWindow window = latencies.computeIfAbsent(chosen.getProviderName(), name -> new LatencyWindow());
+            chosen = new HedgingProvider(config, chosen, window, hedgeBudget);
+        }
+        currentProvider = chosen;
+    }
+
+    private static void register(Map<String, LLMProvider> providers, Metrics metrics, LLMProvider provider) {
+        String name = provider.getProviderName();
+        providers.put(name, new MeasuredProvider(provider, metrics.provider(name)));
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package minecraft.llm.providers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How well one provider has been answering lately, for routing.
+ *
+ * Keeps moving averages of the time to the first token and of the error rate,
+ * and a circuit breaker: after enough failures in a row the provider is left
+ * alone for a cooldown, then a single request is let through to see whether it
+ * has recovered. Updates are synchronized; they happen once per request.
+ */
+public class ProviderHealth {
+    // Weight of the newest sample in the moving averages
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final double ERROR_WEIGHT = 0.1;
+    // How much an error rate of 100% adds to the expected wait, as a multiple of the latency
+    private static final double ERROR_PENALTY = 4;
+
+    private final String providerName;
+    private double firstTokenMillis = Double.NaN;
+    private double errorRate;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean open;
+    private boolean probing;
+
+    public ProviderHealth(String providerName) {
+        this.providerName = providerName;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * Whether a request may be sent now. While the breaker is open this is false
+     * until the cooldown ends, then true for exactly one trial request.
+     */
+    public synchronized boolean tryAcquire(long now) {
+        if (!open) {
+            return true;
+        }
+        if (probing || now - openUntil < 0) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    /**
+     * Gives back a trial request that was never sent
+     */
+    public synchronized void releaseTrial() {
+        probing = false;
+    }
+
+    /**
+     * Whether the breaker is open, so the provider is skipped until its cooldown ends
+     */
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Records a request whose first token (or complete answer) arrived after the given time
+     */
+    public synchronized void recordSuccess(long firstTokenNanos) {
+        double millis = firstTokenNanos / 1_000_000.0;
+        firstTokenMillis = Double.isNaN(firstTokenMillis) ? millis : firstTokenMillis + LATENCY_WEIGHT * (millis - firstTokenMillis);
+        errorRate -= ERROR_WEIGHT * errorRate;
+        consecutiveFailures = 0;
+        open = false;
+        probing = false;
+    }
+
+    /**
+     * Records a failed request, opening the breaker once the failures in a row reach the threshold
+     */
+    public synchronized void recordFailure(long now, int failureThreshold, int cooldownSeconds) {
+        errorRate += ERROR_WEIGHT * (1 - errorRate);
+        consecutiveFailures++;
+        // A failed trial request opens the breaker again straight away
+        if (probing || consecutiveFailures >= failureThreshold) {
+            open = true;
+            probing = false;
+            openUntil = now + TimeUnit.SECONDS.toNanos(cooldownSeconds);
+        }
+    }
+
+    /**
+     * The expected wait for a useful answer, lower is better. A provider with no
+     * requests yet scores 0, so it gets tried and measured; one that has only
+     * ever failed goes last.
+     */
+    public synchronized double score() {
+        if (Double.isNaN(firstTokenMillis)) {
+            return errorRate == 0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return firstTokenMillis * (1 + ERROR_PENALTY * errorRate);
+    }
+
+    public synchronized double getFirstTokenMillis() {
+        return firstTokenMillis;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+}
@@ -0,0 +1,31 @@
+package minecraft.llm.providers;
+
+/**
+ * Caps extra requests, such as retries and hedges, at a share of the real ones.
+ *
+ * Every request deposits a fraction of a token and every extra request takes a
+ * whole one, so extras can't grow beyond that fraction of the traffic. A few
+ * tokens can be saved up, so a short burst of extras is allowed after a quiet
+ * spell.
+ */
+class RequestBudget {
+    private final int max;
+    private double tokens;
+
+    RequestBudget(int max) {
+        this.max = max;
+        this.tokens = max;
+    }
+
+    synchronized void deposit(double amount) {
+        tokens = Math.min(max, tokens + amount);
+    }
+
+    synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
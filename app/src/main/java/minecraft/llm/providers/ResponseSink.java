@@ -0,0 +1,34 @@
+package minecraft.llm.providers;
+
+/**
+ * Receives a streamed answer from a provider.
+ *
+ * A provider calls {@link #onText(String)} for every piece of text in order,
+ * then exactly one of {@link #onComplete()} or {@link #onError(String)}.
+ * {@link #onUsage(int, int)} may be called at any point before that.
+ * Calls for one request come from one thread at a time.
+ */
+public interface ResponseSink {
+    /**
+     * Called for each piece of text as it arrives
+     */
+    void onText(String text);
+
+    /**
+     * Called once the whole answer has been received
+     */
+    void onComplete();
+
+    /**
+     * Called if the request fails, with a message suitable for the player
+     */
+    void onError(String message);
+    
+    /**
+     * Called with the token counts the API reports, as they arrive. Usage often
+     * comes in pieces, such as the input tokens first and the output tokens at
+     * the end, so a count of 0 means it wasn't part of this report.
+     */
+    default void onUsage(int inputTokens, int outputTokens) {
+    }
+}
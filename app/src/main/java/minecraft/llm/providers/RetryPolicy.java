@@ -0,0 +1,362 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.ConfigSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries requests that an API turned away because it was busy or failing.
+ *
+ * Only the exchange up to the response headers is retried, so a retry never
+ * happens once any of the answer has been passed on to the player. The wait
+ * before each retry is exponential backoff with full jitter, or longer if the
+ * API says when to come back through Retry-After or its rate limit headers.
+ * Retries across all requests share a budget, so an API that is down gets
+ * little more traffic than the questions themselves.
+ */
+public class RetryPolicy {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    // Each request earns a fifth of a retry, and up to this many can be saved up for a burst of failures
+    private static final double BUDGET_PER_REQUEST = 0.2;
+    private static final int BUDGET_MAX = 10;
+
+    // Rate limit headers: the remaining count, and when it resets
+    private static final String[][] RATE_LIMIT_HEADERS = {
+        { "x-ratelimit-remaining-requests", "x-ratelimit-reset-requests" },
+        { "x-ratelimit-remaining-tokens", "x-ratelimit-reset-tokens" },
+        { "anthropic-ratelimit-requests-remaining", "anthropic-ratelimit-requests-reset" },
+        { "anthropic-ratelimit-tokens-remaining", "anthropic-ratelimit-tokens-reset" },
+        { "anthropic-ratelimit-input-tokens-remaining", "anthropic-ratelimit-input-tokens-reset" },
+        { "anthropic-ratelimit-output-tokens-remaining", "anthropic-ratelimit-output-tokens-reset" },
+    };
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LLMCommandMod-Retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RequestBudget budget = new RequestBudget(BUDGET_MAX);
+
+    /**
+     * One attempt at an exchange, returning once the response headers have arrived
+     */
+    @FunctionalInterface
+    public interface Exchange<T> {
+        HttpResponse<T> send() throws IOException, InterruptedException;
+    }
+
+    /**
+     * One attempt at an exchange that doesn't block, completing with its response
+     */
+    @FunctionalInterface
+    public interface AsyncExchange<T> {
+        CompletableFuture<HttpResponse<T>> send();
+    }
+
+    /**
+     * Whether a status means the API was busy or failing, rather than the request being wrong
+     */
+    public static boolean isRetryable(int statusCode) {
+        switch (statusCode) {
+            case 408: // Request timeout
+            case 429: // Rate limited
+            case 500:
+            case 502:
+            case 503:
+            case 504:
+            case 529: // Anthropic: overloaded
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Sends the exchange, retrying while the API is busy and the settings, the
+     * request deadline and the retry budget allow. Returns the last response,
+     * which may still be an error for the caller to report.
+     */
+    public <T> HttpResponse<T> send(ConfigSnapshot settings, String provider, HttpTransport.Timeouts timeouts, Exchange<T> exchange)
+            throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + timeouts.total().toNanos();
+        int maxAttempts = settings.getRetryMaxAttempts();
+        budget.deposit(BUDGET_PER_REQUEST);
+
+        for (int attempt = 0; ; attempt++) {
+            HttpResponse<T> response;
+            long delayMillis;
+            String reason;
+            try {
+                response = exchange.send();
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                // Nothing reached the API, so trying again is always safe
+                delayMillis = backoffMillis(settings, attempt);
+                if (!shouldRetry(settings, attempt, maxAttempts, delayMillis, deadline)) {
+                    throw e;
+                }
+                reason = "could not be reached";
+                LOGGER.info("{} {}, retrying in {} ms (retry {} of {})", provider, reason, delayMillis, attempt + 1, maxAttempts);
+                Thread.sleep(delayMillis);
+                continue;
+            }
+
+            delayMillis = retryDelay(settings, attempt, maxAttempts, deadline, response);
+            if (delayMillis < 0) {
+                return response;
+            }
+            discard(response);
+            LOGGER.info("{} returned {}, retrying in {} ms (retry {} of {})", provider, response.statusCode(), delayMillis, attempt + 1, maxAttempts);
+            Thread.sleep(delayMillis);
+        }
+    }
+
+    /**
+     * Sends the exchange as above without blocking: each retry is scheduled
+     * after its wait instead of sleeping on the calling thread. The future
+     * completes with the last response, or fails with the exchange's error, or
+     * with a CancellationException if the owner is cancelled while waiting.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(ConfigSnapshot settings, String provider, HttpTransport.Timeouts timeouts,
+                                                           CompletableFuture<?> owner, AsyncExchange<T> exchange) {
+        long deadline = System.nanoTime() + timeouts.total().toNanos();
+        budget.deposit(BUDGET_PER_REQUEST);
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        attempt(settings, provider, deadline, owner, exchange, 0, result);
+        return result;
+    }
+
+    private <T> void attempt(ConfigSnapshot settings, String provider, long deadline, CompletableFuture<?> owner,
+                             AsyncExchange<T> exchange, int attempt, CompletableFuture<HttpResponse<T>> result) {
+        if (owner.isCancelled()) {
+            result.completeExceptionally(new CancellationException("Request cancelled while waiting to retry"));
+            return;
+        }
+        CompletableFuture<HttpResponse<T>> sent;
+        try {
+            sent = exchange.send();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        sent.whenComplete((response, error) -> {
+            int maxAttempts = settings.getRetryMaxAttempts();
+            long delayMillis;
+            if (error != null) {
+                Throwable cause = HttpTransport.unwrap(error);
+                // Nothing reached the API, so trying again is always safe
+                delayMillis = backoffMillis(settings, attempt);
+                if (!(cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException)
+                        || !shouldRetry(settings, attempt, maxAttempts, delayMillis, deadline)) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                LOGGER.info("{} could not be reached, retrying in {} ms (retry {} of {})", provider, delayMillis, attempt + 1, maxAttempts);
+            } else {
+                delayMillis = retryDelay(settings, attempt, maxAttempts, deadline, response);
+                if (delayMillis < 0) {
+                    result.complete(response);
+                    return;
+                }
+                discard(response);
+                LOGGER.info("{} returned {}, retrying in {} ms (retry {} of {})", provider, response.statusCode(), delayMillis, attempt + 1, maxAttempts);
+            }
+            ScheduledFuture<?> retry = TIMER.schedule(() -> attempt(settings, provider, deadline, owner, exchange, attempt + 1, result),
+                delayMillis, TimeUnit.MILLISECONDS);
+            owner.whenComplete((ignored, e) -> {
+                if (owner.isCancelled() && retry.cancel(false)) {
+                    result.completeExceptionally(new CancellationException("Request cancelled while waiting to retry"));
+                }
+            });
+        });
+    }
+
+    /**
+     * How long to wait before retrying a response, or -1 if it should be returned as it is
+     */
+    private long retryDelay(ConfigSnapshot settings, int attempt, int maxAttempts, long deadline, HttpResponse<?> response) {
+        int statusCode = response.statusCode();
+        if (!isRetryable(statusCode)) {
+            return -1;
+        }
+        long requestedMillis = requestedDelayMillis(response.headers(), statusCode, Instant.now());
+        long delayMillis = Math.max(requestedMillis, backoffMillis(settings, attempt));
+        if (!shouldRetry(settings, attempt, maxAttempts, delayMillis, deadline)) {
+            return -1;
+        }
+        return delayMillis;
+    }
+
+    private boolean shouldRetry(ConfigSnapshot settings, int attempt, int maxAttempts, long delayMillis, long deadline) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        // Don't wait longer than configured, even when the API asks for it
+        if (delayMillis > settings.getRetryMaxDelaySeconds() * 1000L) {
+            return false;
+        }
+        // A retry that can't finish before the request deadline isn't worth waiting for
+        if (System.nanoTime() + delayMillis * 1_000_000L >= deadline) {
+            return false;
+        }
+        return budget.tryWithdraw();
+    }
+
+    /**
+     * Exponential backoff with full jitter: a random wait up to the base delay doubled once per earlier retry
+     */
+    static long backoffMillis(ConfigSnapshot settings, int attempt) {
+        long cap = settings.getRetryMaxDelaySeconds() * 1000L;
+        long ceiling = Math.min(cap, (long) settings.getRetryBaseDelayMillis() << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * How long the API asked us to wait, or 0 if it didn't say.
+     * Retry-After wins; otherwise a 429 waits for the exhausted rate limit to reset.
+     */
+    static long requestedDelayMillis(HttpHeaders headers, int statusCode, Instant now) {
+        Optional<String> retryAfterMillis = headers.firstValue("retry-after-ms");
+        if (retryAfterMillis.isPresent()) {
+            try {
+                return Math.max(0, (long) Double.parseDouble(retryAfterMillis.get().trim()));
+            } catch (NumberFormatException e) {
+                // Fall back to the other headers
+            }
+        }
+        Optional<String> retryAfter = headers.firstValue("retry-after");
+        if (retryAfter.isPresent()) {
+            long millis = parseRetryAfter(retryAfter.get().trim(), now);
+            if (millis >= 0) {
+                return millis;
+            }
+        }
+        if (statusCode != 429) {
+            return 0;
+        }
+        long longest = 0;
+        for (String[] limit : RATE_LIMIT_HEADERS) {
+            Optional<String> remaining = headers.firstValue(limit[0]);
+            Optional<String> reset = headers.firstValue(limit[1]);
+            if (remaining.isPresent() && reset.isPresent() && remaining.get().trim().equals("0")) {
+                longest = Math.max(longest, parseReset(reset.get().trim(), now));
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Retry-After is either a number of seconds or an HTTP date; -1 if it is neither
+     */
+    private static long parseRetryAfter(String value, Instant now) {
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            try {
+                Instant at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(0, Duration.between(now, at).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * A rate limit reset, as a timestamp (Anthropic), a duration like "1m30s" (OpenAI) or seconds
+     */
+    private static long parseReset(String value, Instant now) {
+        try {
+            return Math.max(0, Duration.between(now, Instant.parse(value)).toMillis());
+        } catch (DateTimeParseException e) {
+            // Not a timestamp
+        }
+        long millis = parseDuration(value);
+        if (millis >= 0) {
+            return millis;
+        }
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses durations such as "20ms", "1.5s" or "6m0s"; -1 if the value isn't one
+     */
+    private static long parseDuration(String value) {
+        double total = 0;
+        int i = 0;
+        boolean any = false;
+        while (i < value.length()) {
+            int start = i;
+            while (i < value.length() && (Character.isDigit(value.charAt(i)) || value.charAt(i) == '.')) {
+                i++;
+            }
+            int unitStart = i;
+            while (i < value.length() && Character.isLetter(value.charAt(i))) {
+                i++;
+            }
+            if (start == unitStart || unitStart == i) {
+                return -1;
+            }
+            double amount;
+            try {
+                amount = Double.parseDouble(value.substring(start, unitStart));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            switch (value.substring(unitStart, i)) {
+                case "ms":
+                    total += amount;
+                    break;
+                case "s":
+                    total += amount * 1000;
+                    break;
+                case "m":
+                    total += amount * 60_000;
+                    break;
+                case "h":
+                    total += amount * 3_600_000;
+                    break;
+                default:
+                    return -1;
+            }
+            any = true;
+        }
+        return any ? (long) total : -1;
+    }
+
+    /**
+     * Lets go of a response that is being retried, so its connection stream is released
+     */
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof Closeable) {
+            try {
+                ((Closeable) response.body()).close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing response that will be retried", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.conversation.Conversation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends each question to the healthiest provider that has an API key.
+ *
+ * Providers are ranked by {@link ProviderHealth#score()}, with the configured
+ * current provider first among equals. If a provider fails before the first
+ * piece of the answer has reached the player, the question moves on to the
+ * next one; once text has been shown the error is passed on as usual, since
+ * switching providers halfway would mix two answers. Providers whose circuit
+ * breaker is open are skipped until their cooldown ends. A trial request that
+ * is cancelled before it succeeds or fails gives its trial back, so the next
+ * request can test the provider instead.
+ */
+public class RoutingProvider implements LLMProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    public static final String NAME = "routing";
+
+    private final Config config;
+    // In preference order when providers are equally healthy
+    private final Map<String, LLMProvider> providers;
+    private final Map<String, ProviderHealth> health;
+
+    RoutingProvider(Config config, Map<String, LLMProvider> providers, Map<String, ProviderHealth> health) {
+        this.config = config;
+        this.providers = providers;
+        this.health = health;
+    }
+
+    @Override
+    public String getProviderName() {
+        return NAME;
+    }
+
+    /**
+     * Every routed provider and its model, so cached answers are dropped when any of them changes
+     */
+    @Override
+    public String getCurrentModel() {
+        StringBuilder models = new StringBuilder();
+        for (LLMProvider provider : providers.values()) {
+            if (provider.hasValidApiKey()) {
+                if (models.length() > 0) {
+                    models.append(',');
+                }
+                models.append(provider.getProviderName()).append('/').append(provider.getCurrentModel());
+            }
+        }
+        return models.toString();
+    }
+
+    @Override
+    public void setModel(String model) {
+        // Each routed provider keeps its own model
+    }
+
+    @Override
+    public boolean hasValidApiKey() {
+        for (LLMProvider provider : providers.values()) {
+            if (provider.hasValidApiKey()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+        List<LLMProvider> route = route();
+        if (route.isEmpty()) {
+            sink.onError("Every provider is failing right now, please try again in a moment");
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        stream(route, 0, query, history, sink, done);
+        return done;
+    }
+
+    @Override
+    public CompletableFuture<String> getResponse(String query) {
+        List<LLMProvider> route = route();
+        if (route.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Every provider is failing right now"));
+        }
+        return getResponse(route, 0, query);
+    }
+
+    /**
+     * The providers to try for one request, best first. A provider whose cooldown
+     * has just ended goes first, so it is tested with a fallback behind it.
+     */
+    List<LLMProvider> route() {
+        long now = System.nanoTime();
+        List<LLMProvider> trial = new ArrayList<>(1);
+        List<LLMProvider> healthy = new ArrayList<>(providers.size());
+        for (LLMProvider provider : providers.values()) {
+            if (!provider.hasValidApiKey()) {
+                continue;
+            }
+            ProviderHealth providerHealth = health.get(provider.getProviderName());
+            if (!providerHealth.isOpen()) {
+                healthy.add(provider);
+            } else if (trial.isEmpty() && providerHealth.tryAcquire(now)) {
+                trial.add(provider);
+            }
+        }
+        // The sort is stable, so equally healthy providers stay in preference order
+        healthy.sort(Comparator.comparingDouble(provider -> health.get(provider.getProviderName()).score()));
+        trial.addAll(healthy);
+        return trial;
+    }
+
+    private void stream(List<LLMProvider> route, int index, String query, Conversation history, ResponseSink sink, CompletableFuture<Void> done) {
+        LLMProvider provider = route.get(index);
+        ProviderHealth providerHealth = health.get(provider.getProviderName());
+        // Only the first provider on a route can be testing an open breaker
+        boolean trial = index == 0 && providerHealth.isOpen();
+        // Set once this attempt has counted as a success or failure
+        AtomicBoolean recorded = new AtomicBoolean();
+        long start = System.nanoTime();
+        ResponseSink watched = new ResponseSink() {
+            private volatile boolean started;
+
+            @Override
+            public void onText(String text) {
+                if (!started) {
+                    started = true;
+                    recorded.set(true);
+                    providerHealth.recordSuccess(System.nanoTime() - start);
+                }
+                sink.onText(text);
+            }
+
+            @Override
+            public void onComplete() {
+                if (!started) {
+                    recorded.set(true);
+                    providerHealth.recordSuccess(System.nanoTime() - start);
+                }
+                sink.onComplete();
+                done.complete(null);
+            }
+
+            @Override
+            public void onError(String message) {
+                recorded.set(true);
+                recordFailure(providerHealth);
+                if (!started && index + 1 < route.size()) {
+                    LOGGER.warn("{} failed before answering ({}), trying {}", provider.getProviderName(), message,
+                        route.get(index + 1).getProviderName());
+                    try {
+                        stream(route, index + 1, query, history, sink, done);
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        message = "The assistant is busy right now, please try again in a moment";
+                    }
+                }
+                sink.onError(message);
+                done.complete(null);
+            }
+        };
+        CompletableFuture<Void> attempt;
+        try {
+            attempt = provider.streamResponse(query, history, watched);
+        } catch (RejectedExecutionException e) {
+            // The request never left the server, so it says nothing about the provider
+            if (trial) {
+                providerHealth.releaseTrial();
+            }
+            throw e;
+        }
+        // Cancelling the routed request cancels whichever provider is answering it
+        done.whenComplete((ignored, error) -> {
+            if (done.isCancelled()) {
+                attempt.cancel(true);
+                // A cancelled provider reports nothing, so a trial that hadn't answered yet would never end
+                if (trial && !recorded.get()) {
+                    providerHealth.releaseTrial();
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<String> getResponse(List<LLMProvider> route, int index, String query) {
+        LLMProvider provider = route.get(index);
+        ProviderHealth providerHealth = health.get(provider.getProviderName());
+        long start = System.nanoTime();
+        return provider.getResponse(query).handle((answer, error) -> {
+            if (error == null) {
+                providerHealth.recordSuccess(System.nanoTime() - start);
+                return CompletableFuture.completedFuture(answer);
+            }
+            recordFailure(providerHealth);
+            if (index + 1 < route.size()) {
+                LOGGER.warn("{} failed ({}), trying {}", provider.getProviderName(), error.getMessage(),
+                    route.get(index + 1).getProviderName());
+                return getResponse(route, index + 1, query);
+            }
+            return CompletableFuture.<String>failedFuture(error);
+        }).thenCompose(result -> result);
+    }
+
+    private void recordFailure(ProviderHealth providerHealth) {
+        providerHealth.recordFailure(System.nanoTime(), config.getCircuitBreakerFailures(), config.getCircuitBreakerCooldownSeconds());
+    }
+}
@@ -0,0 +1,109 @@
+package minecraft.llm.request;
+
+import minecraft.llm.providers.ResponseSink;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the question each player is waiting on, so it can be stopped.
+ *
+ * Each question gets a handle: a future that completes when its answer has
+ * been passed on in full, or is cancelled to stop it. A player has at most one
+ * question in flight; asking another, leaving the server or /llm cancel cancels
+ * the one before. Whatever produces the answer is tied to the handle with
+ * {@link #cancelWith(CompletableFuture, CompletableFuture)}, so cancelling it
+ * aborts the HTTP exchange too.
+ */
+public class PlayerRequests {
+    private final Map<UUID, CompletableFuture<Void>> requests = new ConcurrentHashMap<>();
+
+    /**
+     * Starts tracking a new question, cancelling the player's previous one if it is still running
+     *
+     * @param player the asking player, or null for the console and command blocks, whose questions aren't tracked
+     * @return the handle of the new question
+     */
+    public CompletableFuture<Void> start(UUID player) {
+        CompletableFuture<Void> request = new CompletableFuture<>();
+        if (player == null) {
+            return request;
+        }
+        CompletableFuture<Void> previous = requests.put(player, request);
+        if (previous != null) {
+            previous.cancel(true);
+        }
+        request.whenComplete((ignored, error) -> requests.remove(player, request));
+        return request;
+    }
+
+    /**
+     * Cancels the player's question, if they have one running
+     *
+     * @return true if a question was cancelled
+     */
+    public boolean cancel(UUID player) {
+        CompletableFuture<Void> request = player == null ? null : requests.remove(player);
+        return request != null && request.cancel(true);
+    }
+
+    /**
+     * Cancels every question, for a stopping server
+     */
+    public void cancelAll() {
+        for (UUID player : requests.keySet()) {
+            cancel(player);
+        }
+    }
+
+    /**
+     * Number of questions being tracked
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Wraps the sink the answer goes to so it completes the handle when the answer
+     * ends, and drops anything that still arrives once the question was cancelled
+     */
+    public static ResponseSink tracking(CompletableFuture<Void> request, ResponseSink delegate) {
+        return new ResponseSink() {
+            @Override
+            public void onText(String text) {
+                if (!request.isDone()) {
+                    delegate.onText(text);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                if (!request.isDone()) {
+                    delegate.onComplete();
+                    request.complete(null);
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                if (!request.isDone()) {
+                    delegate.onError(message);
+                    request.complete(null);
+                }
+            }
+        };
+    }
+
+    /**
+     * Cancels the work producing an answer when the question's handle is cancelled
+     */
+    public static void cancelWith(CompletableFuture<Void> request, CompletableFuture<?> work) {
+        request.whenComplete((ignored, error) -> {
+            if (request.isCancelled()) {
+                work.cancel(true);
+            }
+        });
+    }
+}
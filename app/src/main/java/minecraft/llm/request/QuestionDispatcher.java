@@ -0,0 +1,178 @@
+package minecraft.llm.request;
+
+import minecraft.llm.cache.AnswerStore;
+import minecraft.llm.cache.ResponseCache;
+import minecraft.llm.config.Config;
+import minecraft.llm.conversation.Conversation;
+import minecraft.llm.conversation.ConversationStore;
+import minecraft.llm.metrics.Metrics;
+import minecraft.llm.providers.LLMProvider;
+import minecraft.llm.providers.ResponseSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends an accepted question to wherever its answer comes from.
+ *
+ * A follow-up goes to the provider with the player's earlier turns. Any other
+ * question is answered from the response cache, the answer store or a
+ * similarly worded cached question if possible, and otherwise from the
+ * provider, sharing the request with anyone already asking the same thing.
+ * Questions for the provider wait their turn in the scheduler. /llm and the
+ * load test both send their questions through here.
+ */
+public class QuestionDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    private static final String BUSY = "The assistant is busy answering other players. Please try again in a moment.";
+
+    /**
+     * Returned by {@link #dispatch} for a question answered without asking the provider
+     */
+    public static final int NOT_ASKED = -1;
+
+    private final Config config;
+    private final Metrics metrics;
+    private final RequestScheduler requestScheduler;
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private final ResponseCache responseCache;
+    private final AnswerStore answerStore;
+    private final ConversationStore conversationStore;
+
+    public QuestionDispatcher(Config config, Metrics metrics, RequestScheduler requestScheduler, ResponseCache responseCache,
+                              AnswerStore answerStore, ConversationStore conversationStore) {
+        this.config = config;
+        this.metrics = metrics;
+        this.requestScheduler = requestScheduler;
+        this.responseCache = responseCache;
+        this.answerStore = answerStore;
+        this.conversationStore = conversationStore;
+    }
+
+    /**
+     * Answers a question or starts it on its way. Throws RejectedExecutionException if the question
+     * needs the provider and every slot is taken and the queue is full.
+     *
+     * @param player the asking player, or null for the console and command blocks
+     * @param request the player's handle on the question, from {@link PlayerRequests#start}
+     * @param chat where the player sees the answer; it is also recorded in the player's conversation
+     * @param queuedLater told the question's place in the queue if it only joins the queue later, from another thread
+     * @return 0 if the question went to the provider right away, its place in the queue if it is waiting
+     *         its turn, or {@link #NOT_ASKED}
+     */
+    public int dispatch(UUID player, RequestScheduler.Priority priority, LLMProvider provider, String query,
+                        CompletableFuture<Void> request, ResponseSink chat, IntConsumer queuedLater) {
+        // Every answer the player sees becomes part of their conversation, until the question is cancelled
+        ResponseSink recorded = PlayerRequests.tracking(request, conversationStore.recording(player, query, chat));
+
+        // Follow-up answers depend on the earlier turns, so they are neither cached nor shared
+        Conversation history = conversationStore.get(player, query);
+        if (!history.isEmpty()) {
+            log("Sending " + history.turns().size() + " earlier turns (~" + history.tokens() + " tokens) with the query");
+            return schedule(player, priority, request, recorded, () -> {
+                PlayerRequests.cancelWith(request, provider.streamResponse(query, history, recorded));
+                return request;
+            });
+        }
+
+        // Answer repeated questions straight from the cache
+        ResponseCache.Key cacheKey = ResponseCache.key(provider.getProviderName(), provider.getCurrentModel(), config.getSystemPrompt(), query);
+        String cachedAnswer = responseCache.get(cacheKey);
+        if (cachedAnswer != null) {
+            log("Answering from the response cache: " + query);
+            metrics.recordCacheHit();
+            recorded.onText(cachedAnswer);
+            recorded.onComplete();
+            return NOT_ASKED;
+        }
+
+        // Answers stored before a restart are read from disk on the answer store's own thread
+        if (answerStore.contains(cacheKey)) {
+            log("Answering from the answer store: " + query);
+            answerStore.read(cacheKey).thenAccept(storedAnswer -> {
+                if (request.isDone()) {
+                    // Cancelled while the answer was being read
+                    return;
+                }
+                if (storedAnswer != null) {
+                    metrics.recordStoreHit();
+                    responseCache.put(cacheKey, storedAnswer);
+                    recorded.onText(storedAnswer);
+                    recorded.onComplete();
+                    return;
+                }
+
+                // The answer was dropped after the lookup, so ask the provider after all
+                try {
+                    int position = schedule(player, priority, request, recorded, () -> askProvider(provider, query, cacheKey, recorded, request));
+                    if (position > 0) {
+                        queuedLater.accept(position);
+                    }
+                } catch (RejectedExecutionException e) {
+                    metrics.recordRejected();
+                    recorded.onError(BUSY);
+                }
+            });
+            return NOT_ASKED;
+        }
+
+        // A differently worded question with the same meaning gets the answer already given
+        String similarAnswer = responseCache.getSimilar(cacheKey);
+        if (similarAnswer != null) {
+            log("Answering from a similar question in the response cache: " + query);
+            metrics.recordSemanticHit();
+            recorded.onText(similarAnswer);
+            recorded.onComplete();
+            return NOT_ASKED;
+        }
+
+        // The provider streams the answer asynchronously, so the calling thread is never blocked
+        return schedule(player, priority, request, recorded, () -> askProvider(provider, query, cacheKey, recorded, request));
+    }
+
+    /**
+     * Streams an answer from the provider, sharing the request with anyone already asking the same question
+     *
+     * @return the upstream request, which holds the slot until it ends even if this player stops
+     *         waiting for it, or null if it joined a request already in flight and so holds no slot of its own
+     */
+    private CompletableFuture<?> askProvider(LLMProvider provider, String query, ResponseCache.Key cacheKey, ResponseSink chat, CompletableFuture<Void> request) {
+        CompletableFuture<?> upstream = requestCoalescer.stream(cacheKey, chat, request,
+            shared -> provider.streamResponse(query, responseCache.recording(cacheKey, shared)));
+        if (upstream == null) {
+            metrics.recordCoalesced();
+            log("Joined an identical request already in flight: " + query);
+        }
+        return upstream;
+    }
+
+    /**
+     * Starts a question when it is the player's turn. The question may start later on another
+     * thread, so a full request executor is reported through the question's own chat.
+     *
+     * @return 0 if the question started right away, otherwise its place in the queue
+     */
+    private int schedule(UUID player, RequestScheduler.Priority priority, CompletableFuture<Void> request, ResponseSink chat,
+                         Supplier<? extends CompletableFuture<?>> start) {
+        return requestScheduler.submit(player, priority, request, () -> {
+            try {
+                return start.get();
+            } catch (RejectedExecutionException e) {
+                metrics.recordRejected();
+                chat.onError(BUSY);
+                return null;
+            }
+        });
+    }
+
+    private void log(String message) {
+        if (config.getDebugMode()) {
+            LOGGER.info(message);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package minecraft.llm.request;
+
+import minecraft.llm.config.Config;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often /llm can be used, per player and across the server.
+ *
+ * Each limit is a token bucket refilled at a steady rate up to a burst size.
+ * Buckets are a single atomic timestamp (the time at which the bucket would be
+ * full again), so checking one is lock-free. Rates are read from the
+ * configuration on every check, so changes apply immediately; a rate of 0
+ * disables that limit. Buckets of players who have been idle long enough to
+ * refill completely are dropped, since a fresh bucket behaves the same.
+ */
+public class RateLimiter {
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Config config;
+    private final LongSupplier clock;
+    private final TokenBucket global = new TokenBucket();
+    private final Map<UUID, TokenBucket> players = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    /**
+     * Why a request was turned away, and how long until it would be allowed
+     */
+    public record Rejection(boolean global, long retryAfterSeconds) {
+    }
+
+    public RateLimiter(Config config) {
+        this(config, System::nanoTime);
+    }
+
+    /**
+     * @param clock the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    RateLimiter(Config config, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + SWEEP_INTERVAL_NANOS);
+    }
+
+    /**
+     * Takes a token from the player's bucket and the global bucket.
+     *
+     * @param player the asking player, or null for the console and command blocks, which only count globally
+     * @return null if the request may go ahead, otherwise why it was rejected
+     */
+    public Rejection tryAcquire(UUID player) {
+        long now = clock.getAsLong();
+        sweepIfDue(now);
+
+        TokenBucket bucket = null;
+        if (player != null) {
+            int rate = config.getRateLimitPlayerPerMinute();
+            if (rate > 0) {
+                bucket = players.computeIfAbsent(player, uuid -> new TokenBucket());
+                long wait = bucket.tryAcquire(now, rate, config.getRateLimitPlayerBurst());
+                if (wait > 0) {
+                    return new Rejection(false, toSeconds(wait));
+                }
+            }
+        }
+
+        int globalRate = config.getRateLimitGlobalPerMinute();
+        if (globalRate > 0) {
+            long wait = global.tryAcquire(now, globalRate, config.getRateLimitGlobalBurst());
+            if (wait > 0) {
+                // The request isn't going ahead, so the player shouldn't pay for it
+                if (bucket != null) {
+                    bucket.release(config.getRateLimitPlayerPerMinute());
+                }
+                return new Rejection(true, toSeconds(wait));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of players currently tracked
+     */
+    public int getTrackedPlayerCount() {
+        return players.size();
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        // A player asking again right as their bucket is dropped may get one extra token; that's harmless
+        players.entrySet().removeIf(entry -> entry.getValue().isFull(now));
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Token bucket stored as the time it will next be full (the generic cell rate algorithm)
+     */
+    static final class TokenBucket {
+        private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+        /**
+         * Takes a token if one is available
+         *
+         * @return 0 if a token was taken, otherwise nanoseconds until one will be
+         */
+        long tryAcquire(long now, int perMinute, int burst) {
+            long interval = MINUTE_NANOS / perMinute;
+            long capacity = interval * Math.max(1, burst);
+            while (true) {
+                long current = fullAt.get();
+                // A bucket that filled up in the past is simply full now
+                long next = (current == Long.MIN_VALUE || current - now < 0 ? now : current) + interval;
+                long wait = next - now - capacity;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Gives back a token taken by {@link #tryAcquire}
+         */
+        void release(int perMinute) {
+            fullAt.addAndGet(-(MINUTE_NANOS / perMinute));
+        }
+
+        boolean isFull(long now) {
+            long current = fullAt.get();
+            return current == Long.MIN_VALUE || current - now <= 0;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package minecraft.llm.request;
+
+import minecraft.llm.cache.ResponseCache;
+import minecraft.llm.providers.ResponseSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Lets identical questions asked at the same time share one upstream request.
+ *
+ * The first request for a key starts the stream; anyone asking the same
+ * question before it finishes joins it, receiving the text streamed so far
+ * followed by the rest as it arrives. Keys are the same as the response
+ * cache's, so once a shared answer completes later askers are served from the
+ * cache instead. A cancelled asker leaves the request; the upstream request is
+ * only cancelled once nobody is left waiting for it. Until then it still counts
+ * against the concurrency limits, so whoever started it should hold its slot
+ * until the future {@link #stream} returns completes, not just until their own
+ * question ends.
+ */
+public class RequestCoalescer {
+    private final Map<ResponseCache.Key, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Joins the identical request in flight, or starts one by passing a sink to the upstream.
+     * If the upstream throws, the request is forgotten and the exception is rethrown.
+     *
+     * @param request cancelling this takes the sink off the request
+     * @param upstream starts the request, returning a future that cancels it
+     * @return the upstream request if this started it, which ends once nobody is waiting for it, or
+     *         null if the sink joined a request that was already in flight
+     */
+    public CompletableFuture<?> stream(ResponseCache.Key key, ResponseSink sink, CompletableFuture<?> request,
+                          Function<ResponseSink, CompletableFuture<?>> upstream) {
+        Flight flight = new Flight(key, sink);
+        while (true) {
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                break;
+            }
+            if (existing.subscribe(sink)) {
+                leaveWhenCancelled(existing, sink, request);
+                return null;
+            }
+            // It finished between the lookup and the join, so start a new one
+            flights.remove(key, existing);
+        }
+
+        CompletableFuture<?> work;
+        try {
+            work = upstream.apply(flight);
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            throw e;
+        }
+        flight.started(work);
+        leaveWhenCancelled(flight, sink, request);
+        return work;
+    }
+    
+    private static void leaveWhenCancelled(Flight flight, ResponseSink sink, CompletableFuture<?> request) {
+        request.whenComplete((ignored, error) -> {
+            if (request.isCancelled()) {
+                flight.unsubscribe(sink);
+            }
+        });
+    }
+
+    /**
+     * Number of upstream requests currently shared
+     */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    /**
+     * One upstream stream and the sinks it fans out to
+     */
+    private class Flight implements ResponseSink {
+        private final ResponseCache.Key key;
+        private final List<ResponseSink> subscribers = new ArrayList<>(2);
+        private final StringBuilder received = new StringBuilder();
+        private CompletableFuture<?> work;
+        private boolean done;
+
+        Flight(ResponseCache.Key key, ResponseSink first) {
+            this.key = key;
+            this.subscribers.add(first);
+        }
+
+        synchronized boolean subscribe(ResponseSink sink) {
+            if (done) {
+                return false;
+            }
+            // Catch up on what the others have already seen; later text arrives in order under the same lock
+            if (received.length() > 0) {
+                sink.onText(received.toString());
+            }
+            subscribers.add(sink);
+            return true;
+        }
+
+        /**
+         * Keeps the upstream request so it can be cancelled, or cancels it if everyone already left
+         */
+        void started(CompletableFuture<?> upstream) {
+            synchronized (this) {
+                if (!done) {
+                    work = upstream;
+                    return;
+                }
+            }
+            upstream.cancel(true);
+        }
+
+        /**
+         * Takes a sink off the request, cancelling the upstream request if it was the last one
+         */
+        void unsubscribe(ResponseSink sink) {
+            CompletableFuture<?> abandoned;
+            synchronized (this) {
+                if (done || !subscribers.remove(sink) || !subscribers.isEmpty()) {
+                    return;
+                }
+                finish();
+                abandoned = work;
+            }
+            // Cancel outside the lock, since cancelling runs the upstream's own cleanup
+            if (abandoned != null) {
+                abandoned.cancel(true);
+            }
+        }
+
+        @Override
+        public synchronized void onText(String text) {
+            received.append(text);
+            for (ResponseSink subscriber : subscribers) {
+                subscriber.onText(text);
+            }
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            finish();
+            for (ResponseSink subscriber : subscribers) {
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public synchronized void onError(String message) {
+            finish();
+            for (ResponseSink subscriber : subscribers) {
+                subscriber.onError(message);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            flights.remove(key, this);
+        }
+    }
+}
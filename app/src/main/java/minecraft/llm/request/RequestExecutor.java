@@ -0,0 +1,252 @@
+package minecraft.llm.request;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Admits LLM requests and runs them on a few dedicated daemon workers.
+ *
+ * A request keeps its slot among the running requests until the future it
+ * returns completes, not just while its task runs, so a streamed answer counts
+ * against the limit for as long as it streams without holding a thread.
+ * Requests beyond the limit wait in a bounded admission queue; when both are
+ * full, {@link #submit(Supplier)} and {@link #execute(Runnable)} throw a
+ * {@link RejectedExecutionException} straight away. Nothing spills onto the
+ * common ForkJoinPool shared with the rest of the server.
+ */
+public class RequestExecutor implements Executor {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    // Tasks only prepare and start requests, or wait on the odd blocking one, so a few threads are plenty
+    private static final int WORKER_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final Config config;
+    private final Histogram queueWait;
+
+    // Guarded by this
+    private ThreadPoolExecutor workers;
+    private final Deque<Queued> waiting = new ArrayDeque<>();
+    private int running;
+    // Bumped on shutdown, so slots released by requests from before a restart don't count against the new limit
+    private int generation;
+    private int maxRunning;
+
+    public RequestExecutor(Config config, Histogram queueWait) {
+        this.config = config;
+        this.queueWait = queueWait;
+    }
+
+    /**
+     * Starts the workers using the limits from the configuration
+     */
+    public synchronized void start() {
+        if (workers != null) {
+            return;
+        }
+
+        maxRunning = Math.max(1, config.getMaxConcurrentRequests());
+
+        // The queue is unbounded here because admission already bounds it
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            WORKER_THREADS,
+            WORKER_THREADS,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new WorkerThreadFactory()
+        );
+        // Let idle workers exit so the pool costs nothing between questions
+        executor.allowCoreThreadTimeOut(true);
+        workers = executor;
+
+        LOGGER.info("LLM request executor started with {} concurrent requests and a queue of {}", maxRunning, config.getMaxQueuedRequests());
+    }
+
+    /**
+     * Submits a request that finishes asynchronously. The task runs on a worker
+     * and the request holds its slot until the future the task returns completes.
+     * Throws RejectedExecutionException if the executor is full or stopped.
+     */
+    public void submit(Supplier<? extends CompletableFuture<?>> task) {
+        Queued request;
+        synchronized (this) {
+            if (workers == null) {
+                throw new RejectedExecutionException("LLM request executor is not running");
+            }
+            request = new Queued(task, System.nanoTime(), generation);
+            if (running >= maxRunning) {
+                // The queue size is read on every request, so changes apply immediately
+                if (waiting.size() >= Math.max(1, config.getMaxQueuedRequests())) {
+                    throw new RejectedExecutionException("LLM request executor is full");
+                }
+                waiting.add(request);
+                return;
+            }
+            running++;
+        }
+        dispatch(request);
+    }
+
+    /**
+     * Submits a request that is finished when the task returns, throwing
+     * RejectedExecutionException if the executor is full or stopped
+     */
+    @Override
+    public void execute(Runnable task) {
+        submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Changes the number of concurrent requests without restarting, starting
+     * queued requests if there is now room
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        synchronized (this) {
+            if (workers == null) {
+                return;
+            }
+            maxRunning = Math.max(1, maxConcurrentRequests);
+        }
+        admitWaiting();
+    }
+
+    /**
+     * Stops accepting requests, drops the queued ones and interrupts the tasks
+     * still running. Requests already streaming are cancelled by their owners;
+     * every slot is freed at once, so the next start has its full limit even if
+     * they finish later.
+     */
+    public void shutdown() {
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = workers;
+            if (executor == null) {
+                return;
+            }
+            workers = null;
+            waiting.clear();
+            running = 0;
+            generation++;
+        }
+
+        // Answers for a stopping server are never going to be read, so don't wait for them
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("LLM request executor did not stop within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of requests currently being processed
+     */
+    public synchronized int getActiveCount() {
+        return running;
+    }
+
+    /**
+     * Gets the number of requests waiting for a free slot
+     */
+    public synchronized int getQueuedCount() {
+        return waiting.size();
+    }
+
+    private void dispatch(Queued request) {
+        queueWait.recordNanos(System.nanoTime() - request.submitted);
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = workers;
+        }
+        try {
+            if (executor == null) {
+                throw new RejectedExecutionException("LLM request executor is not running");
+            }
+            executor.execute(() -> run(request));
+        } catch (RejectedExecutionException e) {
+            // Stopped while the request was on its way; it will never be answered
+            release(request);
+        }
+    }
+
+    private void run(Queued request) {
+        CompletableFuture<?> done;
+        try {
+            done = request.task.get();
+        } catch (RuntimeException | Error e) {
+            release(request);
+            throw e;
+        }
+        if (done == null || done.isDone()) {
+            release(request);
+        } else {
+            done.whenComplete((ignored, error) -> release(request));
+        }
+    }
+
+    /**
+     * Gives up a finished request's slot and starts waiting requests while there is room, so a
+     * lowered limit takes hold as running requests finish
+     */
+    private void release(Queued request) {
+        synchronized (this) {
+            if (request.generation != generation) {
+                // Its slot was freed when the executor stopped
+                return;
+            }
+            running--;
+        }
+        admitWaiting();
+    }
+
+    private void admitWaiting() {
+        while (true) {
+            Queued next;
+            synchronized (this) {
+                if (running >= maxRunning || waiting.isEmpty()) {
+                    return;
+                }
+                next = waiting.poll();
+                running++;
+            }
+            dispatch(next);
+        }
+    }
+
+    /**
+     * A request waiting for a slot, when it was submitted, and the run of the executor it belongs to
+     */
+    private record Queued(Supplier<? extends CompletableFuture<?>> task, long submitted, int generation) {
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LLMCommandMod-Worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
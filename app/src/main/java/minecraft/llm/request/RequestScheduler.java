@@ -0,0 +1,224 @@
+package minecraft.llm.request;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Decides which waiting question is answered next, so one player asking a lot
+ * can't keep everyone else waiting and operators don't wait behind the queue.
+ *
+ * Questions start straight away while fewer than maxConcurrentRequests are
+ * being answered. Beyond that they wait their turn, ordered by weighted fair
+ * queuing keyed by player: each question is given a virtual finish time one
+ * step, divided by the weight of its priority class, after the later of the
+ * scheduler's virtual clock and the player's previous question. The waiting
+ * question that finishes first goes next, so a player who was just answered
+ * goes behind the players who weren't, and a priority question goes ahead of
+ * normal ones. A question that has waited longer than schedulerMaxWaitSeconds
+ * goes next regardless, so none of them starve.
+ *
+ * A question keeps its slot until the future its task returns completes, and
+ * leaves the queue if its handle is cancelled while it waits. Limits are read
+ * from the configuration on every question, so changes apply immediately.
+ */
+public class RequestScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger("LLMCommandMod");
+    // Questions from the console and command blocks share one place in the queue
+    private static final UUID CONSOLE = new UUID(0, 0);
+
+    private final Config config;
+    private final Histogram turnWait;
+    private final LongSupplier clock;
+
+    // Guarded by this
+    private final List<Waiting> waiting = new ArrayList<>();
+    private final Map<UUID, Double> finishTimes = new HashMap<>();
+    private double virtualTime;
+    private long sequence;
+    private int running;
+    // Bumped by clear, so slots released by questions from before it don't count against the limit
+    private int generation;
+
+    /**
+     * How much of a share of the answers a question's asker gets while others are waiting
+     */
+    public enum Priority {
+        NORMAL,
+        HIGH
+    }
+
+    public RequestScheduler(Config config, Histogram turnWait) {
+        this(config, turnWait, System::nanoTime);
+    }
+
+    /**
+     * @param clock the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    RequestScheduler(Config config, Histogram turnWait, LongSupplier clock) {
+        this.config = config;
+        this.turnWait = turnWait;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts a question now if there is a free slot, and otherwise queues it until it is its turn.
+     * The task is run on the thread that frees the slot, so it should only start the request.
+     * Throws RejectedExecutionException if every slot is taken and the queue is full.
+     *
+     * @param player the asking player, or null for the console and command blocks
+     * @param request the question's handle; cancelling it takes the question out of the queue
+     * @param task starts the question, returning a future that completes when its slot can be reused, or null if it is done already
+     * @return 0 if the question started right away, otherwise its place in the queue, starting at 1
+     */
+    public int submit(UUID player, Priority priority, CompletableFuture<Void> request, Supplier<? extends CompletableFuture<?>> task) {
+        UUID key = player != null ? player : CONSOLE;
+        int weight = priority == Priority.HIGH ? Math.max(1, config.getSchedulerPriorityWeight()) : 1;
+        Waiting question;
+        synchronized (this) {
+            if (running >= Math.max(1, config.getMaxConcurrentRequests()) && waiting.size() >= Math.max(1, config.getMaxQueuedRequests())) {
+                throw new RejectedExecutionException("LLM request queue is full");
+            }
+            double start = Math.max(virtualTime, finishTimes.getOrDefault(key, 0.0));
+            question = new Waiting(task, start, start + 1.0 / weight, sequence++, clock.getAsLong(), generation);
+            finishTimes.put(key, question.finish());
+            waiting.add(question);
+        }
+
+        request.whenComplete((ignored, error) -> withdraw(question));
+        admitWaiting();
+
+        synchronized (this) {
+            return waiting.contains(question) ? positionOf(question) : 0;
+        }
+    }
+
+    /**
+     * Drops every waiting question and frees every slot, for a stopping server whose requests are dropped with it
+     */
+    public synchronized void clear() {
+        waiting.clear();
+        finishTimes.clear();
+        running = 0;
+        generation++;
+    }
+
+    /**
+     * Gets the number of questions being answered
+     */
+    public synchronized int getActiveCount() {
+        return running;
+    }
+
+    /**
+     * Gets the number of questions waiting their turn
+     */
+    public synchronized int getQueuedCount() {
+        return waiting.size();
+    }
+
+    private synchronized void withdraw(Waiting question) {
+        waiting.remove(question);
+    }
+
+    /**
+     * Starts waiting questions in turn for as long as there are free slots
+     */
+    private void admitWaiting() {
+        while (true) {
+            Waiting next;
+            long now;
+            synchronized (this) {
+                if (running >= Math.max(1, config.getMaxConcurrentRequests()) || waiting.isEmpty()) {
+                    return;
+                }
+                now = clock.getAsLong();
+                next = next(now);
+                waiting.remove(next);
+                running++;
+                virtualTime = Math.max(virtualTime, next.start());
+                // A player whose last question finishes before the clock starts from the clock anyway
+                finishTimes.values().removeIf(finish -> finish <= virtualTime);
+            }
+            turnWait.recordNanos(now - next.queued());
+            run(next);
+        }
+    }
+
+    /**
+     * Picks the question that goes next: the one waiting too long, if any, otherwise the one finishing first
+     */
+    private Waiting next(long now) {
+        // The list is in order of arrival, so the first question has waited longest
+        Waiting oldest = waiting.get(0);
+        if (now - oldest.queued() >= TimeUnit.SECONDS.toNanos(config.getSchedulerMaxWaitSeconds())) {
+            return oldest;
+        }
+        Waiting next = oldest;
+        for (Waiting question : waiting) {
+            if (question.isBefore(next)) {
+                next = question;
+            }
+        }
+        return next;
+    }
+
+    private int positionOf(Waiting question) {
+        int position = 1;
+        for (Waiting other : waiting) {
+            if (other.isBefore(question)) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private void run(Waiting question) {
+        CompletableFuture<?> done;
+        try {
+            done = question.task().get();
+        } catch (RuntimeException | Error e) {
+            // Runs on whichever thread freed the slot, so there is no one to pass this on to
+            LOGGER.error("Error starting a queued LLM request", e);
+            release(question);
+            return;
+        }
+        if (done == null || done.isDone()) {
+            release(question);
+        } else {
+            done.whenComplete((ignored, error) -> release(question));
+        }
+    }
+
+    private void release(Waiting question) {
+        synchronized (this) {
+            if (question.generation() != generation) {
+                // Its slot was freed when the scheduler was cleared
+                return;
+            }
+            running--;
+        }
+        admitWaiting();
+    }
+
+    /**
+     * A question waiting its turn, with its virtual start and finish times, when it arrived and the run of the scheduler it belongs to
+     */
+    private record Waiting(Supplier<? extends CompletableFuture<?>> task, double start, double finish, long sequence, long queued, int generation) {
+        boolean isBefore(Waiting other) {
+            return finish < other.finish || (finish == other.finish && sequence < other.sequence);
+        }
+    }
+}
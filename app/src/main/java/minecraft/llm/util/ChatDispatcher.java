@@ -0,0 +1,57 @@
+package minecraft.llm.util;
+
+import minecraft.llm.config.Config;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Delivers chat lines from every answer being streamed, a limited number per server tick.
+ *
+ * Streams on worker threads queue their lines here instead of posting a task
+ * to the server for each one, and the server sends them at the end of each
+ * tick, at most chatLinesPerTick at a time. Lines leave in the order they were
+ * queued, so each player's lines stay in order.
+ */
+public class ChatDispatcher {
+    private final Config config;
+    private final Queue<Line> pending = new ConcurrentLinkedQueue<>();
+
+    private record Line(ServerCommandSource source, Text text) {
+    }
+
+    public ChatDispatcher(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Queues a line for the next tick; blank lines are dropped
+     */
+    public void send(ServerCommandSource source, String message) {
+        String trimmed = message.trim();
+        if (!trimmed.isEmpty()) {
+            pending.add(new Line(source, Text.literal(trimmed)));
+        }
+    }
+
+    /**
+     * Sends queued lines up to the per-tick budget. Must be called on the server thread.
+     */
+    public void drain() {
+        int budget = Math.max(1, config.getChatLinesPerTick());
+        Line line;
+        while (budget-- > 0 && (line = pending.poll()) != null) {
+            Text text = line.text();
+            line.source().sendFeedback(() -> text, false);
+        }
+    }
+
+    /**
+     * Drops every queued line, for when the server stops
+     */
+    public void clear() {
+        pending.clear();
+    }
+}
@@ -0,0 +1,56 @@
+package minecraft.llm.util;
+
+import minecraft.llm.providers.ResponseSink;
+import net.minecraft.server.command.ServerCommandSource;
+
+/**
+ * Collects text streamed from a provider and sends it to the chat in
+ * messages that fit Minecraft's length limit, breaking at natural points.
+ *
+ * Messages are handed to the {@link ChatDispatcher}, which sends them on the
+ * server thread. Each streaming request owns one instance; it is not thread-safe.
+ */
+public class ChatStream implements ResponseSink {
+    private final ServerCommandSource source;
+    private final ChatDispatcher dispatcher;
+    private final MessageChunker chunker;
+    private boolean sentText;
+
+    public ChatStream(ServerCommandSource source, ChatDispatcher dispatcher) {
+        this.source = source;
+        this.dispatcher = dispatcher;
+        this.chunker = new MessageChunker(MessageUtils.getMaxMessageLength(), this::send);
+    }
+
+    /**
+     * Appends a chunk of streamed text, sending every full-length message it completes
+     */
+    @Override
+    public void onText(String text) {
+        chunker.append(text);
+    }
+
+    /**
+     * Sends whatever text is still buffered
+     */
+    @Override
+    public void onComplete() {
+        chunker.flush();
+
+        if (!sentText) {
+            dispatcher.send(source, "§7(Received an empty response)§r");
+        }
+    }
+
+    @Override
+    public void onError(String message) {
+        // Show what was received so far before the error
+        chunker.flush();
+        dispatcher.send(source, "§c" + message + "§r");
+    }
+
+    private void send(String message) {
+        dispatcher.send(source, message);
+        sentText = true;
+    }
+}
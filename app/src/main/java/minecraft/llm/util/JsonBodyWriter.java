@@ -0,0 +1,281 @@
+package minecraft.llm.util;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a JSON request body as UTF-8 straight into a reusable byte buffer.
+ *
+ * Strings are escaped as they are copied, so quotes, backslashes, newlines and
+ * control characters in a question can't break the request. Each thread reuses
+ * one writer through {@link #forCurrentThread()}; the body {@link #publisher()}
+ * publishes points at the writer's buffer, so the thread must not start another
+ * body until the request it sent has completed. Requests sent asynchronously use
+ * {@link #detachedPublisher()} instead.
+ */
+public final class JsonBodyWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_DEPTH = 32;
+
+    private static final ThreadLocal<JsonBodyWriter> WRITERS = ThreadLocal.withInitial(JsonBodyWriter::new);
+
+    private byte[] buffer = new byte[4096];
+    private int size;
+    // Whether the object or array open at each depth still needs a comma before its next item
+    private final boolean[] needsComma = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonBodyWriter() {
+    }
+
+    /**
+     * Gets this thread's writer, emptied and ready for a new body
+     */
+    public static JsonBodyWriter forCurrentThread() {
+        return WRITERS.get().reset();
+    }
+
+    public JsonBodyWriter reset() {
+        size = 0;
+        depth = 0;
+        afterName = false;
+        return this;
+    }
+
+    public JsonBodyWriter beginObject() {
+        beforeValue();
+        append((byte) '{');
+        push();
+        return this;
+    }
+
+    public JsonBodyWriter endObject() {
+        depth--;
+        append((byte) '}');
+        return this;
+    }
+
+    public JsonBodyWriter beginArray() {
+        beforeValue();
+        append((byte) '[');
+        push();
+        return this;
+    }
+
+    public JsonBodyWriter endArray() {
+        depth--;
+        append((byte) ']');
+        return this;
+    }
+
+    public JsonBodyWriter name(String name) {
+        beforeValue();
+        writeString(name);
+        append((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonBodyWriter value(String value) {
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonBodyWriter value(long value) {
+        beforeValue();
+        // Numbers in request bodies are small, so the temporary string is cheap
+        appendAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonBodyWriter value(boolean value) {
+        beforeValue();
+        append(value ? TRUE : FALSE);
+        return this;
+    }
+
+    /**
+     * Writes a string value that was encoded ahead of time with {@link #encode(String)}
+     */
+    public JsonBodyWriter encodedValue(byte[] encoded) {
+        beforeValue();
+        append(encoded);
+        return this;
+    }
+
+    /**
+     * A request body that reads straight from this writer's buffer
+     */
+    public HttpRequest.BodyPublisher publisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(buffer, 0, size);
+    }
+
+    /**
+     * A request body with its own copy of the bytes, for requests still being sent after the writer is reused
+     */
+    public HttpRequest.BodyPublisher detachedPublisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(Arrays.copyOf(buffer, size));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The body as text, for debug logging
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a string as a quoted, escaped JSON value, for text that is sent with many requests
+     */
+    public static byte[] encode(String value) {
+        JsonBodyWriter writer = new JsonBodyWriter();
+        writer.writeString(value);
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    /**
+     * Remembers the encoding of one string, such as the system prompt, until the string changes
+     */
+    public static final class EncodedString {
+        private volatile Entry entry;
+
+        private record Entry(String value, byte[] encoded) {
+        }
+
+        /**
+         * Gets the encoded value, encoding it again only if a different string is passed in
+         */
+        public byte[] get(String value) {
+            Entry current = entry;
+            // Config snapshots share the same String until it is changed, so identity is enough
+            if (current == null || current.value() != value) {
+                current = new Entry(value, encode(value));
+                entry = current;
+            }
+            return current.encoded();
+        }
+    }
+
+    private void push() {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested too deeply");
+        }
+        needsComma[depth++] = false;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (needsComma[depth - 1]) {
+                append((byte) ',');
+            }
+            needsComma[depth - 1] = true;
+        }
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        // Most text is one byte per character; escapes and other characters grow the buffer as needed
+        ensureCapacity(length + 2);
+        append((byte) '"');
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                append((byte) c);
+            } else if (c < 0x80) {
+                writeEscape(c);
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[size++] = (byte) (0xC0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate isn't valid UTF-8
+                writeEscape('\uFFFD');
+            } else {
+                ensureCapacity(3);
+                buffer[size++] = (byte) (0xE0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        append((byte) '"');
+    }
+
+    private void writeEscape(char c) {
+        ensureCapacity(6);
+        buffer[size++] = '\\';
+        switch (c) {
+            case '"':
+                buffer[size++] = '"';
+                break;
+            case '\\':
+                buffer[size++] = '\\';
+                break;
+            case '\n':
+                buffer[size++] = 'n';
+                break;
+            case '\r':
+                buffer[size++] = 'r';
+                break;
+            case '\t':
+                buffer[size++] = 't';
+                break;
+            case '\b':
+                buffer[size++] = 'b';
+                break;
+            case '\f':
+                buffer[size++] = 'f';
+                break;
+            default:
+                buffer[size++] = 'u';
+                buffer[size++] = HEX[(c >> 12) & 0xF];
+                buffer[size++] = HEX[(c >> 8) & 0xF];
+                buffer[size++] = HEX[(c >> 4) & 0xF];
+                buffer[size++] = HEX[c & 0xF];
+        }
+    }
+
+    private void appendAscii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void append(byte b) {
+        ensureCapacity(1);
+        buffer[size++] = b;
+    }
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package minecraft.llm.util;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits streamed text into chat messages that fit Minecraft's length limit.
+ *
+ * Text is copied into a ring buffer one message long. When it fills up, the
+ * chunker looks back from the end for a sentence end, clause break or space,
+ * which is usually only a few characters away, and copies the message out;
+ * nothing is shifted and no intermediate strings are made. A message
+ * never ends between a § and its formatting code, or inside a surrogate pair,
+ * and the colour and styles active at the end of one message are repeated at
+ * the start of the next, since every chat message starts out unformatted.
+ *
+ * Not thread-safe; each streamed answer owns one.
+ */
+public class MessageChunker {
+    // A sentence end is only used if it leaves a message at least this close to full
+    private static final int SENTENCE_SLACK = 30;
+    private static final int CLAUSE_SLACK = 20;
+    private static final char FORMAT_PREFIX = '§';
+    // Style codes k (obfuscated) to o (italic), one bit each
+    private static final char FIRST_STYLE = 'k';
+    private static final int STYLE_COUNT = 5;
+
+    private final int maxLength;
+    private final Consumer<String> output;
+    private final char[] ring;
+    private final int mask;
+    private final char[] message;
+
+    // Positions count every character appended so far, so they never need adjusting when the ring wraps
+    private long head;
+    private long tail;
+
+    // Formatting carried over from the previous message: a colour code, then any style codes
+    private char color;
+    private int styles;
+    private int carried;
+
+    public MessageChunker(int maxLength, Consumer<String> output) {
+        if (maxLength < 16) {
+            throw new IllegalArgumentException("maxLength must be at least 16");
+        }
+        this.maxLength = maxLength;
+        this.output = output;
+        this.ring = new char[Integer.highestOneBit(maxLength - 1) << 1];
+        this.mask = ring.length - 1;
+        this.message = new char[maxLength];
+    }
+
+    /**
+     * Appends streamed text, sending every message that fills up
+     */
+    public void append(String text) {
+        int offset = 0;
+        int length = text.length();
+        while (offset < length) {
+            int room = maxLength - carried - (int) (tail - head);
+            int count = Math.min(room, length - offset);
+            // Copy in at most two pieces, before and after the end of the ring
+            int at = (int) (tail & mask);
+            int first = Math.min(count, ring.length - at);
+            text.getChars(offset, offset + first, ring, at);
+            if (first < count) {
+                text.getChars(offset + first, offset + count, ring, 0);
+            }
+            tail += count;
+            offset += count;
+            while (tail - head + carried >= maxLength) {
+                emit(breakPoint());
+            }
+        }
+    }
+
+    /**
+     * Sends whatever is still buffered
+     */
+    public void flush() {
+        while (tail - head + carried > maxLength) {
+            emit(breakPoint());
+        }
+        if (tail > head) {
+            emit(tail);
+        }
+    }
+
+    /**
+     * Whether nothing is waiting to be sent
+     */
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    /**
+     * Where the next message ends: after a sentence end near the limit, else a
+     * clause break near it, else the last space, else right at the limit. The
+     * window is searched once, backwards from the limit, and a space is
+     * usually only a few characters away.
+     */
+    private long breakPoint() {
+        char[] ring = this.ring;
+        int base = (int) (head & mask);
+        int limit = maxLength - carried;
+        int clause = -1;
+        int space = -1;
+        int end = -1;
+        // Offsets from head; a message is never shorter than two characters unless it has to be
+        for (int offset = limit; offset > 1; offset--) {
+            char c = ring[(base + offset - 1) & mask];
+            if (offset > limit - SENTENCE_SLACK) {
+                if (c == '.' || c == '!' || c == '?' || c == '\n') {
+                    end = offset;
+                    break;
+                }
+                if (clause < 0 && offset > limit - CLAUSE_SLACK && (c == ',' || c == ';' || c == ':')) {
+                    clause = offset;
+                } else if (space < 0 && c == ' ') {
+                    space = offset;
+                }
+            } else if (clause >= 0 || space >= 0) {
+                break;
+            } else if (c == ' ') {
+                space = offset;
+                break;
+            }
+        }
+        if (end < 0) {
+            end = clause >= 0 ? clause : space >= 0 ? space : limit;
+        }
+        // Keep a formatting code or a surrogate pair together in the next message
+        char last = ring[(base + end - 1) & mask];
+        if ((last == FORMAT_PREFIX || Character.isHighSurrogate(last)) && end > 1) {
+            end--;
+        }
+        return head + end;
+    }
+
+    private void emit(long end) {
+        int length = 0;
+        // Restore the formatting the previous message ended with
+        if (color != 0) {
+            message[length++] = FORMAT_PREFIX;
+            message[length++] = color;
+        }
+        for (int style = 0; style < STYLE_COUNT; style++) {
+            if ((styles & (1 << style)) != 0) {
+                message[length++] = FORMAT_PREFIX;
+                message[length++] = (char) (FIRST_STYLE + style);
+            }
+        }
+
+        int start = length;
+        int at = (int) (head & mask);
+        int count = (int) (end - head);
+        int first = Math.min(count, ring.length - at);
+        System.arraycopy(ring, at, message, length, first);
+        System.arraycopy(ring, 0, message, length + first, count - first);
+        length += count;
+        String text = new String(message, 0, length);
+        // Follow the formatting codes in the new text to know what the next message carries over
+        for (int i = text.indexOf(FORMAT_PREFIX, start); i >= 0 && i < length - 1; i = text.indexOf(FORMAT_PREFIX, i + 2)) {
+            track(text.charAt(i + 1));
+        }
+        head = end;
+        carried = 2 * ((color != 0 ? 1 : 0) + Integer.bitCount(styles));
+        output.accept(text);
+    }
+
+    /**
+     * Follows the formatting codes in a message: a colour or reset clears the styles, a style adds to them
+     */
+    private void track(char code) {
+        char lower = Character.toLowerCase(code);
+        if ((lower >= '0' && lower <= '9') || (lower >= 'a' && lower <= 'f')) {
+            color = lower;
+            styles = 0;
+        } else if (lower == 'r') {
+            color = 0;
+            styles = 0;
+        } else if (lower >= FIRST_STYLE && lower < FIRST_STYLE + STYLE_COUNT) {
+            styles |= 1 << (lower - FIRST_STYLE);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package minecraft.llm.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental decoder for Server-Sent Events streams.
+ *
+ * Bytes are decoded as UTF-8 in bulk into a reusable char buffer, so multi-byte
+ * characters split across network buffers come out intact. Complete events are
+ * passed to the listener once their terminating blank line arrives. The only
+ * allocations are the event name and data strings handed to the listener.
+ *
+ * Instances are not thread-safe; use one decoder per response.
+ */
+public class SseDecoder {
+    private static final int CHAR_BUFFER_SIZE = 8192;
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final String DEFAULT_EVENT = "message";
+
+    /**
+     * Receives complete events from the decoder
+     */
+    public interface Listener {
+        /**
+         * Called for every dispatched event. The event name defaults to "message"
+         * and multi-line data fields are joined with '\n'.
+         */
+        void onEvent(String event, String data);
+    }
+
+    private final Listener listener;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    // Holds the start of a UTF-8 sequence that was split across two buffers
+    private final ByteBuffer partial = ByteBuffer.allocate(8);
+
+    // Current line and the data of the current event, grown as needed and reused between events
+    private char[] line = new char[256];
+    private int lineLength;
+    private char[] data = new char[512];
+    private int dataLength;
+    private String eventName;
+    private String lastEventName;
+    private boolean hasData;
+    private boolean lastWasCarriageReturn;
+
+    public SseDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds the buffers published by HttpResponse.BodySubscribers or BodyHandlers.ofPublisher
+     */
+    public void feed(List<ByteBuffer> buffers) {
+        for (int i = 0; i < buffers.size(); i++) {
+            feed(buffers.get(i));
+        }
+    }
+
+    /**
+     * Feeds the remaining bytes of the buffer. The buffer is fully consumed and
+     * is not retained, so the caller may reuse it afterwards.
+     */
+    public void feed(ByteBuffer bytes) {
+        // Complete a character left over from the previous buffer one byte at a time
+        while (partial.position() > 0 && bytes.hasRemaining()) {
+            partial.put(bytes.get());
+            partial.flip();
+            decode(partial, false);
+            partial.compact();
+        }
+
+        decode(bytes, false);
+
+        // At most a few bytes of an incomplete sequence can remain
+        if (bytes.hasRemaining()) {
+            partial.put(bytes);
+        }
+    }
+
+    /**
+     * Reads the stream to the end, feeding it through a single reusable buffer,
+     * then calls {@link #finish()}
+     */
+    public void readFrom(InputStream in) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            wrapper.clear().limit(read);
+            feed(wrapper);
+        }
+        finish();
+    }
+
+    /**
+     * Signals the end of the stream, dispatching any event that was not
+     * terminated by a blank line
+     */
+    public void finish() {
+        partial.flip();
+        decode(partial, true);
+        partial.clear();
+
+        while (decoder.flush(chars).isOverflow()) {
+            drainChars();
+        }
+        drainChars();
+        decoder.reset();
+
+        if (lineLength > 0) {
+            processLine();
+        }
+        dispatch();
+        lastWasCarriageReturn = false;
+    }
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            drainChars();
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Splits the decoded characters into lines, copying whole runs at a time
+     */
+    private void drainChars() {
+        chars.flip();
+        char[] array = chars.array();
+        int end = chars.limit();
+        int runStart = 0;
+
+        for (int i = 0; i < end; i++) {
+            char c = array[i];
+            if (c != '\n' && c != '\r') {
+                continue;
+            }
+
+            // A CRLF pair is a single line break, but only when the LF comes straight after the CR
+            boolean crlf = c == '\n' && lastWasCarriageReturn && i == runStart;
+            appendToLine(array, runStart, i - runStart);
+            runStart = i + 1;
+            if (crlf) {
+                lastWasCarriageReturn = false;
+                continue;
+            }
+            lastWasCarriageReturn = c == '\r';
+            processLine();
+        }
+
+        if (runStart < end) {
+            appendToLine(array, runStart, end - runStart);
+            lastWasCarriageReturn = false;
+        }
+        chars.clear();
+    }
+
+    private void processLine() {
+        int length = lineLength;
+        lineLength = 0;
+
+        // A blank line ends the event
+        if (length == 0) {
+            dispatch();
+            return;
+        }
+
+        // Lines starting with a colon are comments (often used as keep-alives)
+        if (line[0] == ':') {
+            return;
+        }
+
+        int colon = indexOf(line, length, ':');
+        int nameEnd = colon < 0 ? length : colon;
+        int valueStart = colon < 0 ? length : colon + 1;
+        if (valueStart < length && line[valueStart] == ' ') {
+            valueStart++;
+        }
+
+        if (isField(line, nameEnd, "data")) {
+            int valueLength = length - valueStart;
+            ensureDataCapacity(dataLength + valueLength + 1);
+            if (hasData) {
+                data[dataLength++] = '\n';
+            }
+            System.arraycopy(line, valueStart, data, dataLength, valueLength);
+            dataLength += valueLength;
+            hasData = true;
+        } else if (isField(line, nameEnd, "event")) {
+            eventName = eventName(valueStart, length);
+        }
+        // Other fields (id, retry) are not used by any provider
+    }
+
+    private void dispatch() {
+        if (hasData) {
+            listener.onEvent(eventName != null ? eventName : DEFAULT_EVENT, new String(data, 0, dataLength));
+        }
+        dataLength = 0;
+        hasData = false;
+        eventName = null;
+    }
+
+    /**
+     * Providers repeat the same few event names, so reuse the previous string when it matches
+     */
+    private String eventName(int start, int end) {
+        String previous = lastEventName;
+        if (previous != null && previous.length() == end - start) {
+            boolean same = true;
+            for (int i = start; i < end && same; i++) {
+                same = line[i] == previous.charAt(i - start);
+            }
+            if (same) {
+                return previous;
+            }
+        }
+        lastEventName = new String(line, start, end - start);
+        return lastEventName;
+    }
+
+    private void appendToLine(char[] source, int offset, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(source, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void ensureDataCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, capacity));
+        }
+    }
+
+    private static int indexOf(char[] text, int length, char target) {
+        for (int i = 0; i < length; i++) {
+            if (text[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isField(char[] text, int nameEnd, String field) {
+        if (nameEnd != field.length()) {
+            return false;
+        }
+        for (int i = 0; i < nameEnd; i++) {
+            if (text[i] != field.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
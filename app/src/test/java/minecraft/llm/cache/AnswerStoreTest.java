@@ -0,0 +1,153 @@
+package minecraft.llm.cache;
+
+import minecraft.llm.config.Config;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnswerStoreTest {
+    @TempDir Path dir;
+
+    private final Config config = new Config();
+    // What each provider answers with now, as the provider factory would report it
+    private final Map<String, String> models = new HashMap<>();
+    private Path file;
+    private AnswerStore store;
+
+    @BeforeEach void open() {
+        config.setAnswerStoreEnabled(true);
+        models.put("anthropic", "claude-3-haiku");
+        file = dir.resolve("answers.log");
+        store = reopen();
+    }
+
+    @AfterEach void close() {
+        store.shutdown();
+    }
+
+    @Test void answersSurviveAReopen() throws Exception {
+        store.put(key("how to find diamonds"), "Branch mine.");
+        store.put(key("how to tame a wolf"), "Bones.");
+        store.put(key("how to find diamonds"), "Branch mine at Y=-58.");
+        store = reopen();
+
+        assertEquals("Branch mine at Y=-58.", store.read(key("how to find diamonds")).get());
+        assertEquals("Bones.", store.read(key("how to tame a wolf")).get());
+        assertNull(store.read(key("how to breed villagers")).get());
+        assertTrue(store.contains(key("how to tame a wolf")));
+        assertEquals(2, store.size());
+    }
+
+    @Test void tornLastRecordIsCutOff() throws Exception {
+        store.put(key("how to find diamonds"), "Branch mine.");
+        store.put(key("how to tame a wolf"), "Bones.");
+        store.shutdown();
+        long whole = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(whole - 3);
+        }
+        store = reopen();
+
+        assertEquals("Branch mine.", store.read(key("how to find diamonds")).get());
+        assertNull(store.read(key("how to tame a wolf")).get());
+        assertEquals(1, store.size());
+        // The damaged bytes are gone, so the next answer is appended after the good ones
+        store.put(key("how to tame a wolf"), "Bones.");
+        store = reopen();
+        assertEquals("Bones.", store.read(key("how to tame a wolf")).get());
+        assertEquals(2, store.size());
+    }
+
+    @Test void corruptLastRecordIsCutOff() throws Exception {
+        store.put(key("how to find diamonds"), "Branch mine.");
+        store.put(key("how to tame a wolf"), "Bones.");
+        store.shutdown();
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 2] ^= 0x55;
+        Files.write(file, bytes);
+        store = reopen();
+
+        assertEquals("Branch mine.", store.read(key("how to find diamonds")).get());
+        assertNull(store.read(key("how to tame a wolf")).get());
+        assertTrue(Files.size(file) < bytes.length);
+    }
+
+    @Test void compactionKeepsTheNewestAnswersUnderTheCap() throws Exception {
+        config.setAnswerStoreMaxMegabytes(1);
+        String answer = "x".repeat(100 * 1024);
+        int count = 20;
+        for (int i = 0; i < count; i++) {
+            store.put(key("question " + i), answer + i);
+            // Answers are ordered by when they were stored, to the millisecond
+            Thread.sleep(2);
+        }
+        store = reopen();
+
+        assertTrue(Files.size(file) <= 1024 * 1024, "log is " + Files.size(file) + " bytes");
+        assertTrue(store.size() < count);
+        assertEquals(answer + (count - 1), store.read(key("question " + (count - 1))).get());
+        assertNull(store.read(key("question 0")).get());
+        assertFalse(Files.exists(dir.resolve("answers.log.tmp")));
+    }
+
+    @Test void answersForAnOldSystemPromptOrModelAreDropped() throws Exception {
+        store.put(key("how to find diamonds"), "Branch mine.");
+        store = reopen();
+        assertEquals("Branch mine.", store.read(key("how to find diamonds")).get());
+
+        config.setSystemPrompt("Answer like a pirate.");
+        store.refresh();
+        assertNull(store.read(key("how to find diamonds")).get());
+        assertEquals(0, store.size());
+
+        store.put(key("how to find diamonds"), "Arr, branch mine.");
+        models.put("anthropic", "claude-other");
+        store = reopen();
+        assertNull(store.read(key("how to find diamonds")).get());
+        assertEquals(0, store.size());
+    }
+
+    @Test void routedAnswersAreKeptWhileTheRouteIsUnchanged() throws Exception {
+        models.put("routing", "anthropic/claude-3-haiku,openai/gpt-4o-mini");
+        ResponseCache.Key routed = ResponseCache.key("routing", models.get("routing"), config.getSystemPrompt(), "how to find diamonds");
+        store.put(routed, "Branch mine.");
+        store = reopen();
+        store.refresh();
+        assertEquals("Branch mine.", store.read(routed).get());
+
+        // A provider joining the route changes the combined model
+        models.put("routing", "anthropic/claude-3-haiku,openai/gpt-4o-mini,gemini/gemini-1.5-flash");
+        store.refresh();
+        assertNull(store.read(routed).get());
+        assertEquals(0, store.size());
+    }
+
+    /**
+     * Closes the store, waiting for pending writes, and opens the file again
+     */
+    private AnswerStore reopen() {
+        if (store != null) {
+            store.shutdown();
+        }
+        AnswerStore reopened = new AnswerStore(config, models::get, file);
+        reopened.start();
+        return reopened;
+    }
+
+    /**
+     * A question asked of Anthropic as it is set up now
+     */
+    private ResponseCache.Key key(String query) {
+        return ResponseCache.key("anthropic", models.get("anthropic"), config.getSystemPrompt(), query);
+    }
+}
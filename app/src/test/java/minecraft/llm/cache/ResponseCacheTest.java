@@ -0,0 +1,87 @@
+package minecraft.llm.cache;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.providers.ResponseSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+    @TempDir Path dir;
+
+    private final Config config = new Config();
+
+    private ResponseCache cache() {
+        return new ResponseCache(config, new AnswerStore(config, provider -> "model", dir.resolve("answers.log")));
+    }
+
+    @Test void normalizesCaseWhitespaceAndTrailingPunctuation() {
+        assertEquals("how do i find diamonds", ResponseCache.normalize("  How   do I\tfind diamonds?! "));
+        assertEquals("what is 2.5", ResponseCache.normalize("What is 2.5?"));
+        // Punctuation inside the question matters
+        assertEquals("is it safe? yes", ResponseCache.normalize("Is it safe? Yes."));
+        assertEquals("", ResponseCache.normalize(" ?! "));
+
+        assertEquals(ResponseCache.key("anthropic", "model", null, "How do I find diamonds?"),
+            ResponseCache.key("anthropic", "model", "", "how do i  find diamonds"));
+        assertNotEquals(ResponseCache.key("anthropic", "model", "", "how do i find diamonds"),
+            ResponseCache.key("openai", "model", "", "how do i find diamonds"));
+    }
+
+    @Test void cachesOnlyCompletedAnswers() {
+        ResponseCache cache = cache();
+        ResponseCache.Key completed = ResponseCache.key("anthropic", "model", "", "how to tame a wolf");
+        ResponseCache.Key failed = ResponseCache.key("anthropic", "model", "", "how to tame a cat");
+        ResponseCache.Key unfinished = ResponseCache.key("anthropic", "model", "", "how to tame a horse");
+
+        Recorder player = new Recorder();
+        ResponseSink sink = cache.recording(completed, player);
+        sink.onText("Use ");
+        sink.onText("bones.");
+        sink.onComplete();
+        assertEquals("Use bones.", cache.get(completed));
+        assertEquals("Use bones.", player.text.toString());
+        assertTrue(player.completed);
+
+        sink = cache.recording(failed, new Recorder());
+        sink.onText("Use ");
+        sink.onError("The API is overloaded");
+        assertNull(cache.get(failed));
+
+        cache.recording(unfinished, new Recorder()).onText("Use ");
+        assertNull(cache.get(unfinished));
+        assertEquals(1, cache.size());
+    }
+
+    @Test void doesNotCacheEmptyAnswers() {
+        ResponseCache cache = cache();
+        ResponseCache.Key key = ResponseCache.key("anthropic", "model", "", "say nothing");
+
+        cache.recording(key, new Recorder()).onComplete();
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+    }
+
+    @Test void passesAnswersStraightThroughWhenDisabled() {
+        config.setResponseCacheEnabled(false);
+        ResponseCache cache = cache();
+        ResponseCache.Key key = ResponseCache.key("anthropic", "model", "", "how to tame a wolf");
+        Recorder player = new Recorder();
+
+        assertSame(player, cache.recording(key, player));
+        cache.put(key, "Use bones.");
+        assertNull(cache.get(key));
+    }
+
+    private static class Recorder implements ResponseSink {
+        final StringBuilder text = new StringBuilder();
+        boolean completed;
+
+        @Override public void onText(String text) { this.text.append(text); }
+        @Override public void onComplete() { completed = true; }
+        @Override public void onError(String message) { }
+    }
+}
@@ -0,0 +1,71 @@
+package minecraft.llm.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticCacheTest {
+    private static final long TTL = TimeUnit.MINUTES.toNanos(60);
+    private static final float THRESHOLD = 0.9f;
+
+    @Test void answersDifferentlyWordedQuestion() {
+        SemanticCache cache = new SemanticCache(100, TTL);
+        cache.put(key("How to find diamonds?"), "Branch mine at Y=-58.", 0);
+
+        assertEquals("Branch mine at Y=-58.", cache.get(key("where do i find diamond"), THRESHOLD, 1));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test void keepsDifferentQuestionsApart() {
+        SemanticCache cache = new SemanticCache(100, TTL);
+        cache.put(key("What is the best sword enchantment?"), "Sharpness.", 0);
+        cache.put(key("How do I find diamonds?"), "Branch mine.", 0);
+
+        assertNull(cache.get(key("what is the best bow enchantment"), THRESHOLD, 1));
+        assertNull(cache.get(key("how do I not find diamonds"), THRESHOLD, 1));
+        // Nothing left to compare once the filler words are dropped
+        assertNull(cache.get(key("how do i"), THRESHOLD, 1));
+        // An answer from another model doesn't count
+        assertNull(cache.get(ResponseCache.key("anthropic", "other-model", "prompt", "how do I find diamonds"), THRESHOLD, 1));
+    }
+
+    @Test void evictsLeastRecentlyUsedWhenFull() {
+        SemanticCache cache = new SemanticCache(2, TTL);
+        cache.put(key("how to find diamonds"), "diamonds", 0);
+        cache.put(key("how to tame a wolf"), "wolf", 0);
+        // Using the diamonds answer leaves the wolf answer least recently used
+        assertEquals("diamonds", cache.get(key("where do i find diamond"), THRESHOLD, 1));
+        cache.put(key("how to breed villagers"), "villagers", 2);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(key("how to tame a wolf"), THRESHOLD, 3));
+        assertEquals("diamonds", cache.get(key("how to find diamonds"), THRESHOLD, 3));
+        assertEquals("villagers", cache.get(key("how do villagers breed"), THRESHOLD, 3));
+    }
+
+    @Test void expiredAnswersAreDropped() {
+        SemanticCache cache = new SemanticCache(100, TTL);
+        cache.put(key("how to find diamonds"), "diamonds", 0);
+
+        assertNull(cache.get(key("how to find diamonds"), THRESHOLD, TTL));
+        assertEquals(0, cache.size());
+    }
+
+    @Test void replacesTheAnswerToTheSameQuestion() {
+        SemanticCache cache = new SemanticCache(100, TTL);
+        cache.put(key("how to find diamonds"), "old", 0);
+        cache.put(key("How to find diamonds?"), "new", 1);
+
+        assertEquals(1, cache.size());
+        assertEquals("new", cache.get(key("where do i find diamond"), THRESHOLD, 2));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(key("how to find diamonds"), THRESHOLD, 3));
+    }
+
+    private static ResponseCache.Key key(String query) {
+        return ResponseCache.key("anthropic", "model", "prompt", query);
+    }
+}
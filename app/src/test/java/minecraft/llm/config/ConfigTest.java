@@ -0,0 +1,83 @@
+package minecraft.llm.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigTest {
+    @TempDir Path dir;
+
+    @Test void handEditedFileIsReloaded() throws Exception {
+        Config config = new Config(dir.resolve("llmcommand.json"));
+        List<ConfigSnapshot[]> reloads = new ArrayList<>();
+        config.addReloadListener((previous, current) -> reloads.add(new ConfigSnapshot[] { previous, current }));
+
+        edit(config, "\"maxConcurrentRequests\": 9");
+        assertTrue(config.reload());
+
+        assertEquals(9, config.getMaxConcurrentRequests());
+        assertEquals(1, reloads.size());
+        assertEquals(4, reloads.get(0)[0].getMaxConcurrentRequests());
+        assertSame(config.snapshot(), reloads.get(0)[1]);
+        // The same settings again are not a change
+        assertFalse(config.reload());
+        assertEquals(1, reloads.size());
+    }
+
+    @Test void invalidFileIsIgnored() throws Exception {
+        Config config = new Config(dir.resolve("llmcommand.json"));
+
+        edit(config, "\"maxConcurrentRequests\": 0");
+        assertFalse(config.reload());
+        Files.writeString(config.getFile(), "{\"anthropicApiKey\": ", StandardCharsets.UTF_8);
+        assertFalse(config.reload());
+        assertEquals(4, config.getMaxConcurrentRequests());
+    }
+
+    @Test void hedgingBudgetIsBounded() throws Exception {
+        Config config = new Config(dir.resolve("llmcommand.json"));
+
+        edit(config, "\"hedgingBudgetPercent\": 51");
+        assertFalse(config.reload());
+        edit(config, "\"hedgingBudgetPercent\": 0");
+        assertFalse(config.reload());
+        edit(config, "\"hedgingBudgetPercent\": 50");
+        assertTrue(config.reload());
+        assertEquals(50, config.getHedgingBudgetPercent());
+    }
+
+    @Test void ownSavesAreNotReloaded() throws Exception {
+        Config config = new Config(dir.resolve("llmcommand.json"));
+        List<ConfigSnapshot> reloads = new ArrayList<>();
+        config.addReloadListener((previous, current) -> reloads.add(current));
+        edit(config, "\"maxConcurrentRequests\": 9");
+
+        // A save is waiting to go out, so whatever is in the file now is about to be replaced
+        config.setMaxConcurrentRequests(7);
+        config.saveConfig();
+        assertFalse(config.reload());
+        assertEquals(7, config.getMaxConcurrentRequests());
+
+        // The file now holds exactly what was saved
+        config.flush();
+        assertFalse(config.reload());
+        assertEquals(7, config.getMaxConcurrentRequests());
+        assertTrue(reloads.isEmpty());
+        assertTrue(Files.readString(config.getFile(), StandardCharsets.UTF_8).contains("\"maxConcurrentRequests\":7"));
+    }
+
+    /**
+     * Writes a config file by hand with the required keys and the given ones
+     */
+    static void edit(Config config, String properties) throws Exception {
+        Files.writeString(config.getFile(), "{\"anthropicApiKey\": \"key\", \"anthropicModel\": \"" + config.getAnthropicModel() + "\", "
+            + properties + "}", StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,33 @@
+package minecraft.llm.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigWatcherTest {
+    @TempDir Path dir;
+
+    @Test void editedFileIsReloaded() throws Exception {
+        Config config = new Config(dir.resolve("llmcommand.json"));
+        CountDownLatch reloaded = new CountDownLatch(1);
+        config.addReloadListener((previous, current) -> reloaded.countDown());
+        ConfigWatcher watcher = new ConfigWatcher(config);
+        watcher.start();
+        try {
+            // Other mods' config files in the same directory don't count
+            Files.writeString(dir.resolve("othermod.json"), "{}");
+            ConfigTest.edit(config, "\"maxConcurrentRequests\": 9");
+
+            assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+            assertEquals(9, config.getMaxConcurrentRequests());
+        } finally {
+            watcher.stop();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package minecraft.llm.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigWriterTest {
+    @TempDir Path dir;
+
+    private final AtomicInteger writes = new AtomicInteger();
+    private volatile String contents = "{}";
+
+    private ConfigWriter writer(Path file) {
+        return new ConfigWriter(file, () -> {
+            writes.incrementAndGet();
+            return contents;
+        });
+    }
+
+    @Test void savesInQuickSuccessionAreWrittenOnceWithTheLatestContents() throws Exception {
+        Path file = dir.resolve("llmcommand.json");
+        ConfigWriter writer = writer(file);
+
+        contents = "{\"maxConcurrentRequests\":5}";
+        writer.schedule();
+        contents = "{\"maxConcurrentRequests\":6}";
+        writer.schedule();
+        contents = "{\"maxConcurrentRequests\":7}";
+        writer.schedule();
+        assertTrue(writer.isPending());
+        writer.flush();
+
+        assertFalse(writer.isPending());
+        assertEquals(1, writes.get());
+        assertEquals("{\"maxConcurrentRequests\":7}", Files.readString(file, StandardCharsets.UTF_8));
+        assertEquals("{\"maxConcurrentRequests\":7}", writer.getLastWritten());
+        assertFalse(Files.exists(dir.resolve("llmcommand.json.tmp")));
+    }
+
+    @Test void saveAfterAWriteIsWrittenAgain() throws Exception {
+        Path file = dir.resolve("llmcommand.json");
+        ConfigWriter writer = writer(file);
+
+        writer.schedule();
+        writer.flush();
+        contents = "{\"debugMode\":true}";
+        writer.schedule();
+        writer.flush();
+
+        assertEquals(2, writes.get());
+        assertEquals("{\"debugMode\":true}", Files.readString(file, StandardCharsets.UTF_8));
+        // Nothing pending, nothing written
+        writer.flush();
+        assertEquals(2, writes.get());
+    }
+
+    @Test void atomicWriteReplacesTheFileAndLeftoverTemporaryFile() throws Exception {
+        Path file = dir.resolve("llmcommand.json");
+        Files.writeString(file, "{\"old\":true}");
+        // Left behind by a crash in the middle of an earlier save
+        Files.writeString(dir.resolve("llmcommand.json.tmp"), "{\"torn\":");
+
+        ConfigWriter.writeAtomically(file, "{\"new\":true}");
+
+        assertEquals("{\"new\":true}", Files.readString(file, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(dir.resolve("llmcommand.json.tmp")));
+    }
+}
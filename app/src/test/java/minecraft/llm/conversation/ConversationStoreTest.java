@@ -0,0 +1,99 @@
+package minecraft.llm.conversation;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.providers.ResponseSink;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationStoreTest {
+    private static final UUID ALEX = new UUID(0, 1);
+    private static final UUID STEVE = new UUID(0, 2);
+
+    private final Config config = new Config();
+    private final ConversationStore store = new ConversationStore(config);
+
+    @Test void completedAnswersJoinTheConversation() {
+        answer(ALEX, "how to find diamonds", "Branch mine.");
+        fail(ALEX, "how to find netherite");
+
+        Conversation conversation = store.get(ALEX, "and gold?");
+        assertEquals(1, conversation.turns().size());
+        assertEquals("Branch mine.", conversation.turns().get(0).answer());
+        assertTrue(store.get(STEVE, "and gold?").isEmpty());
+        assertTrue(store.get(null, "and gold?").isEmpty());
+    }
+
+    @Test void questionComesOutOfTheTokenBudget() {
+        config.setConversationMaxTokens(100);
+        answer(ALEX, "how to find diamonds", "Branch mine.");
+        int turnTokens = store.get(ALEX, "").tokens();
+
+        String question = "x".repeat(4 * (100 - turnTokens - TokenEstimator.MESSAGE_OVERHEAD + 1));
+        assertTrue(store.get(ALEX, question).isEmpty());
+        assertEquals(1, store.get(ALEX, "and gold?").turns().size());
+    }
+
+    @Test void leastRecentlyActivePlayersAreForgottenOverTheCap() {
+        config.setConversationMaxPlayers(1);
+        ConversationStore store = new ConversationStore(config);
+        answer(store, ALEX, "how to find diamonds", "Branch mine.");
+        answer(store, STEVE, "how to tame a wolf", "Bones.");
+
+        assertEquals(1, store.size());
+        assertTrue(store.get(ALEX, "and gold?").isEmpty());
+        assertFalse(store.get(STEVE, "and cats?").isEmpty());
+    }
+
+    @Test void resetForgetsThePlayer() {
+        answer(ALEX, "how to find diamonds", "Branch mine.");
+        answer(STEVE, "how to tame a wolf", "Bones.");
+        store.reset(ALEX);
+
+        assertTrue(store.get(ALEX, "and gold?").isEmpty());
+        assertFalse(store.get(STEVE, "and cats?").isEmpty());
+    }
+
+    @Test void reconfigureKeepsWhatFitsTheNewLimits() {
+        config.setConversationMaxTurns(5);
+        answer(ALEX, "how to find diamonds", "Branch mine.");
+        answer(ALEX, "and gold?", "Badlands.");
+        config.setConversationMaxTurns(1);
+        store.reconfigure();
+
+        assertEquals(1, store.get(ALEX, "and iron?").turns().size());
+        assertEquals("and gold?", store.get(ALEX, "and iron?").turns().get(0).question());
+    }
+
+    @Test void nothingIsRememberedWhenDisabled() {
+        config.setConversationMaxTurns(0);
+        Sink sink = new Sink();
+
+        assertSame(sink, store.recording(ALEX, "how to find diamonds", sink));
+        assertTrue(store.get(ALEX, "and gold?").isEmpty());
+    }
+
+    private void answer(UUID player, String question, String answer) {
+        answer(store, player, question, answer);
+    }
+
+    private static void answer(ConversationStore store, UUID player, String question, String answer) {
+        ResponseSink sink = store.recording(player, question, new Sink());
+        sink.onText(answer);
+        sink.onComplete();
+    }
+
+    private void fail(UUID player, String question) {
+        ResponseSink sink = store.recording(player, question, new Sink());
+        sink.onText("Deep");
+        sink.onError("The API is overloaded");
+    }
+
+    private static class Sink implements ResponseSink {
+        @Override public void onText(String text) { }
+        @Override public void onComplete() { }
+        @Override public void onError(String message) { }
+    }
+}
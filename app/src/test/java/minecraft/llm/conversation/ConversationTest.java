@@ -0,0 +1,63 @@
+package minecraft.llm.conversation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationTest {
+    @Test void oldestTurnsGoFirstWhenOverTheTurnLimit() {
+        Conversation conversation = Conversation.EMPTY
+            .with(turn("first", 10), 2, 1000)
+            .with(turn("second", 10), 2, 1000)
+            .with(turn("third", 10), 2, 1000);
+
+        assertEquals(2, conversation.turns().size());
+        assertEquals("second", conversation.turns().get(0).question());
+        assertEquals("third", conversation.turns().get(1).question());
+        assertEquals(20, conversation.tokens());
+    }
+
+    @Test void oldestTurnsGoFirstWhenOverTheTokenBudget() {
+        Conversation conversation = Conversation.EMPTY
+            .with(turn("first", 40), 10, 100)
+            .with(turn("second", 30), 10, 100)
+            .with(turn("third", 50), 10, 100);
+
+        assertEquals(2, conversation.turns().size());
+        assertEquals("second", conversation.turns().get(0).question());
+        assertEquals(80, conversation.tokens());
+
+        Conversation trimmed = conversation.trimmed(10, 60);
+        assertEquals(1, trimmed.turns().size());
+        assertEquals("third", trimmed.turns().get(0).question());
+        assertEquals(50, trimmed.tokens());
+        // Nothing to drop leaves the conversation as it is
+        assertSame(conversation, conversation.trimmed(10, 80));
+    }
+
+    @Test void turnOverTheWholeBudgetLeavesNothing() {
+        Conversation conversation = Conversation.EMPTY.with(turn("first", 10), 10, 100);
+
+        assertSame(Conversation.EMPTY, conversation.with(turn("essay", 101), 10, 100));
+        assertSame(Conversation.EMPTY, conversation.trimmed(10, 5));
+        assertSame(Conversation.EMPTY, conversation.trimmed(0, 100));
+    }
+
+    @Test void estimatesAsciiByTheQuarterAndOtherScriptsByTheCharacter() {
+        int overhead = TokenEstimator.MESSAGE_OVERHEAD;
+        assertEquals(overhead, TokenEstimator.estimate(""));
+        assertEquals(overhead + 1, TokenEstimator.estimate("abcd"));
+        assertEquals(overhead + 2, TokenEstimator.estimate("abcde"));
+        assertEquals(overhead + 3, TokenEstimator.estimate("ダイヤ"));
+        assertEquals(overhead + 1 + 2, TokenEstimator.estimate("où é"));
+        // A character outside the Basic Multilingual Plane counts once, not once per UTF-16 unit
+        assertEquals(overhead + 1, TokenEstimator.estimate("💎"));
+
+        Conversation.Turn turn = new Conversation.Turn("abcd", "ダイヤ");
+        assertEquals(2 * overhead + 1 + 3, turn.tokens());
+    }
+
+    private static Conversation.Turn turn(String question, int tokens) {
+        return new Conversation.Turn(question, "answer to " + question, tokens);
+    }
+}
@@ -0,0 +1,49 @@
+package minecraft.llm.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+    @Test void bucketsCoverEveryValueInOrder() {
+        long previous = -1;
+        for (int i = 0; i < Histogram.index((1L << 36) - 1); i++) {
+            long upper = Histogram.upperBound(i);
+            assertTrue(upper > previous, "bucket " + i);
+            assertEquals(i, Histogram.index(upper));
+            assertEquals(i + 1, Histogram.index(upper + 1));
+            previous = upper;
+        }
+    }
+
+    @Test void percentilesAreWithinOneBucket() {
+        Histogram histogram = new Histogram();
+        for (int micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000, histogram.getPercentile(50), 50_000 / 8.0);
+        assertEquals(99_000, histogram.getPercentile(99), 99_000 / 8.0);
+        assertEquals(100_000, histogram.getPercentile(100));
+    }
+
+    @Test void countsAtMostWholeBuckets() {
+        Histogram histogram = new Histogram();
+        histogram.record(3);
+        histogram.record(1_000);
+        histogram.record(2_000_000);
+        assertEquals(1, histogram.countAtMost(10));
+        assertEquals(2, histogram.countAtMost(1_000_000));
+        assertEquals(3, histogram.countAtMost(10_000_000));
+    }
+
+    @Test void clampsOutOfRangeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals((1L << 36) - 1, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,63 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.conversation.Conversation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A provider that answers when the test says so, remembering every request sent to it
+ */
+class FakeProvider implements LLMProvider {
+    private final String name;
+    final List<ResponseSink> sinks = new ArrayList<>();
+    final List<CompletableFuture<Void>> requests = new ArrayList<>();
+
+    FakeProvider(String name) {
+        this.name = name;
+    }
+
+    @Override public String getProviderName() { return name; }
+    @Override public String getCurrentModel() { return name + "-model"; }
+    @Override public void setModel(String model) { }
+    @Override public boolean hasValidApiKey() { return true; }
+
+    @Override
+    public synchronized CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+        CompletableFuture<Void> request = new CompletableFuture<>();
+        sinks.add(sink);
+        requests.add(request);
+        return request;
+    }
+
+    @Override
+    public CompletableFuture<String> getResponse(String query) {
+        return CompletableFuture.completedFuture(name);
+    }
+
+    synchronized int count() {
+        return requests.size();
+    }
+
+    synchronized ResponseSink last() {
+        return sinks.get(sinks.size() - 1);
+    }
+
+    /**
+     * Streams an answer to the latest request and completes it
+     */
+    synchronized void answer(String text) {
+        last().onText(text);
+        last().onComplete();
+        requests.get(requests.size() - 1).complete(null);
+    }
+
+    /**
+     * Fails the latest request before it answered
+     */
+    synchronized void fail(String message) {
+        last().onError(message);
+        requests.get(requests.size() - 1).complete(null);
+    }
+}
@@ -0,0 +1,128 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.conversation.Conversation;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingProviderTest {
+    private static final long WAIT_MILLIS = 100;
+
+    private final Config config = new Config();
+    private final CountDownLatch hedged = new CountDownLatch(1);
+    private final FakeProvider delegate = new FakeProvider("fake") {
+        @Override
+        public synchronized CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+            CompletableFuture<Void> request = super.streamResponse(query, history, sink);
+            if (count() == 2) {
+                hedged.countDown();
+            }
+            return request;
+        }
+    };
+    private final LatencyWindow latencies = new LatencyWindow();
+    private final RequestBudget budget = new RequestBudget(5);
+    private final HedgingProvider hedging = new HedgingProvider(config, delegate, latencies, budget);
+
+    @Test void noHedgeUntilThereAreEnoughSamples() {
+        Recorder player = new Recorder();
+        CompletableFuture<Void> done = hedging.streamResponse("how to find diamonds", Conversation.EMPTY, player);
+
+        delegate.answer("Branch mine.");
+
+        assertEquals(1, delegate.count());
+        assertEquals("Branch mine.", player.text.toString());
+        assertTrue(player.completed);
+        assertTrue(done.isDone());
+    }
+
+    @Test void firstRequestAnsweringInTimeMeansNoHedge() throws Exception {
+        learn(WAIT_MILLIS);
+        Recorder player = new Recorder();
+        hedging.streamResponse("how to find diamonds", Conversation.EMPTY, player);
+
+        delegate.answer("Branch mine.");
+
+        assertFalse(hedged.await(WAIT_MILLIS * 2, TimeUnit.MILLISECONDS));
+        assertEquals("Branch mine.", player.text.toString());
+    }
+
+    @Test void winningHedgeIsTimedFromTheFirstRequest() throws Exception {
+        learn(WAIT_MILLIS);
+        Recorder player = new Recorder();
+        CompletableFuture<Void> done = hedging.streamResponse("how to find diamonds", Conversation.EMPTY, player);
+        assertTrue(hedged.await(10, TimeUnit.SECONDS));
+
+        // The hedge answers at once, but the player had already waited for the first request
+        delegate.answer("Branch mine.");
+
+        assertEquals("Branch mine.", player.text.toString());
+        assertTrue(done.isDone());
+        assertTrue(delegate.requests.get(0).isCancelled());
+        assertTrue(latencies.percentile(1) >= TimeUnit.MILLISECONDS.toNanos(WAIT_MILLIS));
+    }
+
+    @Test void noHedgeWithoutBudget() throws Exception {
+        learn(1);
+        while (budget.tryWithdraw()) {
+            // Spend the savings
+        }
+        Recorder player = new Recorder();
+        hedging.streamResponse("how to find diamonds", Conversation.EMPTY, player);
+
+        assertFalse(hedged.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, delegate.count());
+    }
+
+    @Test void failureIsReportedOnceBothRequestsFailed() throws Exception {
+        learn(1);
+        Recorder player = new Recorder();
+        CompletableFuture<Void> done = hedging.streamResponse("how to find diamonds", Conversation.EMPTY, player);
+        assertTrue(hedged.await(10, TimeUnit.SECONDS));
+
+        delegate.sinks.get(0).onError("overloaded");
+        assertNull(player.error);
+        assertFalse(done.isDone());
+        delegate.fail("timed out");
+
+        assertEquals("timed out", player.error);
+        assertTrue(done.isDone());
+    }
+
+    @Test void cancellingCancelsBothRequests() throws Exception {
+        learn(1);
+        CompletableFuture<Void> done = hedging.streamResponse("how to find diamonds", Conversation.EMPTY, new Recorder());
+        assertTrue(hedged.await(10, TimeUnit.SECONDS));
+
+        done.cancel(true);
+
+        assertTrue(delegate.requests.get(0).isCancelled());
+        // The hedge may still have been on its way out, in which case it is cancelled as soon as it is sent
+        assertThrows(CancellationException.class, () -> delegate.requests.get(1).get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Fills the window with first requests that all took this long
+     */
+    private void learn(long millis) {
+        for (int i = 0; i < LatencyWindow.MIN_SAMPLES; i++) {
+            latencies.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    private static class Recorder implements ResponseSink {
+        final StringBuilder text = new StringBuilder();
+        boolean completed;
+        String error;
+
+        @Override public void onText(String text) { this.text.append(text); }
+        @Override public void onComplete() { completed = true; }
+        @Override public void onError(String message) { error = message; }
+    }
+}
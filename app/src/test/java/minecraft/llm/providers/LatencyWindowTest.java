@@ -0,0 +1,38 @@
+package minecraft.llm.providers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyWindowTest {
+    private final LatencyWindow window = new LatencyWindow();
+
+    @Test void noPercentileUntilThereAreEnoughSamples() {
+        for (int i = 1; i < LatencyWindow.MIN_SAMPLES; i++) {
+            window.record(i);
+        }
+        assertEquals(-1, window.percentile(50));
+        window.record(LatencyWindow.MIN_SAMPLES);
+        assertEquals(10, window.percentile(50));
+    }
+
+    @Test void percentilesComeFromTheSortedSamples() {
+        for (int i = 100; i >= 1; i--) {
+            window.record(i);
+        }
+        assertEquals(1, window.percentile(1));
+        assertEquals(95, window.percentile(95));
+        assertEquals(100, window.percentile(100));
+        assertEquals(1, window.percentile(0));
+    }
+
+    @Test void oldSamplesFadeOut() {
+        for (int i = 0; i < 256; i++) {
+            window.record(1_000);
+        }
+        for (int i = 0; i < 256; i++) {
+            window.record(10);
+        }
+        assertEquals(10, window.percentile(100));
+    }
+}
@@ -0,0 +1,71 @@
+package minecraft.llm.providers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderHealthTest {
+    private static final long COOLDOWN = TimeUnit.SECONDS.toNanos(30);
+
+    private final ProviderHealth health = new ProviderHealth("test");
+
+    @Test void opensAfterFailuresInARowThenLetsOneTrialThrough() {
+        health.recordFailure(0, 3, 30);
+        health.recordFailure(0, 3, 30);
+        assertFalse(health.isOpen());
+        health.recordFailure(0, 3, 30);
+        assertTrue(health.isOpen());
+
+        assertFalse(health.tryAcquire(COOLDOWN - 1));
+        assertTrue(health.tryAcquire(COOLDOWN));
+        // Only one trial at a time
+        assertFalse(health.tryAcquire(COOLDOWN + 1));
+
+        health.recordSuccess(TimeUnit.MILLISECONDS.toNanos(200));
+        assertFalse(health.isOpen());
+        assertTrue(health.tryAcquire(COOLDOWN + 2));
+    }
+
+    @Test void successInBetweenResetsTheFailuresInARow() {
+        health.recordFailure(0, 2, 30);
+        health.recordSuccess(TimeUnit.MILLISECONDS.toNanos(200));
+        health.recordFailure(0, 2, 30);
+        assertFalse(health.isOpen());
+    }
+
+    @Test void failedTrialStartsANewCooldown() {
+        health.recordFailure(0, 1, 30);
+        assertTrue(health.tryAcquire(COOLDOWN));
+        health.recordFailure(COOLDOWN, 1, 30);
+
+        assertTrue(health.isOpen());
+        assertFalse(health.tryAcquire(2 * COOLDOWN - 1));
+        assertTrue(health.tryAcquire(2 * COOLDOWN));
+    }
+
+    @Test void releasedTrialCanBeTakenAgain() {
+        health.recordFailure(0, 1, 30);
+        assertTrue(health.tryAcquire(COOLDOWN));
+        health.releaseTrial();
+
+        assertTrue(health.isOpen());
+        assertTrue(health.tryAcquire(COOLDOWN));
+    }
+
+    @Test void untriedProvidersScoreBestAndFailingOnesWorst() {
+        assertEquals(0, health.score(), 0);
+        health.recordFailure(0, 5, 30);
+        assertEquals(Double.POSITIVE_INFINITY, health.score(), 0);
+
+        ProviderHealth slow = new ProviderHealth("slow");
+        slow.recordSuccess(TimeUnit.MILLISECONDS.toNanos(800));
+        ProviderHealth fast = new ProviderHealth("fast");
+        fast.recordSuccess(TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(fast.score() < slow.score());
+        fast.recordFailure(0, 5, 30);
+        fast.recordFailure(0, 5, 30);
+        assertTrue(fast.score() > 200);
+    }
+}
@@ -0,0 +1,34 @@
+package minecraft.llm.providers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestBudgetTest {
+    @Test void startsFullAndRefillsByTheFraction() {
+        RequestBudget budget = new RequestBudget(2);
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+
+        // A tenth of a token per request, so one extra every ten requests
+        for (int i = 0; i < 9; i++) {
+            budget.deposit(0.1);
+        }
+        assertFalse(budget.tryWithdraw());
+        budget.deposit(0.11);
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test void savesUpNoMoreThanTheMax() {
+        RequestBudget budget = new RequestBudget(3);
+        for (int i = 0; i < 1000; i++) {
+            budget.deposit(0.5);
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(budget.tryWithdraw());
+        }
+        assertFalse(budget.tryWithdraw());
+    }
+}
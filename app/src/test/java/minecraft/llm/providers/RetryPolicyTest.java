@@ -0,0 +1,104 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.Config;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLSession;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+    private static final HttpTransport.Timeouts TIMEOUTS =
+        new HttpTransport.Timeouts(Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(30));
+    private static final Instant NOW = Instant.parse("2024-05-01T12:00:00Z");
+
+    private final Config config = new Config();
+
+    @Test void retriesBusyResponsesUntilOneSucceeds() throws Exception {
+        config.setRetryBaseDelayMillis(1);
+        Deque<Integer> statuses = new ArrayDeque<>(List.of(529, 503, 200));
+        HttpResponse<String> response = new RetryPolicy().send(config.snapshot(), "test", TIMEOUTS,
+            () -> response(statuses.poll(), Map.of()));
+        assertEquals(200, response.statusCode());
+        assertTrue(statuses.isEmpty());
+    }
+
+    @Test void returnsTheErrorOnceAttemptsRunOut() throws Exception {
+        config.setRetryBaseDelayMillis(1);
+        config.setRetryMaxAttempts(1);
+        int[] calls = { 0 };
+        HttpResponse<String> response = new RetryPolicy().send(config.snapshot(), "test", TIMEOUTS, () -> {
+            calls[0]++;
+            return response(429, Map.of());
+        });
+        assertEquals(429, response.statusCode());
+        assertEquals(2, calls[0]);
+    }
+
+    @Test void doesNotRetryRequestErrors() throws Exception {
+        int[] calls = { 0 };
+        new RetryPolicy().send(config.snapshot(), "test", TIMEOUTS, () -> {
+            calls[0]++;
+            return response(400, Map.of());
+        });
+        assertEquals(1, calls[0]);
+    }
+
+    @Test void givesUpWhenTheApiAsksForALongerWaitThanAllowed() throws Exception {
+        config.setRetryMaxDelaySeconds(2);
+        int[] calls = { 0 };
+        new RetryPolicy().send(config.snapshot(), "test", TIMEOUTS, () -> {
+            calls[0]++;
+            return response(429, Map.of("retry-after", "60"));
+        });
+        assertEquals(1, calls[0]);
+    }
+
+    @Test void readsRetryAfterAndRateLimitHeaders() {
+        assertEquals(1500, RetryPolicy.requestedDelayMillis(headers(Map.of("retry-after", "1.5")), 503, NOW));
+        assertEquals(250, RetryPolicy.requestedDelayMillis(headers(Map.of("retry-after-ms", "250", "retry-after", "9")), 503, NOW));
+        assertEquals(10_000, RetryPolicy.requestedDelayMillis(headers(Map.of("retry-after", "Wed, 01 May 2024 12:00:10 GMT")), 503, NOW));
+        // OpenAI: only the exhausted limit counts
+        assertEquals(90_500, RetryPolicy.requestedDelayMillis(headers(Map.of(
+            "x-ratelimit-remaining-requests", "3", "x-ratelimit-reset-requests", "5s",
+            "x-ratelimit-remaining-tokens", "0", "x-ratelimit-reset-tokens", "1m30.5s")), 429, NOW));
+        // Anthropic: reset timestamps
+        assertEquals(4_000, RetryPolicy.requestedDelayMillis(headers(Map.of(
+            "anthropic-ratelimit-requests-remaining", "0", "anthropic-ratelimit-requests-reset", "2024-05-01T12:00:04Z")), 429, NOW));
+        assertEquals(0, RetryPolicy.requestedDelayMillis(headers(Map.of(
+            "x-ratelimit-remaining-requests", "0", "x-ratelimit-reset-requests", "5s")), 503, NOW));
+    }
+
+    private static HttpHeaders headers(Map<String, String> values) {
+        Map<String, List<String>> map = new HashMap<>();
+        values.forEach((name, value) -> map.put(name, List.of(value)));
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+
+    private static HttpResponse<String> response(int statusCode, Map<String, String> headers) {
+        HttpHeaders httpHeaders = headers(headers);
+        return new HttpResponse<>() {
+            @Override public int statusCode() { return statusCode; }
+            @Override public HttpRequest request() { return null; }
+            @Override public Optional<HttpResponse<String>> previousResponse() { return Optional.empty(); }
+            @Override public HttpHeaders headers() { return httpHeaders; }
+            @Override public String body() { return ""; }
+            @Override public Optional<SSLSession> sslSession() { return Optional.empty(); }
+            @Override public URI uri() { return URI.create("http://localhost"); }
+            @Override public HttpClient.Version version() { return HttpClient.Version.HTTP_1_1; }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package minecraft.llm.providers;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.conversation.Conversation;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingProviderTest {
+    private final Config config = new Config();
+    private final FakeProvider first = new FakeProvider("first");
+    private final FakeProvider second = new FakeProvider("second");
+    private final Map<String, ProviderHealth> health = new LinkedHashMap<>();
+    private final RoutingProvider routing;
+
+    RoutingProviderTest() {
+        Map<String, LLMProvider> providers = new LinkedHashMap<>();
+        providers.put("first", first);
+        providers.put("second", second);
+        health.put("first", new ProviderHealth("first"));
+        health.put("second", new ProviderHealth("second"));
+        routing = new RoutingProvider(config, providers, health);
+        config.setCircuitBreakerFailures(1);
+        // No cooldown, so the next request after a failure is the trial
+        config.setCircuitBreakerCooldownSeconds(0);
+    }
+
+    @Test void failureBeforeAnyTextMovesOnToTheNextProvider() {
+        Recorder player = new Recorder();
+        CompletableFuture<Void> done = routing.streamResponse("how to find diamonds", Conversation.EMPTY, player);
+
+        first.fail("overloaded");
+        second.answer("Branch mine.");
+
+        assertEquals("Branch mine.", player.text.toString());
+        assertTrue(player.completed);
+        assertNull(player.error);
+        assertTrue(done.isDone());
+        assertTrue(health.get("first").isOpen());
+    }
+
+    @Test void failureAfterTextIsPassedOn() {
+        Recorder player = new Recorder();
+        routing.streamResponse("how to find diamonds", Conversation.EMPTY, player);
+
+        first.last().onText("Branch ");
+        first.fail("connection reset");
+
+        assertEquals("Branch ", player.text.toString());
+        assertEquals("connection reset", player.error);
+        assertEquals(0, second.count());
+    }
+
+    @Test void cancelledTrialGivesTheTrialBack() {
+        routing.streamResponse("how to find diamonds", Conversation.EMPTY, new Recorder());
+        first.fail("overloaded");
+        second.answer("Branch mine.");
+        assertTrue(health.get("first").isOpen());
+
+        // The next request tests the first provider, and is cancelled before it answers
+        CompletableFuture<Void> trial = routing.streamResponse("how to tame a wolf", Conversation.EMPTY, new Recorder());
+        assertEquals(2, first.count());
+        trial.cancel(true);
+        assertTrue(first.requests.get(1).isCancelled());
+
+        // Without the trial back, the first provider would be skipped for good
+        Recorder player = new Recorder();
+        routing.streamResponse("how to tame a wolf", Conversation.EMPTY, player);
+        assertEquals(3, first.count());
+        first.answer("Bones.");
+        assertEquals("Bones.", player.text.toString());
+        assertFalse(health.get("first").isOpen());
+    }
+
+    @Test void cancellingAfterFailingOverLeavesAnotherRequestsTrialAlone() {
+        routing.streamResponse("how to find diamonds", Conversation.EMPTY, new Recorder());
+        first.fail("overloaded");
+        second.answer("Branch mine.");
+
+        // One request takes the trial and fails over; while the second provider answers it, the next request takes a new trial
+        CompletableFuture<Void> failedOver = routing.streamResponse("how to tame a wolf", Conversation.EMPTY, new Recorder());
+        first.fail("overloaded");
+        routing.streamResponse("how to breed villagers", Conversation.EMPTY, new Recorder());
+        assertEquals(3, first.count());
+
+        failedOver.cancel(true);
+        // The new trial is still held, so no one else gets one until it answers
+        assertFalse(health.get("first").tryAcquire(System.nanoTime()));
+        first.answer("Breed them with bread.");
+        assertFalse(health.get("first").isOpen());
+    }
+
+    private static class Recorder implements ResponseSink {
+        final StringBuilder text = new StringBuilder();
+        boolean completed;
+        String error;
+
+        @Override public void onText(String text) { this.text.append(text); }
+        @Override public void onComplete() { completed = true; }
+        @Override public void onError(String message) { error = message; }
+    }
+}
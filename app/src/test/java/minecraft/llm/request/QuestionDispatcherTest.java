@@ -0,0 +1,115 @@
+package minecraft.llm.request;
+
+import minecraft.llm.cache.AnswerStore;
+import minecraft.llm.cache.ResponseCache;
+import minecraft.llm.config.Config;
+import minecraft.llm.conversation.Conversation;
+import minecraft.llm.conversation.ConversationStore;
+import minecraft.llm.metrics.Histogram;
+import minecraft.llm.metrics.Metrics;
+import minecraft.llm.providers.LLMProvider;
+import minecraft.llm.providers.ResponseSink;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuestionDispatcherTest {
+    private static final UUID ALEX = new UUID(0, 1);
+    private static final UUID STEVE = new UUID(0, 2);
+
+    private final Config config = new Config();
+    private final Provider provider = new Provider();
+    private final QuestionDispatcher dispatcher;
+
+    QuestionDispatcherTest() {
+        // The answer store is off, so it never touches the disk
+        AnswerStore answerStore = new AnswerStore(config, name -> provider.getCurrentModel());
+        dispatcher = new QuestionDispatcher(config, new Metrics(), new RequestScheduler(config, new Histogram()),
+            new ResponseCache(config, answerStore), answerStore, new ConversationStore(config));
+    }
+
+    @Test void repeatedQuestionIsAnsweredFromTheCache() {
+        Recorder first = new Recorder();
+        assertEquals(0, ask(null, "How do I find diamonds?", first));
+        provider.answer("Branch mine.");
+
+        Recorder second = new Recorder();
+        assertEquals(QuestionDispatcher.NOT_ASKED, ask(null, "how do i find diamonds", second));
+        assertEquals("Branch mine.", second.text.toString());
+        assertTrue(second.completed);
+        assertEquals(1, provider.sinks.size());
+    }
+
+    @Test void followUpGoesToTheProviderWithTheEarlierTurns() {
+        ask(ALEX, "how do I find diamonds", new Recorder());
+        provider.answer("Branch mine.");
+
+        // Cached, but the answer depends on what Alex asked before
+        Recorder followUp = new Recorder();
+        assertEquals(0, ask(ALEX, "how do I find diamonds", followUp));
+        assertEquals(2, provider.sinks.size());
+        assertEquals(1, provider.histories.get(1).turns().size());
+        provider.answer("Branch mine at Y=-58.");
+        assertEquals("Branch mine at Y=-58.", followUp.text.toString());
+    }
+
+    @Test void questionWaitsItsTurnWhenEverySlotIsTaken() {
+        config.setMaxConcurrentRequests(1);
+        assertEquals(0, ask(ALEX, "how do I find diamonds", new Recorder()));
+        assertEquals(1, ask(STEVE, "how do I tame a wolf", new Recorder()));
+        assertEquals(1, provider.sinks.size());
+
+        provider.answer("Branch mine.");
+        assertEquals(2, provider.sinks.size());
+    }
+
+    private int ask(UUID player, String query, Recorder chat) {
+        return dispatcher.dispatch(player, RequestScheduler.Priority.NORMAL, provider, query, new CompletableFuture<>(), chat,
+            position -> fail("only answer store reads join the queue later"));
+    }
+
+    /**
+     * A provider that answers the latest question when the test says so
+     */
+    private static class Provider implements LLMProvider {
+        final List<ResponseSink> sinks = new ArrayList<>();
+        final List<Conversation> histories = new ArrayList<>();
+        final List<CompletableFuture<Void>> requests = new ArrayList<>();
+
+        @Override public String getProviderName() { return "test"; }
+        @Override public String getCurrentModel() { return "test-model"; }
+        @Override public void setModel(String model) { }
+        @Override public boolean hasValidApiKey() { return true; }
+        @Override public CompletableFuture<String> getResponse(String query) { return CompletableFuture.completedFuture(query); }
+
+        @Override
+        public CompletableFuture<Void> streamResponse(String query, Conversation history, ResponseSink sink) {
+            CompletableFuture<Void> request = new CompletableFuture<>();
+            sinks.add(sink);
+            histories.add(history);
+            requests.add(request);
+            return request;
+        }
+
+        void answer(String text) {
+            int last = sinks.size() - 1;
+            sinks.get(last).onText(text);
+            sinks.get(last).onComplete();
+            requests.get(last).complete(null);
+        }
+    }
+
+    private static class Recorder implements ResponseSink {
+        final StringBuilder text = new StringBuilder();
+        boolean completed;
+
+        @Override public void onText(String text) { this.text.append(text); }
+        @Override public void onComplete() { completed = true; }
+        @Override public void onError(String message) { fail(message); }
+    }
+}
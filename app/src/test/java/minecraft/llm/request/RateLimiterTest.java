@@ -0,0 +1,95 @@
+package minecraft.llm.request;
+
+import minecraft.llm.config.Config;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+    private static final UUID ALEX = new UUID(0, 1);
+    private static final UUID STEVE = new UUID(0, 2);
+    private static final UUID NOTCH = new UUID(0, 3);
+
+    private final Config config = new Config();
+    private long now = 1_000;
+    private final RateLimiter limiter = new RateLimiter(config, () -> now);
+
+    @Test void burstIsAllowedThenRejected() {
+        config.setRateLimitPlayerPerMinute(6);
+        config.setRateLimitPlayerBurst(3);
+        config.setRateLimitGlobalPerMinute(0);
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(limiter.tryAcquire(ALEX));
+        }
+        RateLimiter.Rejection rejection = limiter.tryAcquire(ALEX);
+        assertNotNull(rejection);
+        assertFalse(rejection.global());
+        assertEquals(10, rejection.retryAfterSeconds());
+        // Other players have buckets of their own
+        assertNull(limiter.tryAcquire(STEVE));
+    }
+
+    @Test void tokenComesBackAfterTheInterval() {
+        config.setRateLimitPlayerPerMinute(6);
+        config.setRateLimitPlayerBurst(1);
+        config.setRateLimitGlobalPerMinute(0);
+
+        assertNull(limiter.tryAcquire(ALEX));
+        now += TimeUnit.SECONDS.toNanos(9);
+        assertEquals(1, limiter.tryAcquire(ALEX).retryAfterSeconds());
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertNull(limiter.tryAcquire(ALEX));
+        assertNotNull(limiter.tryAcquire(ALEX));
+    }
+
+    @Test void globalRejectionGivesThePlayerTheirTokenBack() {
+        config.setRateLimitPlayerPerMinute(6);
+        config.setRateLimitPlayerBurst(2);
+        config.setRateLimitGlobalPerMinute(1);
+        config.setRateLimitGlobalBurst(1);
+
+        assertNull(limiter.tryAcquire(ALEX));
+        RateLimiter.Rejection rejection = limiter.tryAcquire(ALEX);
+        assertTrue(rejection.global());
+        assertEquals(60, rejection.retryAfterSeconds());
+
+        // Alex still has the token the rejected request would have used, and no more
+        config.setRateLimitGlobalPerMinute(0);
+        assertNull(limiter.tryAcquire(ALEX));
+        assertFalse(limiter.tryAcquire(ALEX).global());
+    }
+
+    @Test void consoleOnlyCountsGlobally() {
+        config.setRateLimitPlayerPerMinute(1);
+        config.setRateLimitPlayerBurst(1);
+        config.setRateLimitGlobalPerMinute(1);
+        config.setRateLimitGlobalBurst(2);
+
+        assertNull(limiter.tryAcquire(null));
+        assertNull(limiter.tryAcquire(null));
+        assertTrue(limiter.tryAcquire(null).global());
+        assertEquals(0, limiter.getTrackedPlayerCount());
+    }
+
+    @Test void fullBucketsAreSwept() {
+        config.setRateLimitPlayerPerMinute(1);
+        config.setRateLimitPlayerBurst(1);
+        config.setRateLimitGlobalPerMinute(0);
+
+        assertNull(limiter.tryAcquire(ALEX));
+        now += TimeUnit.SECONDS.toNanos(30);
+        assertNull(limiter.tryAcquire(STEVE));
+        assertEquals(2, limiter.getTrackedPlayerCount());
+
+        // Alex's bucket has refilled by the next sweep, Steve's hasn't yet
+        now += TimeUnit.SECONDS.toNanos(31);
+        assertNull(limiter.tryAcquire(NOTCH));
+        assertEquals(2, limiter.getTrackedPlayerCount());
+        assertNotNull(limiter.tryAcquire(STEVE));
+        assertNull(limiter.tryAcquire(ALEX));
+    }
+}
@@ -0,0 +1,103 @@
+package minecraft.llm.request;
+
+import minecraft.llm.cache.ResponseCache;
+import minecraft.llm.providers.ResponseSink;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+    private static final ResponseCache.Key KEY = ResponseCache.key("test", "model", "", "why is the sky blue");
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final AtomicReference<ResponseSink> upstreamSink = new AtomicReference<>();
+    private final CompletableFuture<Void> upstream = new CompletableFuture<>();
+    private final AtomicInteger started = new AtomicInteger();
+
+    private boolean ask(ResponseSink sink, CompletableFuture<Void> request) {
+        return lead(sink, request) == null;
+    }
+
+    private CompletableFuture<?> lead(ResponseSink sink, CompletableFuture<Void> request) {
+        return coalescer.stream(KEY, PlayerRequests.tracking(request, sink), request, shared -> {
+            started.incrementAndGet();
+            upstreamSink.set(shared);
+            return upstream;
+        });
+    }
+
+    @Test void upstreamKeepsGoingWhileSomeoneIsStillWaiting() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        CompletableFuture<Void> firstRequest = new CompletableFuture<>();
+        CompletableFuture<Void> secondRequest = new CompletableFuture<>();
+        assertFalse(ask(first, firstRequest));
+        assertTrue(ask(second, secondRequest));
+        assertEquals(1, started.get());
+
+        upstreamSink.get().onText("Light ");
+        firstRequest.cancel(true);
+        assertFalse(upstream.isCancelled());
+
+        upstreamSink.get().onText("scatters.");
+        upstreamSink.get().onComplete();
+        assertEquals("Light ", first.text.toString());
+        assertFalse(first.completed);
+        assertEquals("Light scatters.", second.text.toString());
+        assertTrue(second.completed);
+    }
+
+    @Test void startedRequestOutlivesTheAskerWhoStartedIt() {
+        CompletableFuture<Void> firstRequest = new CompletableFuture<>();
+        CompletableFuture<?> shared = lead(new Recorder(), firstRequest);
+        assertSame(upstream, shared);
+        assertTrue(ask(new Recorder(), new CompletableFuture<>()));
+
+        // Whoever holds a slot for the shared request keeps it while the other asker is still served
+        firstRequest.cancel(true);
+        assertFalse(shared.isDone());
+        upstreamSink.get().onComplete();
+        upstream.complete(null);
+        assertTrue(shared.isDone());
+    }
+
+    @Test void upstreamIsCancelledOnceEveryoneLeft() {
+        CompletableFuture<Void> firstRequest = new CompletableFuture<>();
+        CompletableFuture<Void> secondRequest = new CompletableFuture<>();
+        ask(new Recorder(), firstRequest);
+        ask(new Recorder(), secondRequest);
+
+        firstRequest.cancel(true);
+        secondRequest.cancel(true);
+        assertTrue(upstream.isCancelled());
+        assertEquals(0, coalescer.getInFlightCount());
+
+        // The next asker starts a fresh request rather than joining the abandoned one
+        assertFalse(ask(new Recorder(), new CompletableFuture<>()));
+        assertEquals(2, started.get());
+    }
+
+    private static class Recorder implements ResponseSink {
+        final StringBuilder text = new StringBuilder();
+        boolean completed;
+
+        @Override
+        public void onText(String chunk) {
+            text.append(chunk);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        @Override
+        public void onError(String message) {
+            fail(message);
+        }
+    }
+}
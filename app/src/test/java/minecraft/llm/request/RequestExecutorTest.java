@@ -0,0 +1,129 @@
+package minecraft.llm.request;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.metrics.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestExecutorTest {
+    private final Config config = new Config();
+    private final RequestExecutor executor = new RequestExecutor(config, new Histogram());
+
+    @AfterEach void stop() {
+        executor.shutdown();
+    }
+
+    @Test void requestHoldsItsSlotUntilItsFutureCompletes() throws Exception {
+        config.setMaxConcurrentRequests(1);
+        config.setMaxQueuedRequests(1);
+        executor.start();
+
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        executor.submit(() -> first);
+        executor.submit(() -> {
+            secondStarted.countDown();
+            return null;
+        });
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+
+        // The first task returned long ago, but its answer is still streaming
+        assertFalse(secondStarted.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, executor.getActiveCount());
+        assertEquals(1, executor.getQueuedCount());
+
+        first.complete(null);
+        assertTrue(secondStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test void loweredLimitHoldsWhileRequestsAreWaiting() throws Exception {
+        config.setMaxConcurrentRequests(2);
+        config.setMaxQueuedRequests(2);
+        executor.start();
+
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        CompletableFuture<Void> third = new CompletableFuture<>();
+        executor.submit(() -> first);
+        executor.submit(() -> second);
+        executor.submit(() -> third);
+        executor.submit(() -> null);
+        assertEquals(2, executor.getQueuedCount());
+
+        executor.setMaxConcurrentRequests(1);
+        // The finished request's slot is over the new limit, so nothing waiting starts
+        first.complete(null);
+        await(() -> executor.getActiveCount() == 1);
+        assertEquals(2, executor.getQueuedCount());
+
+        second.complete(null);
+        await(() -> executor.getQueuedCount() == 1);
+        assertEquals(1, executor.getActiveCount());
+        third.complete(null);
+    }
+
+    @Test void queueSizeChangesWithoutARestart() {
+        config.setMaxConcurrentRequests(1);
+        config.setMaxQueuedRequests(1);
+        executor.start();
+
+        CompletableFuture<Void> streaming = new CompletableFuture<>();
+        executor.submit(() -> streaming);
+        executor.execute(() -> { });
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+
+        config.setMaxQueuedRequests(2);
+        executor.execute(() -> { });
+        assertEquals(2, executor.getQueuedCount());
+        streaming.complete(null);
+    }
+
+    @Test void restartFreesTheSlotsOfRequestsThatNeverFinished() throws Exception {
+        config.setMaxConcurrentRequests(1);
+        config.setMaxQueuedRequests(1);
+        executor.start();
+
+        CompletableFuture<Void> streaming = new CompletableFuture<>();
+        executor.submit(() -> streaming);
+        executor.execute(() -> { });
+        executor.shutdown();
+        executor.start();
+
+        assertEquals(0, executor.getActiveCount());
+        assertEquals(0, executor.getQueuedCount());
+        CompletableFuture<Void> next = new CompletableFuture<>();
+        CountDownLatch nextStarted = new CountDownLatch(1);
+        executor.submit(() -> {
+            nextStarted.countDown();
+            return next;
+        });
+        assertTrue(nextStarted.await(5, TimeUnit.SECONDS));
+
+        // The request from before the restart finishing late doesn't free the new one's slot
+        streaming.complete(null);
+        assertEquals(1, executor.getActiveCount());
+        assertThrows(RejectedExecutionException.class, () -> {
+            executor.execute(() -> { });
+            executor.execute(() -> { });
+        });
+        next.complete(null);
+    }
+
+    /**
+     * Waits for a slot to be released on a worker thread
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
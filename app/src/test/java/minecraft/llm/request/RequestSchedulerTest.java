@@ -0,0 +1,114 @@
+package minecraft.llm.request;
+
+import minecraft.llm.config.Config;
+import minecraft.llm.metrics.Histogram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestSchedulerTest {
+    private static final UUID ALEX = new UUID(0, 1);
+    private static final UUID STEVE = new UUID(0, 2);
+    private static final UUID OP = new UUID(0, 3);
+
+    private final Config config = new Config();
+    private long now;
+    private final RequestScheduler scheduler = new RequestScheduler(config, new Histogram(), () -> now);
+    private final List<String> started = new ArrayList<>();
+
+    @BeforeEach void oneAtATime() {
+        config.setMaxConcurrentRequests(1);
+        config.setMaxQueuedRequests(3);
+    }
+
+    @Test void playerAskingAgainWaitsBehindOthers() {
+        CompletableFuture<Void> first = ask(ALEX, RequestScheduler.Priority.NORMAL, "alex 1", 0);
+        ask(ALEX, RequestScheduler.Priority.NORMAL, "alex 2", 1);
+        // Steve hasn't had an answer yet, so he goes ahead of Alex's second question
+        ask(STEVE, RequestScheduler.Priority.NORMAL, "steve", 1);
+
+        first.complete(null);
+        assertEquals(List.of("alex 1", "steve"), started);
+    }
+
+    @Test void priorityQuestionGoesFirst() {
+        CompletableFuture<Void> first = ask(ALEX, RequestScheduler.Priority.NORMAL, "alex", 0);
+        ask(STEVE, RequestScheduler.Priority.NORMAL, "steve", 1);
+        ask(OP, RequestScheduler.Priority.HIGH, "op", 1);
+
+        first.complete(null);
+        assertEquals(List.of("alex", "op"), started);
+    }
+
+    @Test void questionWaitingTooLongGoesNextRegardless() {
+        config.setSchedulerMaxWaitSeconds(1);
+        CompletableFuture<Void> first = ask(ALEX, RequestScheduler.Priority.NORMAL, "alex", 0);
+        ask(STEVE, RequestScheduler.Priority.NORMAL, "steve", 1);
+        now += TimeUnit.SECONDS.toNanos(1);
+        ask(OP, RequestScheduler.Priority.HIGH, "op", 1);
+
+        first.complete(null);
+        assertEquals(List.of("alex", "steve"), started);
+    }
+
+    @Test void cancelledQuestionLeavesTheQueue() {
+        CompletableFuture<Void> first = ask(ALEX, RequestScheduler.Priority.NORMAL, "alex", 0);
+        CompletableFuture<Void> waiting = ask(STEVE, RequestScheduler.Priority.NORMAL, "steve", 1);
+        assertEquals(1, scheduler.getQueuedCount());
+
+        waiting.cancel(true);
+        assertEquals(0, scheduler.getQueuedCount());
+        first.complete(null);
+        assertEquals(List.of("alex"), started);
+        assertEquals(0, scheduler.getActiveCount());
+    }
+
+    @Test void clearFreesTheSlotsOfQuestionsThatNeverFinish() {
+        config.setMaxConcurrentRequests(2);
+        CompletableFuture<Void> alex = ask(ALEX, RequestScheduler.Priority.NORMAL, "alex", 0);
+        ask(STEVE, RequestScheduler.Priority.NORMAL, "steve", 0);
+        ask(OP, RequestScheduler.Priority.NORMAL, "op", 1);
+
+        // The stopping server drops these requests, so they never complete
+        scheduler.clear();
+        assertEquals(0, scheduler.getActiveCount());
+        assertEquals(0, scheduler.getQueuedCount());
+
+        ask(ALEX, RequestScheduler.Priority.NORMAL, "alex again", 0);
+        ask(STEVE, RequestScheduler.Priority.NORMAL, "steve again", 0);
+        // A question from before the clear finishing late doesn't free a slot it no longer holds
+        alex.complete(null);
+        assertEquals(2, scheduler.getActiveCount());
+        ask(OP, RequestScheduler.Priority.NORMAL, "op again", 1);
+        assertEquals(List.of("alex", "steve", "alex again", "steve again"), started);
+    }
+
+    @Test void fullQueueIsRejected() {
+        config.setMaxQueuedRequests(1);
+        ask(ALEX, RequestScheduler.Priority.NORMAL, "alex", 0);
+        ask(STEVE, RequestScheduler.Priority.NORMAL, "steve", 1);
+        assertThrows(RejectedExecutionException.class,
+            () -> scheduler.submit(OP, RequestScheduler.Priority.HIGH, new CompletableFuture<>(), () -> null));
+    }
+
+    /**
+     * Asks a question that holds its slot until its handle completes, checking its place in the queue
+     */
+    private CompletableFuture<Void> ask(UUID player, RequestScheduler.Priority priority, String name, int expectedPosition) {
+        CompletableFuture<Void> request = new CompletableFuture<>();
+        int position = scheduler.submit(player, priority, request, () -> {
+            started.add(name);
+            return request;
+        });
+        assertEquals(expectedPosition, position);
+        return request;
+    }
+}
@@ -0,0 +1,48 @@
+package minecraft.llm.util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonBodyWriterTest {
+    @Test void escapesTextThatWouldBreakTheBody() {
+        String tricky = "say \"hi\" \\ back\nslash\ttab\u0001 é 世界 🙂";
+        JsonBodyWriter body = new JsonBodyWriter()
+            .beginObject().name("content").value(tricky).endObject();
+        JsonObject parsed = JsonParser.parseString(body.toString()).getAsJsonObject();
+        assertEquals(tricky, parsed.get("content").getAsString());
+    }
+
+    @Test void separatesItemsAndNestedValues() {
+        JsonBodyWriter body = new JsonBodyWriter()
+            .beginObject()
+            .name("model").value("m")
+            .name("messages").beginArray()
+            .beginObject().name("role").value("user").endObject()
+            .beginObject().name("role").value("assistant").endObject()
+            .endArray()
+            .name("stream").value(true)
+            .name("max_tokens").value(2000)
+            .endObject();
+        assertEquals("{\"model\":\"m\",\"messages\":[{\"role\":\"user\"},{\"role\":\"assistant\"}],\"stream\":true,\"max_tokens\":2000}",
+            body.toString());
+    }
+
+    @Test void encodedValueMatchesValueAndIsReusedUntilChanged() {
+        JsonBodyWriter.EncodedString prompt = new JsonBodyWriter.EncodedString();
+        String text = "Be \"brief\"";
+        byte[] first = prompt.get(text);
+        assertSame(first, prompt.get(text));
+        assertEquals("{\"system\":\"Be \\\"brief\\\"\"}",
+            new JsonBodyWriter().beginObject().name("system").encodedValue(first).endObject().toString());
+        assertNotSame(first, prompt.get(new String(text)));
+    }
+
+    @Test void resetStartsAnEmptyBody() {
+        JsonBodyWriter body = JsonBodyWriter.forCurrentThread().beginArray().value(1).endArray();
+        assertSame(body, JsonBodyWriter.forCurrentThread());
+        assertEquals(0, body.size());
+    }
+}
@@ -0,0 +1,80 @@
+package minecraft.llm.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageChunkerTest {
+    private final List<String> messages = new ArrayList<>();
+
+    @Test void keepsShortAnswersInOneMessage() {
+        MessageChunker chunker = new MessageChunker(250, messages::add);
+        chunker.append("Diamonds are ");
+        chunker.append("most common at Y=-58.");
+        assertTrue(messages.isEmpty());
+        chunker.flush();
+        assertEquals(List.of("Diamonds are most common at Y=-58."), messages);
+        assertTrue(chunker.isEmpty());
+    }
+
+    @Test void breaksAtTheLastSentenceEndNearTheLimit() {
+        MessageChunker chunker = new MessageChunker(40, messages::add);
+        chunker.append("Bring a pickaxe and torches. Then dig down carefully.");
+        chunker.flush();
+        assertEquals(List.of("Bring a pickaxe and torches.", " Then dig down carefully."), messages);
+    }
+
+    @Test void fallsBackToWordsAndNeverExceedsTheLimit() {
+        MessageChunker chunker = new MessageChunker(20, messages::add);
+        String text = "one two three four five six seven eight nine ten eleven twelve";
+        for (char c : text.toCharArray()) {
+            chunker.append(String.valueOf(c));
+        }
+        chunker.flush();
+        assertEquals(text, String.join("", messages));
+        for (String message : messages) {
+            assertTrue(message.length() <= 20, message);
+            assertFalse(message.isEmpty());
+        }
+        assertTrue(messages.get(0).endsWith(" "), messages.get(0));
+    }
+
+    @Test void cutsWordsLongerThanAMessage() {
+        MessageChunker chunker = new MessageChunker(16, messages::add);
+        chunker.append("x".repeat(40));
+        chunker.flush();
+        assertEquals(List.of("x".repeat(16), "x".repeat(16), "x".repeat(8)), messages);
+    }
+
+    @Test void neverSplitsAFormattingCode() {
+        MessageChunker chunker = new MessageChunker(16, messages::add);
+        // Without care the split would land between § and c
+        chunker.append("abcdefghijklmno§cred");
+        chunker.flush();
+        assertEquals("abcdefghijklmno", messages.get(0));
+        assertTrue(messages.get(1).startsWith("§c"), messages.get(1));
+    }
+
+    @Test void carriesFormattingIntoTheNextMessage() {
+        MessageChunker chunker = new MessageChunker(24, messages::add);
+        chunker.append("§6§lGold ingots and blocks are §rplain, then white again");
+        chunker.flush();
+        assertEquals("§6§lGold ingots and ", messages.get(0));
+        assertTrue(messages.get(1).startsWith("§6§lblocks are §rplain"), messages.get(1));
+        // The reset ends the carried formatting
+        assertFalse(messages.get(2).startsWith("§"), messages.get(2));
+        for (String message : messages) {
+            assertTrue(message.length() <= 24, message);
+        }
+    }
+
+    @Test void keepsSurrogatePairsTogether() {
+        MessageChunker chunker = new MessageChunker(16, messages::add);
+        chunker.append("aaaaaaaaaaaaaaa🙂b");
+        chunker.flush();
+        assertEquals(List.of("aaaaaaaaaaaaaaa", "🙂b"), messages);
+    }
+}
@@ -0,0 +1,63 @@
+package minecraft.llm.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseDecoderTest {
+    private final List<String> events = new ArrayList<>();
+    private final SseDecoder decoder = new SseDecoder((event, data) -> events.add(event + "|" + data));
+
+    @Test void dispatchesEventsOnBlankLine() {
+        feed("event: content_block_delta\ndata: {\"a\":1}\n\ndata: second\n\n");
+        assertEquals(List.of("content_block_delta|{\"a\":1}", "message|second"), events);
+    }
+
+    @Test void keepsMultiByteCharactersSplitAcrossBuffers() {
+        byte[] bytes = "data: héllo 世界 🙂\n\n".getBytes(StandardCharsets.UTF_8);
+        // Feed one byte per buffer so every multi-byte character is split
+        for (byte b : bytes) {
+            decoder.feed(ByteBuffer.wrap(new byte[] { b }));
+        }
+        assertEquals(List.of("message|héllo 世界 🙂"), events);
+    }
+
+    @Test void joinsMultiLineDataAndHandlesCrLf() {
+        feed(": keep-alive\r\ndata: first\r\ndata: second\r\n\r\n");
+        assertEquals(List.of("message|first\nsecond"), events);
+    }
+
+    @Test void handlesCrOnlyLineEndings() {
+        feed("data: one\rdata: two\r\rdata: three\r\r");
+        assertEquals(List.of("message|one\ntwo", "message|three"), events);
+    }
+
+    @Test void handlesMixedLineEndings() {
+        // A CR followed by text and then an LF is two line breaks, not a CRLF pair
+        feed("data: one\rdata: two\n\ndata: three\r\n\n");
+        assertEquals(List.of("message|one\ntwo", "message|three"), events);
+    }
+
+    @Test void keepsCrLfSplitAcrossBuffersTogether() {
+        feed("data: one\r");
+        feed("\n\r");
+        feed("\ndata: two\n\n");
+        assertEquals(List.of("message|one", "message|two"), events);
+    }
+
+    @Test void finishDispatchesUnterminatedEvent() {
+        feed("data: [DONE]");
+        assertTrue(events.isEmpty());
+        decoder.finish();
+        assertEquals(List.of("message|[DONE]"), events);
+    }
+
+    private void feed(String text) {
+        decoder.feed(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}